@@ -0,0 +1,28 @@
+package io.muserver;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.RecvByteBufAllocator;
+
+/**
+ * Configuration for how the server allocates the byte buffers used to read requests and write responses.
+ * @see AllocatorConfigBuilder
+ */
+public class AllocatorConfig {
+    final ByteBufAllocator allocator;
+    final RecvByteBufAllocator recvByteBufAllocator;
+
+    AllocatorConfig(ByteBufAllocator allocator, RecvByteBufAllocator recvByteBufAllocator) {
+        this.allocator = allocator;
+        this.recvByteBufAllocator = recvByteBufAllocator;
+    }
+
+    void applyTo(ServerBootstrap bootstrap) {
+        bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+        bootstrap.childOption(ChannelOption.ALLOCATOR, allocator);
+        if (recvByteBufAllocator != null) {
+            bootstrap.childOption(ChannelOption.RCVBUF_ALLOCATOR, recvByteBufAllocator);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+
+/**
+ * <p>Configuration builder for the byte buffer allocator, passed to {@link MuServerBuilder#withAllocatorConfig(AllocatorConfigBuilder)}</p>
+ * <p>By default a shared pooled allocator is used which prefers direct (off-heap) memory. The memory used by
+ * the allocator can be monitored with {@link MuStats#allocatorStats()}.</p>
+ */
+public class AllocatorConfigBuilder {
+
+    private boolean pooled = true;
+    private boolean preferDirect = PooledByteBufAllocator.defaultPreferDirect();
+    private int heapArenas = PooledByteBufAllocator.defaultNumHeapArena();
+    private int directArenas = PooledByteBufAllocator.defaultNumDirectArena();
+    private int chunkSize = PooledByteBufAllocator.defaultPageSize() << PooledByteBufAllocator.defaultMaxOrder();
+    private int minReceiveBufferSize = -1;
+    private int initialReceiveBufferSize = -1;
+    private int maxReceiveBufferSize = -1;
+    private boolean customised = false;
+
+    /**
+     * Specifies whether buffers are pooled. Pooling greatly reduces garbage collection and the cost of
+     * allocating direct memory, at the expense of keeping memory reserved in the pool.
+     * @param pooled <code>true</code> (the default) to pool buffers
+     * @return This builder
+     */
+    public AllocatorConfigBuilder withPooling(boolean pooled) {
+        this.pooled = pooled;
+        this.customised = true;
+        return this;
+    }
+
+    /**
+     * Specifies whether direct (off-heap) buffers are preferred over heap buffers.
+     * @param preferDirect <code>true</code> to use direct buffers where possible
+     * @return This builder
+     */
+    public AllocatorConfigBuilder withPreferDirect(boolean preferDirect) {
+        this.preferDirect = preferDirect;
+        this.customised = true;
+        return this;
+    }
+
+    /**
+     * Sets the number of pool arenas. More arenas reduce contention between event loop threads at the cost of more
+     * memory. The default is based on the number of processors and the maximum memory.
+     * @param heapArenas The number of heap arenas, or 0 for no heap pooling
+     * @param directArenas The number of direct arenas, or 0 for no direct pooling
+     * @return This builder
+     */
+    public AllocatorConfigBuilder withArenas(int heapArenas, int directArenas) {
+        if (heapArenas < 0 || directArenas < 0) {
+            throw new IllegalArgumentException("The number of arenas must be 0 or greater");
+        }
+        this.heapArenas = heapArenas;
+        this.directArenas = directArenas;
+        this.customised = true;
+        return this;
+    }
+
+    /**
+     * Sets the size of the chunks that arenas allocate from the operating system.
+     * @param chunkSize The chunk size in bytes, which must be a power of 2 and a multiple of the page size (8192 by default). The default is 4MB.
+     * @return This builder
+     */
+    public AllocatorConfigBuilder withChunkSize(int chunkSize) {
+        int pageSize = PooledByteBufAllocator.defaultPageSize();
+        if (chunkSize < pageSize || chunkSize > pageSize << 14 || Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("The chunk size must be a power of 2 between " + pageSize + " and " + (pageSize << 14));
+        }
+        this.chunkSize = chunkSize;
+        this.customised = true;
+        return this;
+    }
+
+    /**
+     * Sets the bounds of the buffer used to read from a socket. The buffer size adapts to the amount of data
+     * received, growing when reads fill the buffer and shrinking when they do not.
+     * @param minimum The minimum buffer size in bytes
+     * @param initial The initial buffer size in bytes
+     * @param maximum The maximum buffer size in bytes
+     * @return This builder
+     */
+    public AllocatorConfigBuilder withReceiveBufferSize(int minimum, int initial, int maximum) {
+        if (minimum <= 0 || initial < minimum || maximum < initial) {
+            throw new IllegalArgumentException("Receive buffer sizes must be positive and minimum <= initial <= maximum");
+        }
+        this.minReceiveBufferSize = minimum;
+        this.initialReceiveBufferSize = initial;
+        this.maxReceiveBufferSize = maximum;
+        return this;
+    }
+
+    /**
+     * Creates the allocator settings object
+     * @return A new AllocatorConfig object
+     */
+    public AllocatorConfig build() {
+        ByteBufAllocator allocator;
+        if (!customised) {
+            allocator = PooledByteBufAllocator.DEFAULT;
+        } else if (pooled) {
+            int pageSize = PooledByteBufAllocator.defaultPageSize();
+            int maxOrder = Integer.numberOfTrailingZeros(chunkSize / pageSize);
+            allocator = new PooledByteBufAllocator(preferDirect, heapArenas, directArenas, pageSize, maxOrder,
+                PooledByteBufAllocator.defaultSmallCacheSize(), PooledByteBufAllocator.defaultNormalCacheSize(),
+                PooledByteBufAllocator.defaultUseCacheForAllThreads());
+        } else {
+            allocator = new UnpooledByteBufAllocator(preferDirect);
+        }
+        AdaptiveRecvByteBufAllocator recv = minReceiveBufferSize == -1 ? null
+            : new AdaptiveRecvByteBufAllocator(minReceiveBufferSize, initialReceiveBufferSize, maxReceiveBufferSize);
+        return new AllocatorConfig(allocator, recv);
+    }
+
+    /**
+     * Creates a new config where the default allocator is used
+     * @return A new builder
+     */
+    public static AllocatorConfigBuilder allocatorConfig() {
+        return new AllocatorConfigBuilder();
+    }
+}
@@ -0,0 +1,51 @@
+package io.muserver;
+
+import java.util.List;
+
+/**
+ * Statistics about the memory held by the byte buffer allocator of a server. Accessible via the
+ * {@link MuStats#allocatorStats()} method.
+ * @see AllocatorConfigBuilder
+ */
+public interface AllocatorStats {
+
+    /**
+     * @return <code>true</code> if buffers are pooled
+     */
+    boolean pooled();
+
+    /**
+     * @return The number of bytes of direct (off-heap) memory reserved by the allocator, including unused pooled memory.
+     */
+    long usedDirectMemory();
+
+    /**
+     * @return The number of bytes of heap memory reserved by the allocator, including unused pooled memory.
+     */
+    long usedHeapMemory();
+
+    /**
+     * @return The number of bytes of direct memory currently held by buffers that are in use.
+     */
+    long pinnedDirectMemory();
+
+    /**
+     * @return The number of bytes of heap memory currently held by buffers that are in use.
+     */
+    long pinnedHeapMemory();
+
+    /**
+     * @return The size in bytes of the chunks that the pool allocates, or 0 if buffers are not pooled.
+     */
+    int chunkSize();
+
+    /**
+     * @return The number of bytes allocated in each direct arena, in arena order. This is empty if buffers are not pooled.
+     */
+    List<Long> directArenaActiveBytes();
+
+    /**
+     * @return The number of bytes allocated in each heap arena, in arena order. This is empty if buffers are not pooled.
+     */
+    List<Long> heapArenaActiveBytes();
+}
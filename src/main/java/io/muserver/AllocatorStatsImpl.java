@@ -0,0 +1,71 @@
+package io.muserver;
+
+import io.netty.buffer.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class AllocatorStatsImpl implements AllocatorStats {
+    private final ByteBufAllocator allocator;
+    private final ByteBufAllocatorMetric metric;
+
+    AllocatorStatsImpl(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+        this.metric = allocator instanceof ByteBufAllocatorMetricProvider ? ((ByteBufAllocatorMetricProvider) allocator).metric() : null;
+    }
+
+    @Override
+    public boolean pooled() {
+        return allocator instanceof PooledByteBufAllocator;
+    }
+
+    @Override
+    public long usedDirectMemory() {
+        return metric == null ? -1 : metric.usedDirectMemory();
+    }
+
+    @Override
+    public long usedHeapMemory() {
+        return metric == null ? -1 : metric.usedHeapMemory();
+    }
+
+    @Override
+    public long pinnedDirectMemory() {
+        return pooled() ? ((PooledByteBufAllocator) allocator).pinnedDirectMemory() : usedDirectMemory();
+    }
+
+    @Override
+    public long pinnedHeapMemory() {
+        return pooled() ? ((PooledByteBufAllocator) allocator).pinnedHeapMemory() : usedHeapMemory();
+    }
+
+    @Override
+    public int chunkSize() {
+        return pooled() ? ((PooledByteBufAllocator) allocator).chunkSize() : 0;
+    }
+
+    @Override
+    public List<Long> directArenaActiveBytes() {
+        return pooled() ? activeBytes(((PooledByteBufAllocator) allocator).metric().directArenas()) : Collections.emptyList();
+    }
+
+    @Override
+    public List<Long> heapArenaActiveBytes() {
+        return pooled() ? activeBytes(((PooledByteBufAllocator) allocator).metric().heapArenas()) : Collections.emptyList();
+    }
+
+    private static List<Long> activeBytes(List<PoolArenaMetric> arenas) {
+        List<Long> bytes = new ArrayList<>(arenas.size());
+        for (PoolArenaMetric arena : arenas) {
+            bytes.add(Math.max(0L, arena.numActiveBytes()));
+        }
+        return Collections.unmodifiableList(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "used direct memory: " + usedDirectMemory() + "; pinned direct memory: " + pinnedDirectMemory() +
+            "; used heap memory: " + usedHeapMemory() + "; pinned heap memory: " + pinnedHeapMemory();
+    }
+}
@@ -24,7 +24,7 @@ class AlpnHandler extends ApplicationProtocolNegotiationHandler {
     @Override
     protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
         if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
-            ctx.pipeline().addLast(new Http2ConnectionBuilder(server, nettyHandlerAdapter).build());
+            ctx.pipeline().addLast(new Http2ConnectionBuilder(server, nettyHandlerAdapter, proto).build());
             return;
         }
 
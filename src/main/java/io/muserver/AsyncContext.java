@@ -53,4 +53,10 @@ public class AsyncContext implements ResponseInfo {
         throw new MuException("This class has been deprecated");
     }
 
+    @Override
+    @Deprecated
+    public RequestTimings timings() {
+        throw new MuException("This class has been deprecated");
+    }
+
 }
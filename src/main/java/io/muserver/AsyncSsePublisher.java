@@ -107,7 +107,9 @@ public interface AsyncSsePublisher {
     static AsyncSsePublisher start(MuRequest request, MuResponse response) {
         response.contentType(ContentTypes.TEXT_EVENT_STREAM);
         response.headers().set(HeaderNames.CACHE_CONTROL, "no-cache, no-transform");
-        return new AsyncSsePublisherImpl(request.handleAsync());
+        AsyncHandle asyncHandle = request.handleAsync();
+        NettyRequestAdapter.onSseStarted(request, asyncHandle);
+        return new AsyncSsePublisherImpl(asyncHandle);
     }
 }
 
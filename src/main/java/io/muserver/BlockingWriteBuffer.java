@@ -0,0 +1,108 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Lets a handler thread write response data without waiting for each write to reach the network. Writes are handed
+ * to the event loop and the handler thread only blocks when the data written but not yet sent goes over the high
+ * water mark of the channel, until it drops below the low water mark.
+ * <p>A failed write is thrown from the next call to {@link #write(ByteBuf, Function)}.</p>
+ */
+class BlockingWriteBuffer {
+
+    private final HttpExchange exchange;
+    private final long lowWaterMark;
+    private final long highWaterMark;
+    private final Lock lock = new ReentrantLock();
+    private final Condition writable = lock.newCondition();
+    private long pendingBytes;
+    private boolean blocked;
+    private Throwable failure;
+
+    BlockingWriteBuffer(HttpExchange exchange) {
+        this.exchange = exchange;
+        this.lowWaterMark = exchange.ctx.channel().config().getWriteBufferLowWaterMark();
+        this.highWaterMark = exchange.ctx.channel().config().getWriteBufferHighWaterMark();
+    }
+
+    /**
+     * Queues the data to be written on the event loop, blocking first if too much data is already pending.
+     * @param data The data to write, which is released if it could not be written
+     * @param writer A function that is called on the event loop to write the data to the channel
+     */
+    void write(ByteBuf data, Function<ByteBuf, ChannelFuture> writer) {
+        if (exchange.inLoop()) {
+            // only possible from a NonBlockingHandler, so write without waiting
+            writer.apply(data);
+            return;
+        }
+        int size = data.readableBytes();
+        lock.lock();
+        try {
+            while (blocked && failure == null) {
+                writable.await();
+            }
+            if (failure != null) {
+                data.release();
+                PlatformDependent.throwException(failure);
+            }
+            pendingBytes += size;
+            if (pendingBytes >= highWaterMark) {
+                blocked = true;
+            }
+        } catch (InterruptedException e) {
+            data.release();
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing"));
+        } finally {
+            lock.unlock();
+        }
+        EventLoopMonitor monitor = exchange.loopMonitor();
+        try {
+            exchange.ctx.executor().execute(() -> {
+                long start = monitor.startNanos();
+                ChannelFuture future;
+                try {
+                    future = writer.apply(data);
+                } catch (Throwable e) {
+                    onWritten(size, e);
+                    return;
+                } finally {
+                    monitor.record(EventLoopTask.WRITE, start);
+                }
+                future.addListener(f -> onWritten(size, f.cause()));
+            });
+        } catch (RejectedExecutionException e) {
+            data.release();
+            onWritten(size, e);
+            throw e;
+        }
+    }
+
+    private void onWritten(int size, Throwable cause) {
+        lock.lock();
+        try {
+            pendingBytes -= size;
+            if (cause != null && failure == null) {
+                failure = cause;
+            }
+            if (blocked && (failure != null || pendingBytes <= lowWaterMark)) {
+                blocked = false;
+                writable.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
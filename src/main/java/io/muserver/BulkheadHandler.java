@@ -0,0 +1,135 @@
+package io.muserver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+
+/**
+ * <p>A handler that runs on its own executor rather than on the handler executor set with
+ * {@link MuServerBuilder#withHandlerExecutor(ExecutorService)}.</p>
+ * <p>By default all handlers share one executor, so an endpoint that is slow (for example because it calls a
+ * slow downstream service) can use every thread and starve unrelated endpoints. Giving such an endpoint its own
+ * bounded executor acts as a bulkhead: when it is saturated only its requests are affected.</p>
+ * <p>When the executor rejects a request, the client receives a <code>503 Service Unavailable</code> response
+ * and the rejection is counted in {@link MuStats#rejectedDueToOverload()}. The executor therefore should have
+ * a bounded queue and reject tasks when full (such as the default <code>AbortPolicy</code> of a
+ * {@link java.util.concurrent.ThreadPoolExecutor}) rather than run them on the calling thread.</p>
+ * <p>Bulkheads must be added directly to the server with {@link MuServerBuilder#addHandler(MuHandler)}; a bulkhead
+ * added to a context handler or any other nested list of handlers throws an {@link IllegalStateException} when it is
+ * run, rather than silently running on the current thread. Only requests that the bulkhead applies to are sent to
+ * its executor, so that other requests neither switch threads nor get rejected when the bulkhead is full. When the
+ * wrapped handler is a {@link ContextHandler} or a route created with {@link Routes#route(Method, String, RouteHandler)}
+ * the bulkhead applies to requests for its path. Any other wrapped handler, such as a
+ * {@link io.muserver.rest.RestHandler}, needs a matcher that says which requests it applies to, given with
+ * {@link #bulkhead(ExecutorService, Predicate, MuHandler)}; alternatively wrap the context handler it is added to.
+ * If a request the bulkhead applies to is not handled, the handlers after it go back to the server's executor.
+ * The executor is not shut down when the server stops.</p>
+ * <p>Example usage:</p>
+ * <pre><code>
+ * ExecutorService reportsExecutor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new ArrayBlockingQueue&lt;&gt;(20));
+ * MuServerBuilder.httpServer()
+ *     .addHandler(BulkheadHandler.bulkhead(reportsExecutor, ContextHandlerBuilder.context("reports")
+ *         .addHandler(new ReportsHandler())))
+ *     .addHandler(new SomeOtherHandler())
+ *     .start();
+ * </code></pre>
+ */
+public final class BulkheadHandler implements MuHandler {
+
+    final ExecutorService executor;
+    private final Predicate<MuRequest> matcher;
+    private final MuHandler handler;
+
+    private BulkheadHandler(ExecutorService executor, Predicate<MuRequest> matcher, MuHandler handler) {
+        this.executor = executor;
+        this.matcher = matcher;
+        this.handler = handler;
+    }
+
+    /**
+     * Runs a context handler or a route on the given executor, for requests that match its path.
+     * @param executor The executor to run the handler on, which is shared by nothing else
+     * @param handler The handler to isolate, which must be a {@link ContextHandler} or a route created with
+     *                {@link Routes#route(Method, String, RouteHandler)}
+     * @return A handler to add to the server
+     * @throws IllegalArgumentException if the handler is not a context handler or route, in which case use
+     * {@link #bulkhead(ExecutorService, Predicate, MuHandler)} to say which requests it applies to
+     */
+    public static BulkheadHandler bulkhead(ExecutorService executor, MuHandler handler) {
+        Mutils.notNull("handler", handler);
+        Predicate<MuRequest> matcher;
+        if (handler instanceof ContextHandler) {
+            matcher = ((ContextHandler) handler)::matches;
+        } else if (handler instanceof Routes.Route) {
+            matcher = ((Routes.Route) handler)::matches;
+        } else {
+            throw new IllegalArgumentException("A bulkhead for a " + handler.getClass().getSimpleName() + " needs a matcher to say which " +
+                "requests it applies to. Use BulkheadHandler.bulkhead(ExecutorService, Predicate, MuHandler) or wrap a context handler instead.");
+        }
+        return bulkhead(executor, matcher, handler);
+    }
+
+    /**
+     * Runs any handler on the given executor, for the requests accepted by the matcher.
+     * <p>Example: <code>bulkhead(apiExecutor, request -&gt; request.relativePath().startsWith("/api/"), restHandler)</code></p>
+     * @param executor The executor to run the handler on, which is shared by nothing else
+     * @param matcher Returns <code>true</code> for the requests that the handler may handle. Other requests skip
+     *                the bulkhead, so they are not run on (or rejected by) its executor.
+     * @param handler The handler to isolate
+     * @return A handler to add to the server
+     */
+    public static BulkheadHandler bulkhead(ExecutorService executor, Predicate<MuRequest> matcher, MuHandler handler) {
+        Mutils.notNull("executor", executor);
+        Mutils.notNull("matcher", matcher);
+        Mutils.notNull("handler", handler);
+        if (handler instanceof NonBlockingHandler) {
+            throw new IllegalArgumentException("A non-blocking handler runs on the event loop so cannot also run on a bulkhead executor");
+        }
+        return new BulkheadHandler(executor, matcher, handler);
+    }
+
+    /**
+     * Runs a context handler on the given executor, for requests that match its path.
+     * @param executor The executor to run the handler on, which is shared by nothing else
+     * @param handler A builder for the handler to isolate, such as a {@link ContextHandlerBuilder}
+     * @return A handler to add to the server
+     * @throws IllegalArgumentException if the built handler is not a context handler or route, such as the handler
+     * from a {@link io.muserver.rest.RestHandlerBuilder}, in which case use
+     * {@link #bulkhead(ExecutorService, Predicate, MuHandler)} to say which requests it applies to
+     */
+    public static BulkheadHandler bulkhead(ExecutorService executor, MuHandlerBuilder<?> handler) {
+        Mutils.notNull("handler", handler);
+        return bulkhead(executor, handler.build());
+    }
+
+    /**
+     * Checks whether a request could be handled by the wrapped handler, so that requests for other paths do not
+     * switch threads or get rejected when the executor is full.
+     */
+    boolean appliesTo(MuRequest request) {
+        return matcher.test(request);
+    }
+
+    /**
+     * Runs the wrapped handler. This is called by the server once the request has been handed over to the executor.
+     */
+    boolean handleOnExecutor(MuRequest request, MuResponse response) throws Exception {
+        return handler.handle(request, response);
+    }
+
+    /**
+     * Always throws, as this is only called when the bulkhead has been added somewhere other than directly to the
+     * server, where it would run on the current thread rather than on its executor.
+     * @throws IllegalStateException always
+     */
+    @Override
+    public boolean handle(MuRequest request, MuResponse response) {
+        throw new IllegalStateException(this + " was run from a nested handler, so it cannot run on its own executor. " +
+            "Bulkheads must be added directly to the server with MuServerBuilder.addHandler, for example by wrapping " +
+            "the context handler rather than adding the bulkhead to it.");
+    }
+
+    @Override
+    public String toString() {
+        return "BulkheadHandler{" + handler + '}';
+    }
+}
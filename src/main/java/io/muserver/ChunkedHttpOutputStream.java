@@ -1,6 +1,6 @@
 package io.muserver;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -24,7 +24,8 @@ class ChunkedHttpOutputStream extends OutputStream {
         if (isClosed) {
             throw new IOException("Cannot write to closed output stream");
         }
-        response.httpExchange.block(() -> response.writeAndFlush(Unpooled.wrappedBuffer(b, off, len)));
+        ByteBuf buf = response.request.ctx.alloc().buffer(len).writeBytes(b, off, len);
+        response.writeBlocking(buf);
     }
 
     public void close() {
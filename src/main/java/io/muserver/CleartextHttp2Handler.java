@@ -0,0 +1,127 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.List;
+
+/**
+ * Chooses between HTTP/1.1 and HTTP/2 on a plain text connection (h2c), which is the non-TLS equivalent of the
+ * {@link AlpnHandler}.
+ * <p>If the connection starts with the HTTP/2 connection preface then the client has prior knowledge of HTTP/2
+ * support and the HTTP/2 handler is added straight away. Otherwise the HTTP/1.1 pipeline is added along with an
+ * upgrade handler so that clients can switch to HTTP/2 with an <code>Upgrade: h2c</code> request.</p>
+ */
+class CleartextHttp2Handler extends ByteToMessageDecoder {
+    static final String NAME = "h2c";
+    private static final String UPGRADE_NAME = "h2cupgrade";
+    private static final int MAX_UPGRADE_REQUEST_SIZE = 64 * 1024;
+
+    private final NettyHandlerAdapter nettyHandlerAdapter;
+    private final MuServerImpl server;
+
+    CleartextHttp2Handler(NettyHandlerAdapter nettyHandlerAdapter, MuServerImpl server) {
+        this.nettyHandlerAdapter = nettyHandlerAdapter;
+        this.server = server;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        ByteBuf preface = Http2CodecUtil.connectionPrefaceBuf();
+        try {
+            int bytesToCheck = Math.min(in.readableBytes(), preface.readableBytes());
+            boolean matches = ByteBufUtil.equals(preface, preface.readerIndex(), in, in.readerIndex(), bytesToCheck);
+            if (matches && bytesToCheck < preface.readableBytes()) {
+                return; // wait for the rest of the preface
+            }
+            ChannelPipeline p = ctx.pipeline();
+            if (matches) {
+                p.addLast(new Http2ConnectionBuilder(server, nettyHandlerAdapter, "http").build());
+            } else {
+                p.remove(BackPressureHandler.NAME); // because the http1 pipeline adds it in the right place
+                MuServerBuilder.setupHttp1Pipeline(p, nettyHandlerAdapter, server, "http");
+                p.addAfter("encoder", UPGRADE_NAME, new UpgradeHandler(new Http1SourceCodec(), protocol ->
+                    AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+                        ? new Http2ServerUpgradeCodec(new Http2ConnectionBuilder(server, nettyHandlerAdapter, "http").build())
+                        : null));
+            }
+            // any bytes already received are passed on to the handlers that were just added
+            p.remove(this);
+        } finally {
+            preface.release();
+        }
+    }
+
+    /**
+     * Upgrades requests that ask for h2c, as long as their body is small enough to be held in memory during the
+     * upgrade. Requests with larger (or chunked) bodies stay on HTTP/1.1 and are passed through unchanged.
+     */
+    private static class UpgradeHandler extends HttpServerUpgradeHandler {
+        private boolean passingThrough;
+
+        UpgradeHandler(SourceCodec sourceCodec, UpgradeCodecFactory upgradeCodecFactory) {
+            super(sourceCodec, upgradeCodecFactory, MAX_UPGRADE_REQUEST_SIZE);
+        }
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+            if (msg instanceof HttpRequest) {
+                HttpRequest request = (HttpRequest) msg;
+                passingThrough = request.headers().contains(HttpHeaderNames.UPGRADE) && !bodyFitsInUpgrade(request);
+            }
+            if (passingThrough) {
+                if (msg instanceof LastHttpContent) {
+                    passingThrough = false;
+                }
+                out.add(ReferenceCountUtil.retain(msg));
+                return;
+            }
+            super.decode(ctx, msg, out);
+            if (out.isEmpty() && ctx.channel().isActive()) {
+                // the body of an upgrade request is being aggregated, so the HTTP/1 handlers will not ask for more
+                ctx.read();
+            }
+        }
+    }
+
+    private static boolean bodyFitsInUpgrade(HttpRequest request) {
+        return !HttpUtil.isTransferEncodingChunked(request) && HttpUtil.getContentLength(request, 0L) <= MAX_UPGRADE_REQUEST_SIZE;
+    }
+
+    /**
+     * Removes the HTTP/1.1 handlers when a connection is upgraded
+     */
+    private static class Http1SourceCodec implements HttpServerUpgradeHandler.SourceCodec {
+        @Override
+        public void upgradeFrom(ChannelHandlerContext ctx) {
+            ChannelPipeline p = ctx.pipeline();
+            Http1Connection http1Connection = (Http1Connection) p.remove("muhandler");
+            http1Connection.onUpgraded();
+            p.remove("preread");
+            p.remove(BackPressureHandler.NAME);
+            p.remove("flowControl");
+            p.remove("keepalive");
+            if (p.get("compressor") != null) {
+                p.remove("compressor");
+            }
+            p.remove("encoder");
+            p.remove("decoder");
+            // the HTTP/2 handler goes after the upgrade handler so back pressure needs to be before that
+            p.addBefore(ctx.name(), BackPressureHandler.NAME, new BackPressureHandler());
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+}
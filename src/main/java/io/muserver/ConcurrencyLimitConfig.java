@@ -0,0 +1,35 @@
+package io.muserver;
+
+/**
+ * Configuration for the adaptive limit on how many requests the server handles at once.
+ * @see ConcurrencyLimitConfigBuilder
+ */
+public class ConcurrencyLimitConfig {
+    final int initialLimit;
+    final int minLimit;
+    final int maxLimit;
+    final double tolerance;
+    final double backoffRatio;
+    final long retryAfterSeconds;
+
+    ConcurrencyLimitConfig(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoffRatio, long retryAfterSeconds) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimitConfig{" +
+            "initialLimit=" + initialLimit +
+            ", minLimit=" + minLimit +
+            ", maxLimit=" + maxLimit +
+            ", tolerance=" + tolerance +
+            ", backoffRatio=" + backoffRatio +
+            ", retryAfterSeconds=" + retryAfterSeconds +
+            '}';
+    }
+}
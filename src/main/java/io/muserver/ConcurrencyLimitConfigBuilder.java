@@ -0,0 +1,119 @@
+package io.muserver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Configuration builder for the adaptive concurrency limit, passed to {@link MuServerBuilder#withConcurrencyLimit(ConcurrencyLimitConfigBuilder)}</p>
+ * <p>The server limits how many requests may be in progress at once. When the limit is reached, new requests are
+ * rejected with a <code>503 Service Unavailable</code> response and a <code>Retry-After</code> header before any
+ * handlers are called.</p>
+ * <p>The limit is not fixed: it grows slowly while requests are answered quickly, and is cut back when the recent
+ * latency rises above the long term latency by more than the configured tolerance. This keeps queues (and so the
+ * latency of the requests that are accepted) short during traffic spikes. If latency stays high, the long term
+ * latency slowly catches up so that a lasting change in the speed of the server becomes the new normal.</p>
+ * <p>A request counts towards the limit from when its headers are received until its response starts being sent
+ * (or until it ends, if no response is sent). The time this takes is the latency used to adjust the limit, so
+ * long-lived responses such as server-sent events or large downloads only count while the handler is preparing
+ * the response.</p>
+ * <p>The current limit and the number of rejected requests can be seen with {@link MuStats#concurrencyLimit()} and
+ * {@link MuStats#rejectedDueToConcurrencyLimit()}.</p>
+ */
+public class ConcurrencyLimitConfigBuilder {
+
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 1000;
+    private double tolerance = 2.0;
+    private double backoffRatio = 0.9;
+    private long retryAfterSeconds = 1;
+
+    /**
+     * Sets the concurrency limit used when the server starts.
+     * @param initialLimit The number of concurrent requests allowed before any latency has been measured. Default is 20.
+     * @return This builder
+     */
+    public ConcurrencyLimitConfigBuilder withInitialLimit(int initialLimit) {
+        if (initialLimit < 1) {
+            throw new IllegalArgumentException("The initial limit must be at least 1");
+        }
+        this.initialLimit = initialLimit;
+        return this;
+    }
+
+    /**
+     * Sets the bounds that the limit is kept within.
+     * @param minLimit The lowest the limit can go, which must be at least 1. Default is 4.
+     * @param maxLimit The highest the limit can go. Default is 1000.
+     * @return This builder
+     */
+    public ConcurrencyLimitConfigBuilder withLimits(int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("The limits must be positive with the minimum not greater than the maximum");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * Sets how much higher the recent latency can be than the long term latency before the limit is reduced.
+     * @param tolerance A ratio greater than 1. For example, the default of <code>2.0</code> means the limit is
+     *                  reduced when requests are taking twice as long as usual.
+     * @return This builder
+     */
+    public ConcurrencyLimitConfigBuilder withTolerance(double tolerance) {
+        if (!(tolerance > 1.0)) {
+            throw new IllegalArgumentException("The tolerance must be greater than 1");
+        }
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * Sets the amount the limit is multiplied by when latency is too high.
+     * @param backoffRatio A value between 0 and 1 (exclusive). Default is 0.9.
+     * @return This builder
+     */
+    public ConcurrencyLimitConfigBuilder withBackoffRatio(double backoffRatio) {
+        if (!(backoffRatio > 0.0 && backoffRatio < 1.0)) {
+            throw new IllegalArgumentException("The backoff ratio must be between 0 and 1");
+        }
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    /**
+     * Sets the value of the <code>Retry-After</code> header sent with rejected requests.
+     * @param duration The time clients should wait before retrying, which is rounded up to whole seconds. Default is 1 second.
+     * @param unit The unit of the duration
+     * @return This builder
+     */
+    public ConcurrencyLimitConfigBuilder withRetryAfter(long duration, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        if (duration < 0) {
+            throw new IllegalArgumentException("The retry after duration cannot be negative");
+        }
+        long millis = unit.toMillis(duration);
+        this.retryAfterSeconds = (millis + 999) / 1000;
+        return this;
+    }
+
+    /**
+     * Creates the concurrency limit settings object
+     * @return A new ConcurrencyLimitConfig object
+     */
+    public ConcurrencyLimitConfig build() {
+        if (initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("The initial limit " + initialLimit + " must be between the minimum " + minLimit + " and maximum " + maxLimit);
+        }
+        return new ConcurrencyLimitConfig(initialLimit, minLimit, maxLimit, tolerance, backoffRatio, retryAfterSeconds);
+    }
+
+    /**
+     * Creates a new builder with the default settings
+     * @return A new builder
+     */
+    public static ConcurrencyLimitConfigBuilder concurrencyLimit() {
+        return new ConcurrencyLimitConfigBuilder();
+    }
+}
@@ -0,0 +1,129 @@
+package io.muserver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An adaptive limit on the number of requests in progress. The limit increases by about one each time a full
+ * limit's worth of requests complete without latency rising (additive increase), and is multiplied by the backoff
+ * ratio when the recent average latency goes above the long term average latency times the tolerance
+ * (multiplicative decrease). After a decrease, no further decrease happens until the requests that were already
+ * in progress have had a chance to complete.
+ */
+class ConcurrencyLimiter {
+
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 0.002;
+
+    private final ConcurrencyLimitConfig config;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // guarded by this
+    private double exactLimit;
+    private double shortLatency = -1;
+    private double longLatency = -1;
+    private int samplesUntilNextDecrease;
+
+    ConcurrencyLimiter(ConcurrencyLimitConfig config) {
+        this.config = config;
+        this.exactLimit = config.initialLimit;
+        this.limit = config.initialLimit;
+    }
+
+    /**
+     * Tries to start a request
+     * @return A permit that must be released when the response starts, or null if the limit has been reached
+     */
+    Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(System.nanoTime(), current + 1);
+            }
+        }
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    long retryAfterSeconds() {
+        return config.retryAfterSeconds;
+    }
+
+    synchronized void onSample(long latencyNanos, int inFlightAtStart) {
+        if (longLatency < 0) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+        } else {
+            shortLatency += (latencyNanos - shortLatency) * SHORT_WEIGHT;
+            longLatency += (latencyNanos - longLatency) * LONG_WEIGHT;
+        }
+        if (samplesUntilNextDecrease > 0) {
+            samplesUntilNextDecrease--;
+        }
+        if (shortLatency > longLatency * config.tolerance) {
+            if (samplesUntilNextDecrease == 0) {
+                exactLimit = Math.max(config.minLimit, exactLimit * config.backoffRatio);
+                samplesUntilNextDecrease = (int) Math.ceil(exactLimit);
+            }
+        } else if (inFlightAtStart * 2 >= exactLimit) {
+            // only grow when the current limit is actually being used
+            exactLimit = Math.min(config.maxLimit, exactLimit + 1.0 / exactLimit);
+        }
+        limit = (int) exactLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter{" +
+            "limit=" + limit +
+            ", inFlight=" + inFlight +
+            '}';
+    }
+
+    class Permit {
+        private final long startNanos;
+        private final int inFlightAtStart;
+        private boolean released;
+
+        private Permit(long startNanos, int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Releases this permit when the response starts being sent, or when the exchange ends.
+         */
+        void releaseWhenResponseStarts(NettyResponseAdaptor response) {
+            response.addChangeListener((exchange, newState) -> {
+                if (newState != ResponseState.NOTHING) {
+                    boolean failed = newState.endState() && !newState.completedSuccessfully();
+                    release(!failed);
+                }
+            });
+        }
+
+        /**
+         * Releases this permit. Only the first call has any effect.
+         * @param measureLatency If true, the time since the permit was acquired is used to adjust the limit
+         */
+        synchronized void release(boolean measureLatency) {
+            if (released) {
+                return;
+            }
+            released = true;
+            inFlight.decrementAndGet();
+            if (measureLatency) {
+                onSample(System.nanoTime() - startNanos, inFlightAtStart);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.muserver;
+
+import io.netty.channel.Channel;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a newly accepted connection is allowed, based on the limits set with
+ * {@link MuServerBuilder#withMaxConnections(int)}, {@link MuServerBuilder#withMaxConnectionsPerIp(int)} and
+ * {@link MuServerBuilder#withMaxNewConnectionsPerSecond(int)}. This is checked before anything is added to the
+ * pipeline of the connection, so rejected connections cost no TLS handshake.
+ */
+class ConnectionLimiter {
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxConnections;
+    private final int maxConnectionsPerIp;
+    private final int maxNewConnectionsPerSecond;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ConcurrentHashMap<InetAddress, Integer> connectionsPerIp = new ConcurrentHashMap<>();
+    private long windowStart = System.nanoTime() - ONE_SECOND;
+    private int newConnectionsInWindow;
+
+    private ConnectionLimiter(int maxConnections, int maxConnectionsPerIp, int maxNewConnectionsPerSecond) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+        this.maxNewConnectionsPerSecond = maxNewConnectionsPerSecond;
+    }
+
+    /**
+     * @return A limiter, or <code>null</code> if all the limits are 0 (meaning unlimited)
+     */
+    static ConnectionLimiter create(int maxConnections, int maxConnectionsPerIp, int maxNewConnectionsPerSecond) {
+        if (maxConnections == 0 && maxConnectionsPerIp == 0 && maxNewConnectionsPerSecond == 0) {
+            return null;
+        }
+        return new ConnectionLimiter(maxConnections, maxConnectionsPerIp, maxNewConnectionsPerSecond);
+    }
+
+    /**
+     * Checks the limits for a new connection. If it is admitted, it counts towards the limits until it is closed.
+     * @param channel The newly accepted connection
+     * @return <code>true</code> if the connection is allowed; <code>false</code> if it should be closed
+     */
+    boolean tryAdmit(Channel channel) {
+        if (maxNewConnectionsPerSecond > 0 && !tryAcquireRate()) {
+            return false;
+        }
+        if (maxConnections > 0 && connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            return false;
+        }
+        InetAddress ip = maxConnectionsPerIp > 0 ? ipOf(channel.remoteAddress()) : null;
+        if (ip != null && connectionsPerIp.merge(ip, 1, Integer::sum) > maxConnectionsPerIp) {
+            releaseIp(ip);
+            if (maxConnections > 0) {
+                connections.decrementAndGet();
+            }
+            return false;
+        }
+        if (maxConnections > 0 || ip != null) {
+            channel.closeFuture().addListener(f -> {
+                if (maxConnections > 0) {
+                    connections.decrementAndGet();
+                }
+                if (ip != null) {
+                    releaseIp(ip);
+                }
+            });
+        }
+        return true;
+    }
+
+    private synchronized boolean tryAcquireRate() {
+        long now = System.nanoTime();
+        if (now - windowStart >= ONE_SECOND) {
+            windowStart = now;
+            newConnectionsInWindow = 0;
+        }
+        if (newConnectionsInWindow >= maxNewConnectionsPerSecond) {
+            return false;
+        }
+        newConnectionsInWindow++;
+        return true;
+    }
+
+    private void releaseIp(InetAddress ip) {
+        connectionsPerIp.computeIfPresent(ip, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    private static InetAddress ipOf(SocketAddress address) {
+        return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getAddress() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionLimiter{" +
+            "maxConnections=" + maxConnections +
+            ", maxConnectionsPerIp=" + maxConnectionsPerIp +
+            ", maxNewConnectionsPerSecond=" + maxNewConnectionsPerSecond +
+            '}';
+    }
+}
@@ -35,6 +35,14 @@ public class ContextHandler implements MuHandler {
         this.slashContext = "/" + this.contextPath;
     }
 
+    /**
+     * @return True if the request is for this context, or if there is no context
+     */
+    boolean matches(MuRequest request) {
+        String rp = request.relativePath();
+        return !hasContext || rp.equals(slashContext) || rp.startsWith(slashContextSlash);
+    }
+
     @Override
     public boolean handle(MuRequest request, MuResponse response) throws Exception {
         String rp = request.relativePath();
@@ -0,0 +1,145 @@
+package io.muserver;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Collects the {@link EventLoopStats} of one event loop.</p>
+ * <p>The lag is measured by a probe task that reschedules itself on the loop and records how late it ran. The
+ * time spent on each {@link EventLoopTask} is only ever added to by the loop itself, so it is a plain ordered
+ * write rather than a contended update.</p>
+ * <p>Tasks can run inside each other, for example a non-blocking handler runs during a read. Task times are
+ * exclusive: a task's start time from {@link #startNanos()} is offset by the total time recorded so far, so any
+ * time recorded by a nested task is not counted again by the task it ran in.</p>
+ * <p>When blocked-loop detection is enabled, a separate thread calls {@link #checkBlocked(long, long)} and logs the
+ * stack of the loop thread if the probe is overdue by more than the threshold.</p>
+ */
+class EventLoopMonitor implements EventLoopStats {
+    private static final Logger log = LoggerFactory.getLogger(EventLoopMonitor.class);
+    private static final EventLoopTask[] TASKS = EventLoopTask.values();
+
+    private final EventExecutor loop;
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private final AtomicLongArray taskNanos = new AtomicLongArray(TASKS.length);
+    private final LongAdder blockedCount = new LongAdder();
+    private volatile Thread thread;
+    private volatile long probeDueNanos;
+    private long reportedDueNanos;
+    private long recordedNanos;
+    private long probeIntervalNanos;
+
+    EventLoopMonitor(EventExecutor loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * Starts measuring the lag of the loop
+     * @param probeIntervalMillis How often to run the probe, or 0 to not run it
+     */
+    void start(long probeIntervalMillis) {
+        this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(probeIntervalMillis);
+        loop.execute(() -> {
+            thread = Thread.currentThread();
+            if (probeIntervalNanos > 0) {
+                scheduleProbe(System.nanoTime());
+            }
+        });
+    }
+
+    private void scheduleProbe(long now) {
+        probeDueNanos = now + probeIntervalNanos;
+        loop.schedule(this::probe, probeIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void probe() {
+        long now = System.nanoTime();
+        lag.record(now - probeDueNanos);
+        scheduleProbe(now);
+    }
+
+    /**
+     * Gets the start time of a task to later pass to {@link #record(EventLoopTask, long)}. This is not a
+     * {@link System#nanoTime()} value, as it is offset by all the task time recorded so far.
+     */
+    long startNanos() {
+        return System.nanoTime() - recordedNanos;
+    }
+
+    /**
+     * Adds the time since <code>startNanos</code>, less the time recorded by any tasks nested within it, to the time
+     * spent on the given kind of task. This is ignored when not called from the event loop.
+     * @param startNanos The value of {@link #startNanos()} when the task started on this loop
+     */
+    void record(EventLoopTask task, long startNanos) {
+        if (loop.inEventLoop()) {
+            long spent = System.nanoTime() - recordedNanos - startNanos;
+            recordedNanos += spent;
+            int i = task.ordinal();
+            taskNanos.lazySet(i, taskNanos.get(i) + spent);
+        }
+    }
+
+    /**
+     * Called periodically by the detector thread to check whether the probe is more than the threshold overdue,
+     * in which case the stack of the event loop thread is logged. Each stall is only reported once.
+     */
+    void checkBlocked(long now, long thresholdNanos) {
+        Thread t = thread;
+        long due = probeDueNanos;
+        if (t == null || due == 0 || due == reportedDueNanos) {
+            return;
+        }
+        long overdue = now - due;
+        if (overdue > thresholdNanos) {
+            reportedDueNanos = due;
+            blockedCount.increment();
+            StringBuilder sb = new StringBuilder("Event loop thread ").append(t.getName()).append(" has been blocked for at least ")
+                .append(TimeUnit.NANOSECONDS.toMillis(overdue)).append("ms. Its current stack is:");
+            for (StackTraceElement element : t.getStackTrace()) {
+                sb.append("\n\tat ").append(element);
+            }
+            log.warn(sb.toString());
+        }
+    }
+
+    @Override
+    public String threadName() {
+        Thread t = thread;
+        return t == null ? null : t.getName();
+    }
+
+    @Override
+    public int pendingTasks() {
+        return loop instanceof SingleThreadEventExecutor ? ((SingleThreadEventExecutor) loop).pendingTasks() : 0;
+    }
+
+    @Override
+    public LatencySnapshot lag() {
+        return lag.snapshot();
+    }
+
+    @Override
+    public double taskMillis(EventLoopTask task) {
+        Mutils.notNull("task", task);
+        return taskNanos.get(task.ordinal()) / 1_000_000.0;
+    }
+
+    @Override
+    public long blockedCount() {
+        return blockedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "EventLoopMonitor{" +
+            "thread=" + threadName() +
+            ", pendingTasks=" + pendingTasks() +
+            '}';
+    }
+}
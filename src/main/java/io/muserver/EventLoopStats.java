@@ -0,0 +1,40 @@
+package io.muserver;
+
+/**
+ * <p>Statistics about one of the event loop threads that handle the IO of client connections.</p>
+ * <p>Work that takes a long time on an event loop delays every other connection on the same loop, so these figures
+ * help to find out whether latency comes from the event loops rather than from request handlers.</p>
+ * @see MuServer#eventLoopStats()
+ */
+public interface EventLoopStats {
+
+    /**
+     * @return The name of the thread of the event loop, or <code>null</code> if it has not run yet
+     */
+    String threadName();
+
+    /**
+     * @return The number of tasks waiting to be run by the event loop
+     */
+    int pendingTasks();
+
+    /**
+     * Gets how late a task that is scheduled periodically on the event loop ran, which is how long any task
+     * submitted to the loop would have waited. The probe interval is set with
+     * {@link MuServerBuilder#withEventLoopProbeInterval(long, java.util.concurrent.TimeUnit)}.
+     * @return The distribution of the scheduling delays of the event loop
+     */
+    LatencySnapshot lag();
+
+    /**
+     * @param task The kind of work
+     * @return The total time the event loop spent running that kind of work, in milliseconds
+     */
+    double taskMillis(EventLoopTask task);
+
+    /**
+     * @return The number of times the event loop was found to be blocked for longer than the threshold set with
+     * {@link MuServerBuilder#withBlockedEventLoopDetection(long, java.util.concurrent.TimeUnit)}
+     */
+    long blockedCount();
+}
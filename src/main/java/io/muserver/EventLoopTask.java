@@ -0,0 +1,32 @@
+package io.muserver;
+
+/**
+ * <p>The kinds of work run on an event loop that are timed separately in {@link EventLoopStats#taskMillis(EventLoopTask)}</p>
+ * <p>The times are exclusive: when one kind of task runs inside another, such as a non-blocking handler that is
+ * run while reading a request, its time is only counted against the inner task.</p>
+ */
+public enum EventLoopTask {
+
+    /**
+     * Passing data that was read from a connection on to the request once it is asked for, which for HTTP/1
+     * includes handling the request headers. This excludes the time of any {@link #NON_BLOCKING_HANDLER} run during
+     * the read.
+     */
+    READ,
+
+    /**
+     * Writes of response data that were made from handler threads and handed over to the event loop
+     */
+    WRITE,
+
+    /**
+     * Running handlers that were added with {@link NonBlockingHandler#nonBlocking(MuHandler)}
+     */
+    NON_BLOCKING_HANDLER,
+
+    /**
+     * Updating stats and calling the listeners added with {@link MuServerBuilder#addResponseCompleteListener(ResponseCompleteListener)}
+     * when a response completes
+     */
+    RESPONSE_COMPLETE
+}
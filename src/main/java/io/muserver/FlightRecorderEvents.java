@@ -0,0 +1,343 @@
+package io.muserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Emits JDK Flight Recorder events for the lifecycle of requests, websockets and server-sent event streams.</p>
+ * <p>The events are created with <code>jdk.jfr.EventFactory</code> using method handles, so that Mu Server can
+ * still be compiled for and run on Java 8. Every method first checks whether its event type is enabled in a
+ * running recording, which is a field read in the JVM, so nothing is allocated when no recording is running.</p>
+ * <p>Only requests that take at least the slow request threshold emit the <code>io.muserver.SlowRequest</code>
+ * event, which has the full detail of the request including its headers.</p>
+ */
+class FlightRecorderEvents {
+    private static final Logger log = LoggerFactory.getLogger(FlightRecorderEvents.class);
+    private static final String[] CATEGORY = {"Mu Server"};
+
+    private static final MethodHandle BEGIN;
+    private static final MethodHandle END;
+    private static final MethodHandle COMMIT;
+    private static final MethodHandle SET;
+    private static final Kind REQUEST;
+    private static final Kind DISPATCH;
+    private static final Kind BODY_READ;
+    private static final Kind RESPONSE_FLUSHED;
+    private static final Kind RATE_LIMITED;
+    private static final Kind SLOW_REQUEST;
+    private static final Kind WEBSOCKET;
+    private static final Kind SSE;
+
+    static {
+        MethodHandle begin = null, end = null, commit = null, set = null;
+        Kind request = null, dispatch = null, bodyRead = null, responseFlushed = null, rateLimited = null,
+            slowRequest = null, websocket = null, sse = null;
+        try {
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodType objectToVoid = MethodType.methodType(void.class, Object.class);
+            begin = lookup.findVirtual(eventClass, "begin", MethodType.methodType(void.class)).asType(objectToVoid);
+            end = lookup.findVirtual(eventClass, "end", MethodType.methodType(void.class)).asType(objectToVoid);
+            commit = lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class)).asType(objectToVoid);
+            set = lookup.findVirtual(eventClass, "set", MethodType.methodType(void.class, int.class, Object.class))
+                .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+
+            Registrar r = new Registrar(lookup, eventClass);
+            request = r.register("io.muserver.Request", "HTTP Request", "An HTTP request from when its headers were received until it completed",
+                r.text("method", "Method"), r.text("path", "Path"), r.text("protocol", "Protocol"), r.number("status", "Status"),
+                r.text("state", "State"), r.bytes("bytesRead", "Bytes Read"), r.bytes("bytesSent", "Bytes Sent"),
+                r.timespan("queueTime", "Queue Time"), r.timespan("handlerTime", "Handler Time"));
+            dispatch = r.register("io.muserver.HandlerDispatch", "Handler Dispatch", "The wait between a request being handed to an executor and its handler starting",
+                r.text("method", "Method"), r.text("path", "Path"));
+            bodyRead = r.register("io.muserver.RequestBodyRead", "Request Body Read", "A chunk of a request body that was passed to the request",
+                r.text("path", "Path"), r.bytes("bytes", "Bytes"), r.flag("last", "Last"));
+            responseFlushed = r.register("io.muserver.ResponseFlushed", "Response Flushed", "The last byte of a response was flushed to the connection",
+                r.text("path", "Path"), r.number("status", "Status"), r.bytes("bytesSent", "Bytes Sent"),
+                r.timespan("sendTime", "Send Time"));
+            rateLimited = r.register("io.muserver.RateLimitRejected", "Rate Limit Rejected", "A request was rejected by a rate limiter",
+                r.text("method", "Method"), r.text("path", "Path"), r.text("remoteAddress", "Remote Address"));
+            slowRequest = r.register("io.muserver.SlowRequest", "Slow HTTP Request", "An HTTP request that took longer than the slow request threshold",
+                r.text("method", "Method"), r.text("uri", "URI"), r.text("protocol", "Protocol"), r.text("remoteAddress", "Remote Address"),
+                r.number("status", "Status"), r.text("state", "State"), r.text("requestHeaders", "Request Headers"),
+                r.text("responseHeaders", "Response Headers"), r.bytes("bytesRead", "Bytes Read"), r.bytes("bytesSent", "Bytes Sent"),
+                r.timespan("dispatched", "Dispatched"), r.timespan("handlerStarted", "Handler Started"),
+                r.timespan("firstByteWritten", "First Byte Written"), r.timespan("lastByteFlushed", "Last Byte Flushed"),
+                r.timespan("total", "Total"));
+            websocket = r.register("io.muserver.WebSocket", "WebSocket State", "A websocket session changed state",
+                r.text("state", "State"), r.text("remoteAddress", "Remote Address"));
+            sse = r.register("io.muserver.ServerSentEvents", "Server-Sent Events", "A server-sent event stream was opened or closed",
+                r.text("path", "Path"), r.text("action", "Action"), r.timespan("duration", "Duration"));
+        } catch (Throwable e) {
+            log.debug("Flight recorder events are not supported: " + e);
+            request = null;
+        }
+        BEGIN = begin;
+        END = end;
+        COMMIT = commit;
+        SET = set;
+        REQUEST = request;
+        DISPATCH = dispatch;
+        BODY_READ = bodyRead;
+        RESPONSE_FLUSHED = responseFlushed;
+        RATE_LIMITED = rateLimited;
+        SLOW_REQUEST = slowRequest;
+        WEBSOCKET = websocket;
+        SSE = sse;
+    }
+
+    private final long slowRequestThresholdNanos;
+
+    private FlightRecorderEvents(long slowRequestThresholdNanos) {
+        this.slowRequestThresholdNanos = slowRequestThresholdNanos;
+    }
+
+    /**
+     * @return True if the current JVM supports creating flight recorder events
+     */
+    static boolean isSupported() {
+        return REQUEST != null;
+    }
+
+    /**
+     * Creates the events of a server
+     * @param slowRequestThresholdNanos The duration at or above which the slow request event is emitted, or 0 to not emit it
+     * @return A new instance
+     * @throws IllegalStateException if flight recorder events are not supported by this JVM
+     */
+    static FlightRecorderEvents create(long slowRequestThresholdNanos) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Flight recorder events require a JVM with JDK Flight Recorder, such as Java 11 or later, but the current version is " + System.getProperty("java.version"));
+        }
+        return new FlightRecorderEvents(slowRequestThresholdNanos);
+    }
+
+    /**
+     * @return A request event that has been started, or null if the event is not enabled
+     */
+    Object beginRequest() {
+        return begin(REQUEST);
+    }
+
+    /**
+     * @return A dispatch event that has been started, or null if the event is not enabled
+     */
+    Object beginDispatch() {
+        return begin(DISPATCH);
+    }
+
+    void endDispatch(Object event, HttpExchange exchange) {
+        end(event, exchange.request.method().name(), exchange.request.relativePath());
+    }
+
+    /**
+     * Ends the request event begun by {@link #beginRequest()}, if any, and emits the slow request event if
+     * the request took long enough
+     */
+    void onRequestCompleted(Object requestEvent, HttpExchange exchange) {
+        NettyRequestAdapter request = exchange.request;
+        NettyResponseAdaptor response = exchange.response;
+        if (requestEvent != null) {
+            long dispatched = exchange.dispatchedNanos();
+            long handlerStarted = exchange.handlerStartedNanos();
+            long firstByte = exchange.firstByteWrittenNanos();
+            end(requestEvent, request.method().name(), request.relativePath(), exchange.connection().protocol(),
+                response.status(), exchange.state().name(), exchange.bodyBytesRead(), response.bytesStreamed,
+                dispatched == -1 || handlerStarted == -1 ? 0L : handlerStarted - dispatched,
+                handlerStarted == -1 || firstByte == -1 ? 0L : firstByte - handlerStarted);
+        }
+        long total = exchange.durationNanos();
+        if (slowRequestThresholdNanos > 0 && total >= slowRequestThresholdNanos && enabled(SLOW_REQUEST)) {
+            emit(SLOW_REQUEST, request.method().name(), request.uri().toString(), exchange.connection().protocol(),
+                request.remoteAddress(), response.status(), exchange.state().name(), request.headers().toString(),
+                response.headers().toString(), exchange.bodyBytesRead(), response.bytesStreamed,
+                exchange.dispatchedNanos(), exchange.handlerStartedNanos(), exchange.firstByteWrittenNanos(),
+                exchange.lastByteFlushedNanos(), total);
+        }
+    }
+
+    void onBodyRead(HttpExchange exchange, int bytes, boolean last) {
+        if (enabled(BODY_READ)) {
+            emit(BODY_READ, exchange.request.relativePath(), (long) bytes, last);
+        }
+    }
+
+    void onResponseFlushed(HttpExchange exchange) {
+        if (enabled(RESPONSE_FLUSHED)) {
+            long firstByte = exchange.firstByteWrittenNanos();
+            emit(RESPONSE_FLUSHED, exchange.request.relativePath(), exchange.response.status(), exchange.response.bytesStreamed,
+                firstByte == -1 ? 0L : exchange.lastByteFlushedNanos() - firstByte);
+        }
+    }
+
+    void onRateLimited(MuRequest request) {
+        if (enabled(RATE_LIMITED)) {
+            emit(RATE_LIMITED, request.method().name(), request.relativePath(), request.remoteAddress());
+        }
+    }
+
+    void onWebSocketStateChanged(WebsocketSessionState state, MuWebSocketSession session) {
+        if (enabled(WEBSOCKET)) {
+            emit(WEBSOCKET, state.name(), session.remoteAddress().getHostString());
+        }
+    }
+
+    /**
+     * Emits an event when a server-sent event stream starts, and another when it ends
+     */
+    void onSseStarted(MuRequest request, AsyncHandle asyncHandle) {
+        if (enabled(SSE)) {
+            String path = request.relativePath();
+            long start = System.nanoTime();
+            emit(SSE, path, "open", 0L);
+            asyncHandle.addResponseCompleteHandler(info -> {
+                if (enabled(SSE)) {
+                    emit(SSE, path, "closed", System.nanoTime() - start);
+                }
+            });
+        }
+    }
+
+    private static boolean enabled(Kind kind) {
+        try {
+            return (boolean) kind.enabled.invokeExact();
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static Object begin(Kind kind) {
+        if (!enabled(kind)) {
+            return null;
+        }
+        try {
+            Object event = (Object) kind.newEvent.invokeExact();
+            BEGIN.invokeExact(event);
+            return event;
+        } catch (Throwable e) {
+            log.debug("Could not create flight recorder event " + kind.name, e);
+            return null;
+        }
+    }
+
+    private static void end(Object event, Object... values) {
+        if (event != null) {
+            try {
+                END.invokeExact(event);
+                commit(event, values);
+            } catch (Throwable e) {
+                log.debug("Could not commit flight recorder event", e);
+            }
+        }
+    }
+
+    private static void emit(Kind kind, Object... values) {
+        try {
+            commit((Object) kind.newEvent.invokeExact(), values);
+        } catch (Throwable e) {
+            log.debug("Could not commit flight recorder event " + kind.name, e);
+        }
+    }
+
+    private static void commit(Object event, Object[] values) throws Throwable {
+        for (int i = 0; i < values.length; i++) {
+            SET.invokeExact(event, i, values[i]);
+        }
+        COMMIT.invokeExact(event);
+    }
+
+    /**
+     * A registered event type
+     */
+    private static final class Kind {
+        private final String name;
+        private final MethodHandle newEvent;
+        private final MethodHandle enabled;
+
+        private Kind(String name, MethodHandle newEvent, MethodHandle enabled) {
+            this.name = name;
+            this.newEvent = newEvent;
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Builds the annotations and fields of event types and registers them with the event factory
+     */
+    private static final class Registrar {
+        private final MethodHandles.Lookup lookup;
+        private final Class<?> eventClass;
+        private final Constructor<?> newAnnotation;
+        private final Constructor<?> newField;
+        private final Method createFactory;
+        private final Method getEventType;
+        private final Class<?> eventTypeClass;
+        private final Class<?> factoryClass;
+
+        private Registrar(MethodHandles.Lookup lookup, Class<?> eventClass) throws ReflectiveOperationException {
+            this.lookup = lookup;
+            this.eventClass = eventClass;
+            this.newAnnotation = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+            this.newField = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            this.factoryClass = Class.forName("jdk.jfr.EventFactory");
+            this.createFactory = factoryClass.getMethod("create", List.class, List.class);
+            this.getEventType = factoryClass.getMethod("getEventType");
+            this.eventTypeClass = Class.forName("jdk.jfr.EventType");
+        }
+
+        private Object annotation(String type, Object value) throws ReflectiveOperationException {
+            return newAnnotation.newInstance(Class.forName(type), value);
+        }
+
+        private Object field(Class<?> type, String name, String label, Object... extraAnnotations) throws ReflectiveOperationException {
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotation("jdk.jfr.Label", label));
+            annotations.addAll(Arrays.asList(extraAnnotations));
+            return newField.newInstance(type, name, annotations);
+        }
+
+        Object text(String name, String label) throws ReflectiveOperationException {
+            return field(String.class, name, label);
+        }
+
+        Object number(String name, String label) throws ReflectiveOperationException {
+            return field(int.class, name, label);
+        }
+
+        Object flag(String name, String label) throws ReflectiveOperationException {
+            return field(boolean.class, name, label);
+        }
+
+        Object bytes(String name, String label) throws ReflectiveOperationException {
+            return field(long.class, name, label, annotation("jdk.jfr.DataAmount", "BYTES"));
+        }
+
+        Object timespan(String name, String label) throws ReflectiveOperationException {
+            return field(long.class, name, label, annotation("jdk.jfr.Timespan", "NANOSECONDS"));
+        }
+
+        Kind register(String name, String label, String description, Object... fields) throws Throwable {
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotation("jdk.jfr.Name", name));
+            annotations.add(annotation("jdk.jfr.Label", label));
+            annotations.add(annotation("jdk.jfr.Description", description));
+            annotations.add(annotation("jdk.jfr.Category", CATEGORY));
+            annotations.add(annotation("jdk.jfr.StackTrace", false));
+            Object factory = createFactory.invoke(null, annotations, Collections.unmodifiableList(Arrays.asList(fields)));
+            MethodHandle newEvent = lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(eventClass))
+                .bindTo(factory).asType(MethodType.methodType(Object.class));
+            MethodHandle enabled = lookup.findVirtual(eventTypeClass, "isEnabled", MethodType.methodType(boolean.class))
+                .bindTo(getEventType.invoke(factory));
+            return new Kind(name, newEvent, enabled);
+        }
+    }
+}
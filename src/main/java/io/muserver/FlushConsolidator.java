@@ -0,0 +1,140 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * <p>Delays flushes that happen while inbound data is being read until the read is complete, so that the writes caused
+ * by one read (such as many HTTP/2 frames, or the responses to pipelined requests handled on the event loop) are
+ * sent with one flush, and with TLS in fewer records.</p>
+ * <p>Writes from handler threads reach the event loop as separate tasks, each with its own flush. So when a flush
+ * happens outside of a read while other tasks are queued on the event loop, a single flush is run after those
+ * tasks instead, which sends a burst of writes from a handler thread together. If nothing else is queued the flush
+ * happens straight away, so an idle connection gets no added latency. A flush also happens straight away once the
+ * unflushed bytes reach the threshold.</p>
+ * @see MuServerBuilder#withFlushConsolidation(int)
+ */
+class FlushConsolidator extends ChannelDuplexHandler {
+    static final String NAME = "flushconsolidator";
+
+    private final int maxPendingBytes;
+    private long pendingBytes;
+    private boolean flushRequested;
+    private boolean readInProgress;
+    private boolean flushScheduled;
+    private ChannelHandlerContext ctx;
+    private final Runnable scheduledFlush = () -> {
+        flushScheduled = false;
+        flushIfRequested();
+    };
+
+    FlushConsolidator(int maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        readInProgress = false;
+        flushIfRequested();
+        super.channelReadComplete(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        readInProgress = false;
+        flushIfRequested();
+        super.exceptionCaught(ctx, cause);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        pendingBytes += size(msg);
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        flushRequested = true;
+        if (pendingBytes >= maxPendingBytes) {
+            flushIfRequested();
+        } else if (!readInProgress && !flushScheduled) {
+            if (otherTasksQueued(ctx.executor())) {
+                flushScheduled = true;
+                ctx.executor().execute(scheduledFlush);
+            } else {
+                flushIfRequested();
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the event loop has tasks waiting to run, which may be more writes for this connection
+     */
+    private static boolean otherTasksQueued(EventExecutor executor) {
+        return executor instanceof SingleThreadEventExecutor && ((SingleThreadEventExecutor) executor).pendingTasks() > 0;
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            // unflushed data counts towards the write buffer water mark, so it needs to be sent before the channel can become writable again
+            flushIfRequested();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfRequested();
+        super.close(ctx, promise);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfRequested();
+        super.disconnect(ctx, promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushIfRequested();
+        super.handlerRemoved(ctx);
+    }
+
+    private void flushIfRequested() {
+        if (flushRequested) {
+            flushRequested = false;
+            pendingBytes = 0;
+            ctx.flush();
+        }
+    }
+
+    private static long size(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        } else if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        } else if (msg instanceof FileRegion) {
+            return ((FileRegion) msg).count();
+        }
+        return 0;
+    }
+}
@@ -269,6 +269,10 @@ public final class HeaderNames {
      * {@code "server"}
      */
     public static final CharSequence SERVER = HttpHeaderNames.SERVER;
+    /**
+     * {@code "server-timing"}
+     */
+    public static final CharSequence SERVER_TIMING = AsciiString.cached("server-timing");
     /**
      * {@code "set-cookie"}
      */
@@ -1,5 +1,7 @@
 package io.muserver;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -13,25 +15,41 @@ import org.slf4j.LoggerFactory;
 import javax.net.ssl.SSLSession;
 import java.net.InetSocketAddress;
 import java.time.Instant;
-import java.util.Collections;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
-import static io.netty.buffer.Unpooled.copiedBuffer;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
 class Http1Connection extends SimpleChannelInboundHandler<Object> implements HttpConnection {
     private static final Logger log = LoggerFactory.getLogger(Http1Connection.class);
 
     private final NettyHandlerAdapter nettyHandlerAdapter;
     private final MuStatsImpl serverStats;
-    private final MuStatsImpl connectionStats = new MuStatsImpl(null);
+    private final MuStatsImpl connectionStats = new MuStatsImpl();
     private final MuServerImpl server;
     private final String proto;
     private final Instant startTime = Instant.now();
     private ChannelHandlerContext nettyCtx;
     private InetSocketAddress remoteAddress;
-    private Exchange currentExchange = null;
+    /**
+     * The exchanges in progress, in the order their requests were received. Only the first one may write to the
+     * channel; the others are pipelined requests with writes held until the earlier responses are complete.
+     */
+    private final Deque<Exchange> exchanges = new ConcurrentLinkedDeque<>();
+    /**
+     * The exchange that received messages (e.g. request body chunks or websocket frames) are sent to
+     */
+    private Exchange readingExchange;
+    private final Set<HttpExchange> bufferedEmptyBodies = new HashSet<>();
+    private boolean pipelineAfterLatest;
+    /**
+     * A request or rejection that must wait until all exchanges in progress are complete
+     */
+    private Runnable deferred;
+    /**
+     * True when the server is stopping, so no more requests are read and the connection closes when idle
+     */
+    private boolean draining;
 
     Http1Connection(NettyHandlerAdapter nettyHandlerAdapter, MuServerImpl server, String proto) {
         this.nettyHandlerAdapter = nettyHandlerAdapter;
@@ -48,7 +66,7 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
     @Override
     public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
         this.nettyCtx = ctx;
-        remoteAddress = (InetSocketAddress) ctx.channel().remoteAddress();
+        remoteAddress = Mutils.remoteAddress(ctx.channel());
         serverStats.onConnectionOpened();
         connectionStats.onConnectionOpened();
         super.handlerAdded(ctx);
@@ -56,12 +74,23 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
         ctx.channel().read();
     }
 
+    /**
+     * Called when this handler has been removed from the pipeline because the connection was upgraded to HTTP/2
+     */
+    void onUpgraded() {
+        serverStats.onConnectionUpgraded();
+        server.onConnectionEnded(this);
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         serverStats.onConnectionClosed();
         server.onConnectionEnded(this);
-        if (currentExchange != null) {
-            currentExchange.onConnectionEnded(ctx);
+        for (Exchange exchange : new ArrayList<>(exchanges)) {
+            exchange.onConnectionEnded(ctx);
+            if (exchange instanceof HttpExchange) {
+                ((Http1Response) ((HttpExchange) exchange).response).discardHeldWrites();
+            }
         }
         super.channelInactive(ctx);
     }
@@ -77,34 +106,47 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
 
     private void onChannelRead(ChannelHandlerContext ctx, Object msg) {
         if (msg instanceof HttpRequest) {
+            HttpRequest nettyRequest = (HttpRequest) msg;
+            boolean pipelined = !exchanges.isEmpty();
+            if (pipelined && (HttpUtil.is100ContinueExpected(nettyRequest) || nettyRequest.headers().contains(HttpHeaderNames.UPGRADE))) {
+                // these write to the channel before the handler runs, so wait until earlier responses are sent
+                this.deferred = () -> onChannelRead(ctx, nettyRequest);
+                return;
+            }
+            this.readingExchange = null;
             try {
-                this.currentExchange = HttpExchange.create(server, proto, ctx, this, (HttpRequest) msg,
+                HttpExchange exchange = HttpExchange.create(server, proto, ctx, this, nettyRequest,
                     nettyHandlerAdapter, connectionStats,
-                    (exchange, newState) -> {
+                    (ex, newState) -> {
                         if (newState == RequestState.RECEIVING_BODY) {
-                            ctx.channel().read();
+                            if (bufferedEmptyBodies.remove(ex)) {
+                                ctx.executor().execute(() -> deliver(ctx, ex, LastHttpContent.EMPTY_LAST_CONTENT));
+                            } else {
+                                ctx.channel().read();
+                            }
+                        } else if (newState == RequestState.COMPLETE) {
+                            readNextIfReady(ctx);
                         }
                     },
-                    (exchange, newState) -> {
+                    (ex, newState) -> {
                         if (newState.endState()) {
-                            nettyHandlerAdapter.onResponseComplete(exchange, serverStats, connectionStats);
+                            nettyHandlerAdapter.onResponseComplete(ex, serverStats, connectionStats);
                             ctx.channel().eventLoop().execute(() -> {
-                                if (exchange.state() != HttpExchangeState.UPGRADED) {
-                                    if (this.currentExchange != exchange) {
-                                        throw new IllegalStateException("Expected current exchange to be " + exchange + " but was " + this.currentExchange);
-                                    }
-                                    this.currentExchange = null;
-                                    exchange.request.cleanup();
-                                    if (exchange.state() == HttpExchangeState.ERRORED) {
-                                        ctx.channel().close();
-                                    } else {
-                                        ctx.channel().read(); // should it actually read after request complete?
-                                    }
+                                if (ex.state() != HttpExchangeState.UPGRADED) {
+                                    onExchangeEnded(ctx, ex);
                                 }
                             });
                         }
-                    });
-
+                    }, pipelined);
+                if (draining) {
+                    ((Http1Response) exchange.response).closeConnectionAfterResponse();
+                }
+                this.exchanges.add(exchange);
+                this.readingExchange = exchange;
+                this.pipelineAfterLatest = server.settings().maxPipelinedRequests > 1
+                    && HttpUtil.isKeepAlive(nettyRequest)
+                    && !nettyRequest.headers().contains(HttpHeaderNames.UPGRADE);
+                readNextIfReady(ctx);
             } catch (InvalidHttpRequestException ihr) {
                 if (ihr.code == 429 || ihr.code == 503) {
                     connectionStats.onRejectedDueToOverload();
@@ -113,40 +155,130 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
                     connectionStats.onInvalidRequest();
                     serverStats.onInvalidRequest();
                 }
-                sendSimpleResponse(ctx, ihr.getMessage(), ihr.code);
+                Runnable reject = () -> {
+                    sendSimpleResponse(ctx, ihr.getMessage(), ihr.code, ihr.retryAfterSeconds);
+                    ctx.channel().read();
+                };
+                if (exchanges.isEmpty()) {
+                    reject.run();
+                } else {
+                    this.deferred = reject;
+                }
+            }
+        } else if (readingExchange != null) {
+            Exchange exchange = readingExchange;
+            if (exchange instanceof HttpExchange && msg instanceof LastHttpContent
+                && !((LastHttpContent) msg).content().isReadable()
+                && ((HttpExchange) exchange).request.requestState() == RequestState.HEADERS_RECEIVED) {
+                // A request with no body that was read ahead so the next pipelined request can be read. The
+                // end of the body is passed to the request if it is ever read.
+                bufferedEmptyBodies.add((HttpExchange) exchange);
+                readNextIfReady(ctx);
+            } else {
+                deliver(ctx, exchange, msg);
+            }
+        } else {
+            log.debug("Got a chunk of message for an unknown request. This can happen when a request is rejected based on headers, and then the rejected body arrives.");
+            if (deferred == null || !(msg instanceof LastHttpContent)) {
                 ctx.channel().read();
             }
-        } else if (currentExchange != null) {
-            currentExchange.onMessage(ctx, msg, error -> {
+        }
+    }
+
+    private void deliver(ChannelHandlerContext ctx, Exchange exchange, Object msg) {
+        try {
+            exchange.onMessage(ctx, msg, error -> {
                 if (error == null) {
                     if (!(msg instanceof LastHttpContent)) {
                         ctx.channel().read();
                     }
                 } else {
-                    ctx.fireUserEventTriggered(new MuExceptionFiredEvent(currentExchange, -1, error));
+                    ctx.fireUserEventTriggered(new MuExceptionFiredEvent(exchange, -1, error));
                 }
             });
+        } catch (UnexpectedMessageException e) {
+            log.warn("Unhandled internal error. Closing connection.", e);
+            ctx.channel().close();
+        }
+    }
+
+    private void onExchangeEnded(ChannelHandlerContext ctx, HttpExchange exchange) {
+        if (!exchanges.remove(exchange)) {
+            throw new IllegalStateException("Expected " + exchange + " to be in progress but the in progress exchanges are " + exchanges);
+        }
+        bufferedEmptyBodies.remove(exchange);
+        if (readingExchange == exchange) {
+            readingExchange = null;
+        }
+        exchange.request.cleanup();
+        if (exchange.state() == HttpExchangeState.ERRORED) {
+            ctx.channel().close();
         } else {
-            log.debug("Got a chunk of message for an unknown request. This can happen when a request is rejected based on headers, and then the rejected body arrives.");
+            Exchange next = exchanges.peekFirst();
+            if (next instanceof HttpExchange) {
+                ((Http1Response) ((HttpExchange) next).response).releaseWrites();
+            } else if (next == null && deferred != null) {
+                Runnable toRun = this.deferred;
+                this.deferred = null;
+                toRun.run();
+                return;
+            }
+            readNextIfReady(ctx);
+        }
+    }
+
+    /**
+     * Requests the next message from the client if the current request is still being received, or if a new
+     * (possibly pipelined) request can be accepted.
+     */
+    private void readNextIfReady(ChannelHandlerContext ctx) {
+        if (deferred != null) {
+            return;
+        }
+        if (draining) {
+            if (exchanges.isEmpty()) {
+                ctx.channel().close();
+            }
+            return;
+        }
+        Exchange latest = exchanges.peekLast();
+        if (latest == null) {
+            ctx.channel().read();
+            return;
+        }
+        if (!(latest instanceof HttpExchange) || !pipelineAfterLatest) {
+            return;
+        }
+        HttpExchange exchange = (HttpExchange) latest;
+        RequestState requestState = exchange.request.requestState();
+        if (requestState == RequestState.COMPLETE || bufferedEmptyBodies.contains(exchange)) {
+            if (exchanges.size() < server.settings().maxPipelinedRequests) {
+                ctx.channel().read();
+            }
+        } else if (requestState == RequestState.HEADERS_RECEIVED && !exchange.request.headers().hasBody()) {
             ctx.channel().read();
         }
     }
 
-    private static ChannelFuture sendSimpleResponse(ChannelHandlerContext ctx, String message, int code) {
-        byte[] bytes = message.getBytes(UTF_8);
-        FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, HttpResponseStatus.valueOf(code), copiedBuffer(bytes));
+    private static ChannelFuture sendSimpleResponse(ChannelHandlerContext ctx, String message, int code, long retryAfterSeconds) {
+        ByteBuf content = ByteBufUtil.writeUtf8(ctx.alloc(), message);
+        FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, HttpResponseStatus.valueOf(code), content);
         response.headers().set(HeaderNames.CONTENT_TYPE, ContentTypes.TEXT_PLAIN_UTF8);
-        response.headers().set(HeaderNames.CONTENT_LENGTH, bytes.length);
+        response.headers().set(HeaderNames.CONTENT_LENGTH, content.readableBytes());
+        if (retryAfterSeconds >= 0) {
+            response.headers().set(HeaderNames.RETRY_AFTER, retryAfterSeconds);
+        }
         return ctx.writeAndFlush(response);
     }
 
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
-        Exchange exchange = this.currentExchange;
         if (evt instanceof IdleStateEvent) {
             IdleStateEvent ise = (IdleStateEvent) evt;
-            if (exchange != null) {
-                exchange.onIdleTimeout(ctx, ise);
+            if (!exchanges.isEmpty()) {
+                for (Exchange exchange : new ArrayList<>(exchanges)) {
+                    exchange.onIdleTimeout(ctx, ise);
+                }
             } else if (ise.state() == IdleState.ALL_IDLE) {
                 ctx.channel().close();
                 // Can't send a 408 so just closing context. See: https://stackoverflow.com/q/56722103/131578
@@ -155,12 +287,13 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
         } else if (evt instanceof ExchangeUpgradeEvent) {
             ExchangeUpgradeEvent eue = (ExchangeUpgradeEvent) evt;
             if (eue.success()) {
-                if (this.currentExchange instanceof HttpExchange) {
-                    HttpExchange httpExchange = (HttpExchange) this.currentExchange;
+                Exchange current = exchanges.peekLast();
+                if (current instanceof HttpExchange) {
+                    HttpExchange httpExchange = (HttpExchange) current;
                     httpExchange.addChangeListener((upgradeExchange, newState) -> {
                         if (newState == HttpExchangeState.UPGRADED) {
-                            this.currentExchange = eue.newExchange;
-                            this.currentExchange.onUpgradeComplete(ctx);
+                            setUpgradedExchange(eue.newExchange);
+                            eue.newExchange.onUpgradeComplete(ctx);
                             ctx.channel().read();
                         } else if (newState == HttpExchangeState.ERRORED) {
                             eue.newExchange.onConnectionEnded(ctx);
@@ -169,7 +302,7 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
                     httpExchange.response.setWebsocket();
                     ctx.channel().read();
                 } else {
-                    this.currentExchange = eue.newExchange;
+                    setUpgradedExchange(eue.newExchange);
                     ctx.channel().read();
                 }
             } else {
@@ -177,14 +310,44 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
             }
         } else if (evt instanceof MuExceptionFiredEvent) {
             MuExceptionFiredEvent mefe = (MuExceptionFiredEvent) evt;
-            exceptionCaught(ctx, mefe.error);
+            Exchange exchange = exchanges.contains(mefe.exchange) ? mefe.exchange : exchanges.peekLast();
+            onException(ctx, exchange, mefe.error);
+        } else if (evt instanceof DrainConnectionEvent) {
+            drain(ctx);
         }
         super.userEventTriggered(ctx, evt);
     }
 
+    private void drain(ChannelHandlerContext ctx) {
+        draining = true;
+        if (exchanges.isEmpty() && deferred == null) {
+            ctx.channel().close();
+            return;
+        }
+        for (Exchange exchange : exchanges) {
+            if (exchange instanceof HttpExchange) {
+                ((Http1Response) ((HttpExchange) exchange).response).closeConnectionAfterResponse();
+            } else if (exchange instanceof MuWebSocketSessionImpl) {
+                MuWebSocketSessionImpl session = (MuWebSocketSessionImpl) exchange;
+                if (!session.state().endState()) {
+                    session.close(1001, "Server stopping");
+                }
+            }
+        }
+    }
+
+    private void setUpgradedExchange(Exchange exchange) {
+        exchanges.clear();
+        exchanges.add(exchange);
+        readingExchange = exchange;
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-        Exchange exchange = this.currentExchange;
+        onException(ctx, exchanges.peekLast(), cause);
+    }
+
+    private static void onException(ChannelHandlerContext ctx, Exchange exchange, Throwable cause) {
         if (exchange != null) {
             if (exchange.onException(ctx, cause)) {
                 ctx.channel().close();
@@ -241,15 +404,18 @@ class Http1Connection extends SimpleChannelInboundHandler<Object> implements Htt
 
     @Override
     public Set<MuRequest> activeRequests() {
-        Exchange currentExchange = this.currentExchange;
-        return currentExchange instanceof HttpExchange
-            ? Collections.singleton(((HttpExchange) currentExchange).request)
-            : Collections.emptySet();
+        Set<MuRequest> requests = new HashSet<>();
+        for (Exchange exchange : exchanges) {
+            if (exchange instanceof HttpExchange) {
+                requests.add(((HttpExchange) exchange).request);
+            }
+        }
+        return requests;
     }
 
     @Override
     public Set<MuWebSocket> activeWebsockets() {
-        Exchange currentExchange = this.currentExchange;
+        Exchange currentExchange = exchanges.peekFirst();
         return currentExchange instanceof MuWebSocketSessionImpl
             ? Collections.singleton(((MuWebSocketSessionImpl) currentExchange).muWebSocket)
             : Collections.emptySet();
@@ -5,7 +5,11 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
@@ -14,6 +18,12 @@ class Http1Response extends NettyResponseAdaptor {
 
     final ChannelHandlerContext ctx;
     private final Http1Headers headers;
+    /**
+     * Writes that are held back while earlier pipelined responses on the same connection are still being sent,
+     * or null if this response can write to the channel directly.
+     */
+    private List<PendingWrite> heldWrites;
+    private boolean closeConnection;
 
     Http1Response(ChannelHandlerContext ctx, NettyRequestAdapter request, Http1Headers headers) {
         super(request, headers);
@@ -29,14 +39,14 @@ class Http1Response extends NettyResponseAdaptor {
             headers.set(HeaderNames.TRANSFER_ENCODING, HeaderValues.CHUNKED);
         }
         writeHeaders(response);
-        return ctx.write(response);
+        return write(response, false);
     }
 
     @Override
-    protected void onContentLengthMismatch() {
+    protected void onContentLengthMismatch(long bytesToBeSent) {
         throw new IllegalStateException("The declared content length for " + request + " was " + declaredLength + " bytes. " +
             "The current write is being aborted and the connection is being closed because it would have resulted in " +
-            bytesStreamed + " bytes being sent.");
+            bytesToBeSent + " bytes being sent.");
     }
 
     private void writeHeaders(HttpResponse response) {
@@ -44,13 +54,24 @@ class Http1Response extends NettyResponseAdaptor {
         for (Map.Entry<String, String> header : this.headers) {
             rh.add(header.getKey(), header.getValue());
         }
+        if (closeConnection) {
+            rh.set(HeaderNames.CONNECTION, HeaderValues.CLOSE);
+        }
+    }
+
+    /**
+     * Tells the client that the connection will close after this response, if the headers are not yet sent
+     */
+    void closeConnectionAfterResponse() {
+        assert ctx.executor().inEventLoop() : "Not in event loop";
+        this.closeConnection = true;
     }
 
 
     @Override
     ChannelFuture writeAndFlushToChannel(boolean isLast, ByteBuf content) {
         HttpContent msg = isLast ? new DefaultLastHttpContent(content) : new DefaultHttpContent(content);
-        return ctx.writeAndFlush(msg);
+        return write(msg, true);
     }
 
     @Override
@@ -73,7 +94,7 @@ class Http1Response extends NettyResponseAdaptor {
             new EmptyHttpResponse(httpStatus())
             : new DefaultFullHttpResponse(HTTP_1_1, httpStatus(), body, false);
         writeHeaders(resp);
-        return ctx.writeAndFlush(resp);
+        return write(resp, true);
     }
 
     @Override
@@ -85,12 +106,77 @@ class Http1Response extends NettyResponseAdaptor {
         if (addContentLengthHeader) {
             msg.headers().set(HeaderNames.CONTENT_LENGTH, HeaderValues.ZERO);
         }
-        return ctx.writeAndFlush(msg);
+        return write(msg, true);
     }
 
     @Override
     protected ChannelFuture writeLastContentMarker() {
-        return ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        return write(LastHttpContent.EMPTY_LAST_CONTENT, true);
+    }
+
+    /**
+     * Holds all writes until {@link #releaseWrites()} is called. Used for pipelined requests so that responses are
+     * sent in the same order that the requests were received.
+     */
+    void holdWrites() {
+        assert ctx.executor().inEventLoop() : "Not in event loop";
+        if (heldWrites == null) {
+            heldWrites = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Sends any held writes to the channel and allows subsequent writes to go directly to the channel.
+     */
+    void releaseWrites() {
+        assert ctx.executor().inEventLoop() : "Not in event loop";
+        List<PendingWrite> toSend = this.heldWrites;
+        if (toSend != null) {
+            this.heldWrites = null;
+            for (PendingWrite pendingWrite : toSend) {
+                if (pendingWrite.flush) {
+                    ctx.writeAndFlush(pendingWrite.msg, pendingWrite.promise);
+                } else {
+                    ctx.write(pendingWrite.msg, pendingWrite.promise);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases any held writes, for example when the connection closes before this response could be sent.
+     */
+    void discardHeldWrites() {
+        List<PendingWrite> toDiscard = this.heldWrites;
+        if (toDiscard != null) {
+            this.heldWrites = null;
+            for (PendingWrite pendingWrite : toDiscard) {
+                ReferenceCountUtil.release(pendingWrite.msg);
+                pendingWrite.promise.tryFailure(new ClosedChannelException());
+            }
+        }
+    }
+
+    private ChannelFuture write(Object msg, boolean flush) {
+        List<PendingWrite> held = this.heldWrites;
+        if (held != null) {
+            ChannelPromise promise = ctx.newPromise();
+            held.add(new PendingWrite(msg, promise, flush));
+            return promise;
+        }
+        return flush ? ctx.writeAndFlush(msg) : ctx.write(msg);
+    }
+
+    private static class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+        private final boolean flush;
+
+        private PendingWrite(Object msg, ChannelPromise promise, boolean flush) {
+            this.msg = msg;
+            this.promise = promise;
+            this.flush = flush;
+        }
     }
 
     @Override
@@ -0,0 +1,105 @@
+package io.muserver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-connection budgets for HTTP/2 frames that cost the server more than they cost the client, such as streams that
+ * are started and then immediately reset (the &quot;rapid reset&quot; attack), PING and SETTINGS floods, and empty
+ * DATA frames.
+ * <p>Each budget counts events in fixed one-second windows. Once any budget is exceeded the guard is tripped and
+ * the connection should be closed.</p>
+ * <p>This is only ever accessed from the event loop of the connection.</p>
+ */
+final class Http2AbuseGuard {
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Budget streams;
+    private final Budget resets;
+    private final Budget controlFrames;
+    private final Budget emptyDataFrames;
+    private String violation;
+
+    Http2AbuseGuard(Http2Config config) {
+        this.streams = new Budget("new streams", config.maxStreamsPerSecond);
+        this.resets = new Budget("stream resets", config.maxResetsPerSecond);
+        this.controlFrames = new Budget("control frames", config.maxControlFramesPerSecond);
+        this.emptyDataFrames = new Budget("empty data frames", config.maxEmptyDataFramesPerSecond);
+    }
+
+    /**
+     * @return <code>false</code> if the client has started too many streams
+     */
+    boolean onStreamStarted() {
+        return check(streams);
+    }
+
+    /**
+     * @return <code>false</code> if the client has reset too many streams
+     */
+    boolean onReset() {
+        return check(resets);
+    }
+
+    /**
+     * @return <code>false</code> if the client has sent too many PING or SETTINGS frames
+     */
+    boolean onControlFrame() {
+        return check(controlFrames);
+    }
+
+    /**
+     * @return <code>false</code> if the client has sent too many empty DATA frames
+     */
+    boolean onEmptyDataFrame() {
+        return check(emptyDataFrames);
+    }
+
+    /**
+     * @return <code>true</code> if a budget has been exceeded on this connection
+     */
+    boolean tripped() {
+        return violation != null;
+    }
+
+    /**
+     * @return A description of the budget that was exceeded, or <code>null</code> if none has been
+     */
+    String violation() {
+        return violation;
+    }
+
+    private boolean check(Budget budget) {
+        if (violation != null) {
+            return false;
+        }
+        if (budget.exceeded(System.nanoTime())) {
+            violation = "more than " + budget.limit + " " + budget.name + " per second";
+            return false;
+        }
+        return true;
+    }
+
+    private static final class Budget {
+        private final String name;
+        private final int limit;
+        private long windowStart;
+        private int count;
+
+        private Budget(String name, int limit) {
+            this.name = name;
+            this.limit = limit;
+        }
+
+        private boolean exceeded(long now) {
+            if (limit == 0) {
+                return false;
+            }
+            if (count == 0 || now - windowStart >= WINDOW_NANOS) {
+                windowStart = now;
+                count = 0;
+            }
+            count++;
+            return count > limit;
+        }
+    }
+}
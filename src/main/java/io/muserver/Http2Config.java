@@ -1,13 +1,73 @@
 package io.muserver;
 
+import static io.netty.handler.codec.http2.Http2CodecUtil.DEFAULT_WINDOW_SIZE;
+
 /**
  * Configuration settings for HTTP2
  * @see Http2ConfigBuilder
  */
 public class Http2Config {
     final boolean enabled;
+    final int initialWindowSize;
+    final int connectionWindowSize;
+    final long maxConcurrentStreams;
+    final int maxFrameSize;
+    final long headerTableSize;
+    final boolean windowAutoTuning;
+    final int maxWindowSize;
+    final boolean cleartext;
+    final int maxStreamsPerSecond;
+    final int maxResetsPerSecond;
+    final int maxControlFramesPerSecond;
+    final int maxEmptyDataFramesPerSecond;
 
-    Http2Config(boolean enabled) {
+    Http2Config(boolean enabled, int initialWindowSize, int connectionWindowSize, long maxConcurrentStreams, int maxFrameSize, long headerTableSize, boolean windowAutoTuning, int maxWindowSize, boolean cleartext,
+                int maxStreamsPerSecond, int maxResetsPerSecond, int maxControlFramesPerSecond, int maxEmptyDataFramesPerSecond) {
         this.enabled = enabled;
+        this.initialWindowSize = initialWindowSize;
+        this.connectionWindowSize = connectionWindowSize;
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.maxFrameSize = maxFrameSize;
+        this.headerTableSize = headerTableSize;
+        this.windowAutoTuning = windowAutoTuning;
+        this.maxWindowSize = maxWindowSize;
+        this.cleartext = cleartext;
+        this.maxStreamsPerSecond = maxStreamsPerSecond;
+        this.maxResetsPerSecond = maxResetsPerSecond;
+        this.maxControlFramesPerSecond = maxControlFramesPerSecond;
+        this.maxEmptyDataFramesPerSecond = maxEmptyDataFramesPerSecond;
+    }
+
+    /**
+     * @return The stream window size that is sent to clients, which is the HTTP/2 default if none was specified
+     */
+    int streamWindowSize() {
+        return initialWindowSize == -1 ? DEFAULT_WINDOW_SIZE : initialWindowSize;
+    }
+
+    /**
+     * @return The connection window size, which is the HTTP/2 default if none was specified
+     */
+    int connectionWindow() {
+        return connectionWindowSize == -1 ? DEFAULT_WINDOW_SIZE : connectionWindowSize;
+    }
+
+    @Override
+    public String toString() {
+        return "Http2Config{" +
+            "enabled=" + enabled +
+            ", initialWindowSize=" + initialWindowSize +
+            ", connectionWindowSize=" + connectionWindowSize +
+            ", maxConcurrentStreams=" + maxConcurrentStreams +
+            ", maxFrameSize=" + maxFrameSize +
+            ", headerTableSize=" + headerTableSize +
+            ", windowAutoTuning=" + windowAutoTuning +
+            ", maxWindowSize=" + maxWindowSize +
+            ", cleartext=" + cleartext +
+            ", maxStreamsPerSecond=" + maxStreamsPerSecond +
+            ", maxResetsPerSecond=" + maxResetsPerSecond +
+            ", maxControlFramesPerSecond=" + maxControlFramesPerSecond +
+            ", maxEmptyDataFramesPerSecond=" + maxEmptyDataFramesPerSecond +
+            '}';
     }
 }
@@ -1,11 +1,29 @@
 package io.muserver;
 
+import io.netty.handler.codec.http2.Http2CodecUtil;
+
+import static io.netty.handler.codec.http2.Http2CodecUtil.*;
+
 /**
  * Configuration builder for enabling HTTP2 by passing the config to {@link MuServerBuilder#withHttp2Config(Http2ConfigBuilder)}
  */
 public class Http2ConfigBuilder {
 
+    static final int DEFAULT_MAX_WINDOW_SIZE = 16 * 1024 * 1024;
+
     private boolean enabled = false;
+    private int initialWindowSize = -1;
+    private int connectionWindowSize = -1;
+    private long maxConcurrentStreams = -1;
+    private int maxFrameSize = -1;
+    private long headerTableSize = -1;
+    private boolean windowAutoTuning = false;
+    private int maxWindowSize = DEFAULT_MAX_WINDOW_SIZE;
+    private boolean cleartext = false;
+    private int maxStreamsPerSecond = 0;
+    private int maxResetsPerSecond = 100;
+    private int maxControlFramesPerSecond = 100;
+    private int maxEmptyDataFramesPerSecond = 100;
 
     /**
      * Specifies whether to enable HTTP2 or not.
@@ -17,12 +35,191 @@ public class Http2ConfigBuilder {
         return this;
     }
 
+    /**
+     * <p>Sets the initial flow-control window size of each stream, which is the number of request body bytes a
+     * client may send on a request before the server acknowledges them.</p>
+     * <p>Larger windows allow faster uploads over high latency connections at the cost of more buffered data per
+     * request.</p>
+     * @param bytes The window size in bytes, between 65535 and 2147483647, or <code>-1</code> to use the HTTP/2 default of 65535
+     * @return This builder
+     */
+    public Http2ConfigBuilder withInitialWindowSize(int bytes) {
+        if (bytes != -1 && bytes < DEFAULT_WINDOW_SIZE) {
+            throw new IllegalArgumentException("The initial window size must be at least " + DEFAULT_WINDOW_SIZE + " but was " + bytes);
+        }
+        this.initialWindowSize = bytes;
+        return this;
+    }
+
+    /**
+     * Sets the flow-control window size of each connection, which is shared by all the streams on the connection.
+     * @param bytes The window size in bytes, between 65535 and 2147483647, or <code>-1</code> to use the HTTP/2 default of 65535
+     * @return This builder
+     */
+    public Http2ConfigBuilder withConnectionWindowSize(int bytes) {
+        if (bytes != -1 && bytes < DEFAULT_WINDOW_SIZE) {
+            throw new IllegalArgumentException("The connection window size must be at least " + DEFAULT_WINDOW_SIZE + " but was " + bytes);
+        }
+        this.connectionWindowSize = bytes;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of requests a client may have in progress at the same time on a single connection.
+     * @param maxConcurrentStreams The maximum number of concurrent streams, or <code>-1</code> for no limit (the default)
+     * @return This builder
+     */
+    public Http2ConfigBuilder withMaxConcurrentStreams(long maxConcurrentStreams) {
+        if (maxConcurrentStreams != -1 && (maxConcurrentStreams < 0 || maxConcurrentStreams > MAX_CONCURRENT_STREAMS)) {
+            throw new IllegalArgumentException("The max concurrent streams must be between 0 and " + MAX_CONCURRENT_STREAMS + " but was " + maxConcurrentStreams);
+        }
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        return this;
+    }
+
+    /**
+     * Sets the largest frame payload that clients may send to the server.
+     * @param bytes The maximum frame size in bytes, between 16384 and 16777215, or <code>-1</code> to use the HTTP/2 default of 16384
+     * @return This builder
+     */
+    public Http2ConfigBuilder withMaxFrameSize(int bytes) {
+        if (bytes != -1 && !Http2CodecUtil.isMaxFrameSizeValid(bytes)) {
+            throw new IllegalArgumentException("The max frame size must be between " + MAX_FRAME_SIZE_LOWER_BOUND + " and " + MAX_FRAME_SIZE_UPPER_BOUND + " but was " + bytes);
+        }
+        this.maxFrameSize = bytes;
+        return this;
+    }
+
+    /**
+     * Sets the size of the HPACK dynamic table that clients may use when compressing request headers.
+     * @param bytes The table size in bytes, or <code>-1</code> to use the HTTP/2 default of 4096
+     * @return This builder
+     */
+    public Http2ConfigBuilder withHeaderTableSize(long bytes) {
+        if (bytes != -1 && (bytes < 0 || bytes > MAX_HEADER_TABLE_SIZE)) {
+            throw new IllegalArgumentException("The header table size must be between 0 and " + MAX_HEADER_TABLE_SIZE + " but was " + bytes);
+        }
+        this.headerTableSize = bytes;
+        return this;
+    }
+
+    /**
+     * <p>When enabled, the server estimates the bandwidth-delay product of each connection by measuring PING round
+     * trips while request bodies are being received, and grows the stream and connection windows to match, up to
+     * {@link #withMaxWindowSize(int)}.</p>
+     * <p>This lets large uploads over high latency connections use the available bandwidth without needing a
+     * large window for every connection. The windows set with {@link #withInitialWindowSize(int)} and
+     * {@link #withConnectionWindowSize(int)} are used as the starting points.</p>
+     * @param enabled <code>true</code> to automatically size flow-control windows; default is <code>false</code>
+     * @return This builder
+     */
+    public Http2ConfigBuilder withWindowAutoTuning(boolean enabled) {
+        this.windowAutoTuning = enabled;
+        return this;
+    }
+
+    /**
+     * Sets the largest window size that {@link #withWindowAutoTuning(boolean)} will grow a window to.
+     * @param bytes The maximum window size in bytes. Default is 16MB.
+     * @return This builder
+     */
+    public Http2ConfigBuilder withMaxWindowSize(int bytes) {
+        if (bytes < DEFAULT_WINDOW_SIZE) {
+            throw new IllegalArgumentException("The max window size must be at least " + DEFAULT_WINDOW_SIZE + " but was " + bytes);
+        }
+        this.maxWindowSize = bytes;
+        return this;
+    }
+
+    /**
+     * <p>Specifies whether HTTP2 is also available on the plain HTTP port, which is known as <code>h2c</code>.</p>
+     * <p>When enabled, clients that know the server supports HTTP2 may start an HTTP2 connection straight away
+     * (known as prior knowledge), and HTTP/1.1 clients may switch to HTTP2 by sending an <code>Upgrade: h2c</code>
+     * request header. Any other HTTP/1.1 requests are handled as usual.</p>
+     * <p>This is useful when TLS is terminated before requests reach this server, for example by a load balancer.
+     * Note that request bodies of upgrade requests are held in memory, so an upgrade request with a body larger
+     * than 64KB is rejected.</p>
+     * @param enabled <code>true</code> to allow HTTP2 without TLS; default is <code>false</code>. This has no effect
+     *                if HTTP2 is not enabled.
+     * @return This builder
+     */
+    public Http2ConfigBuilder withCleartext(boolean enabled) {
+        this.cleartext = enabled;
+        return this;
+    }
+
+    /**
+     * <p>Sets the maximum number of requests (streams) a client may start per second on a single connection.</p>
+     * <p>If a client goes over this budget, the connection is closed with an <code>ENHANCE_YOUR_CALM</code> GOAWAY
+     * frame and counted in {@link MuStats#http2ConnectionsClosedForAbuse()}.</p>
+     * <p>This is off by default because busy clients that send many requests over one connection, such as load
+     * balancers, can legitimately start tens of thousands of streams per second. Streams that are cancelled straight
+     * away (the &quot;rapid reset&quot; attack) are limited separately with {@link #withMaxResetsPerSecond(int)}.</p>
+     * @param maxStreamsPerSecond The maximum number of new streams per second per connection, or <code>0</code> for
+     *                            no limit. Default is 0.
+     * @return This builder
+     */
+    public Http2ConfigBuilder withMaxStreamsPerSecond(int maxStreamsPerSecond) {
+        this.maxStreamsPerSecond = requireBudget("maxStreamsPerSecond", maxStreamsPerSecond);
+        return this;
+    }
+
+    /**
+     * <p>Sets the maximum number of streams a client may cancel (with <code>RST_STREAM</code> frames) per second on a
+     * single connection.</p>
+     * <p>This protects against the &quot;rapid reset&quot; attack where a client starts requests and cancels them
+     * straight away, which costs the server far more than the client. If a client goes over this budget, the connection
+     * is closed with an <code>ENHANCE_YOUR_CALM</code> GOAWAY frame.</p>
+     * @param maxResetsPerSecond The maximum number of stream resets per second per connection, or <code>0</code> for
+     *                           no limit. Default is 100.
+     * @return This builder
+     */
+    public Http2ConfigBuilder withMaxResetsPerSecond(int maxResetsPerSecond) {
+        this.maxResetsPerSecond = requireBudget("maxResetsPerSecond", maxResetsPerSecond);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of <code>PING</code> and <code>SETTINGS</code> frames a client may send per second on a
+     * single connection. Each of these needs a response from the server, so a flood of them uses server resources.
+     * If a client goes over this budget, the connection is closed with an <code>ENHANCE_YOUR_CALM</code> GOAWAY frame.
+     * @param maxControlFramesPerSecond The maximum number of control frames per second per connection, or
+     *                                  <code>0</code> for no limit. Default is 100.
+     * @return This builder
+     */
+    public Http2ConfigBuilder withMaxControlFramesPerSecond(int maxControlFramesPerSecond) {
+        this.maxControlFramesPerSecond = requireBudget("maxControlFramesPerSecond", maxControlFramesPerSecond);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of <code>DATA</code> frames with no data (and which do not end the stream) that a
+     * client may send per second on a single connection. Such frames do nothing useful but must still be processed.
+     * If a client goes over this budget, the connection is closed with an <code>ENHANCE_YOUR_CALM</code> GOAWAY frame.
+     * @param maxEmptyDataFramesPerSecond The maximum number of empty data frames per second per connection, or
+     *                                    <code>0</code> for no limit. Default is 100.
+     * @return This builder
+     */
+    public Http2ConfigBuilder withMaxEmptyDataFramesPerSecond(int maxEmptyDataFramesPerSecond) {
+        this.maxEmptyDataFramesPerSecond = requireBudget("maxEmptyDataFramesPerSecond", maxEmptyDataFramesPerSecond);
+        return this;
+    }
+
+    private static int requireBudget(String name, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " must be 0 or greater but was " + value);
+        }
+        return value;
+    }
+
     /**
      * Creates the HTTP2 settings object
      * @return A new Http2Config object
      */
     public Http2Config build() {
-        return new Http2Config(enabled);
+        return new Http2Config(enabled, initialWindowSize, connectionWindowSize, maxConcurrentStreams, maxFrameSize,
+            headerTableSize, windowAutoTuning, maxWindowSize, cleartext, maxStreamsPerSecond, maxResetsPerSecond,
+            maxControlFramesPerSecond, maxEmptyDataFramesPerSecond);
     }
 
     /**
@@ -1,12 +1,15 @@
 package io.muserver;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http2.*;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.collection.IntObjectHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,98 +20,212 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 
 import static io.netty.buffer.Unpooled.EMPTY_BUFFER;
-import static io.netty.buffer.Unpooled.copiedBuffer;
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static io.netty.handler.codec.http2.Http2CodecUtil.HTTP_UPGRADE_STREAM_ID;
 
 abstract class Http2ConnectionFlowControl extends Http2ConnectionHandler implements Http2FrameListener {
 
-    private static class DataReadData {
-        private final ByteBuf data;
-        private final int padding;
-        private final boolean endOfStream;
+    /**
+     * The request body data of a stream that has been received but not yet passed to its exchange, held in a ring
+     * buffer. Only accessed from the event loop.
+     */
+    private static final class StreamBuffer {
+        private ByteBuf[] data = new ByteBuf[2];
+        private int[] flowControlled = new int[2];
+        private int head;
+        private int size;
+        /**
+         * True if the last item added is the end of the stream
+         */
+        private boolean endReceived;
+        private boolean wantsToRead;
+        /**
+         * The flow-controlled bytes of data passed to the exchange that have not yet been returned to the client
+         */
+        private int delivered;
+
+        private void add(ByteBuf buf, int bytes, boolean endOfStream) {
+            if (size == data.length) {
+                grow();
+            }
+            int tail = (head + size) & (data.length - 1);
+            data[tail] = buf;
+            flowControlled[tail] = bytes;
+            size++;
+            endReceived = endOfStream;
+        }
 
-        private DataReadData(ByteBuf data, int padding, boolean endOfStream) {
-            this.data = data;
-            this.padding = padding;
-            this.endOfStream = endOfStream;
+        private void grow() {
+            int capacity = data.length;
+            ByteBuf[] newData = new ByteBuf[capacity << 1];
+            int[] newFlowControlled = new int[capacity << 1];
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) & (capacity - 1);
+                newData[i] = data[index];
+                newFlowControlled[i] = flowControlled[index];
+            }
+            data = newData;
+            flowControlled = newFlowControlled;
+            head = 0;
+        }
+
+        private void releaseAll() {
+            while (size > 0) {
+                data[head].release();
+                data[head] = null;
+                head = (head + 1) & (data.length - 1);
+                size--;
+            }
         }
     }
 
-    private final Map<Integer, Queue<DataReadData>> buffer = new HashMap<>();
-    private final Map<Integer, Boolean> wantsToRead = new HashMap<>();
+    private final IntObjectHashMap<StreamBuffer> streams = new IntObjectHashMap<>();
 
     protected Http2ConnectionFlowControl(Http2ConnectionDecoder decoder, Http2ConnectionEncoder encoder, Http2Settings initialSettings) {
         super(decoder, encoder, initialSettings);
     }
 
+    /**
+     * Called when the exchange of a stream wants the next piece of body data, which means it has finished with
+     * the previous one, so the bytes of that are returned to the client's flow-control window.
+     */
     protected void read(ChannelHandlerContext ctx, int streamId) {
         if (!ctx.executor().inEventLoop()) {
             ctx.executor().execute(() -> read(ctx, streamId));
             return;
         }
-        wantsToRead.put(streamId, true);
-        ctx.executor().submit(() -> sendItMaybe(ctx, streamId));
+        if (!hasExchange(streamId)) {
+            return;
+        }
+        StreamBuffer stream = stream(streamId);
+        stream.wantsToRead = true;
+        int consumed = stream.delivered;
+        stream.delivered = 0;
+        ctx.executor().submit(() -> {
+            long start = loopMonitor().startNanos();
+            returnBytes(ctx, streamId, consumed);
+            sendItMaybe(ctx, streamId);
+            loopMonitor().record(EventLoopTask.READ, start);
+        });
     }
 
-    private void sendItMaybe(ChannelHandlerContext ctx, int streamId) {
-        if (ctx.channel().isActive()) {
-            Boolean wantsIt = wantsToRead.get(streamId);
-            if (wantsIt != null && wantsIt) {
-                Queue<DataReadData> queue = buffer.get(streamId);
-                if (queue != null) {
-                    DataReadData msg = queue.poll();
-                    if (msg != null) {
-                        wantsToRead.put(streamId, false);
-                        onDataRead0(ctx, streamId, msg.data, msg.padding, msg.endOfStream);
-                        msg.data.release();
+    /**
+     * @return The monitor of the event loop of this connection
+     */
+    abstract EventLoopMonitor loopMonitor();
+
+    /**
+     * @return The window tuner of this connection, or <code>null</code> if window auto-tuning is disabled
+     */
+    abstract Http2WindowTuner windowTuner();
+
+    /**
+     * @return <code>true</code> if the stream has an exchange that has not yet been cleaned
+     */
+    abstract boolean hasExchange(int streamId);
+
+    /**
+     * @return The frame budgets of this connection
+     */
+    abstract Http2AbuseGuard abuseGuard();
+
+    /**
+     * Called when the client has exceeded one of the budgets of the {@link #abuseGuard()}
+     */
+    abstract void onAbuse(ChannelHandlerContext ctx);
+
+    private StreamBuffer stream(int streamId) {
+        StreamBuffer stream = streams.get(streamId);
+        if (stream == null) {
+            stream = new StreamBuffer();
+            streams.put(streamId, stream);
+        }
+        return stream;
+    }
+
+    private void returnBytes(ChannelHandlerContext ctx, int streamId, int bytes) {
+        if (bytes > 0 && ctx.channel().isActive()) {
+            // if the stream has closed then the flow controller has already returned its unconsumed bytes
+            Http2Stream stream = connection().stream(streamId);
+            if (stream != null) {
+                try {
+                    if (decoder().flowController().consumeBytes(stream, bytes)) {
+                        ctx.flush();
                     }
+                } catch (Http2Exception e) {
+                    onError(ctx, false, e);
                 }
             }
         }
     }
 
-    protected abstract void onDataRead0(ChannelHandlerContext ctx, int streamId, ByteBuf data, int padding, boolean endOfStream);
+    private void sendItMaybe(ChannelHandlerContext ctx, int streamId) {
+        if (ctx.channel().isActive()) {
+            StreamBuffer stream = streams.get(streamId);
+            if (stream != null && stream.wantsToRead && stream.size > 0) {
+                int index = stream.head;
+                ByteBuf data = stream.data[index];
+                stream.data[index] = null;
+                stream.head = (index + 1) & (stream.data.length - 1);
+                stream.size--;
+                stream.wantsToRead = false;
+                stream.delivered = stream.flowControlled[index];
+                onDataRead0(ctx, streamId, data, stream.size == 0 && stream.endReceived);
+                data.release();
+            }
+        }
+    }
+
+    protected abstract void onDataRead0(ChannelHandlerContext ctx, int streamId, ByteBuf data, boolean endOfStream);
 
     @Override
     public void onHeadersRead(ChannelHandlerContext ctx, int streamId, io.netty.handler.codec.http2.Http2Headers headers, int padding, boolean endOfStream) throws Http2Exception {
         if (endOfStream) {
-            onDataRead(ctx, streamId, EMPTY_BUFFER, 0, true);
+            bufferData(ctx, streamId, EMPTY_BUFFER, 0, true);
         }
     }
 
     @Override
     public final int onDataRead(ChannelHandlerContext ctx, int streamId, ByteBuf data, int padding, boolean endOfStream) {
-        int size = data.readableBytes();
-        Queue<DataReadData> buf = buffer.computeIfAbsent(streamId, integer -> new LinkedList<>());
-        buf.add(new DataReadData(data.retain(), padding, endOfStream));
+        int flowControlled = data.readableBytes() + padding;
+        if (flowControlled == 0 && !endOfStream && !abuseGuard().onEmptyDataFrame()) {
+            onAbuse(ctx);
+            return 0;
+        }
+        Http2WindowTuner tuner = windowTuner();
+        if (tuner != null) {
+            tuner.onDataRead(ctx, flowControlled);
+        }
+        if (!hasExchange(streamId)) {
+            // this can happen when a request is rejected based on headers, and then the rejected body arrives
+            return flowControlled;
+        }
+        bufferData(ctx, streamId, data, flowControlled, endOfStream);
+        // the bytes are returned to the client in read() once the exchange has finished with them
+        return 0;
+    }
+
+    /**
+     * Queues body data for a stream until its exchange asks for it
+     * @param flowControlled The number of bytes to return to the client's flow-control window once the data is consumed
+     */
+    protected void bufferData(ChannelHandlerContext ctx, int streamId, ByteBuf data, int flowControlled, boolean endOfStream) {
+        stream(streamId).add(data.retain(), flowControlled, endOfStream);
         sendItMaybe(ctx, streamId);
-        return size + padding;
     }
 
     protected void cleanup() {
-        if (!wantsToRead.isEmpty()) {
-            wantsToRead.clear();
-        }
-        if (buffer.size() > 0) {
-            for (Queue<DataReadData> value : buffer.values()) {
-                for (DataReadData dataReadData : value) {
-                    dataReadData.data.release();
-                }
+        if (!streams.isEmpty()) {
+            for (StreamBuffer stream : streams.values()) {
+                stream.releaseAll();
             }
-            buffer.clear();
+            streams.clear();
         }
     }
 
     protected void cleanStream(int streamId) {
-        wantsToRead.remove(streamId);
-        Queue<DataReadData> removed = buffer.remove(streamId);
+        StreamBuffer removed = streams.remove(streamId);
         if (removed != null) {
-            if (!removed.isEmpty()) {
-                for (DataReadData dat : removed) {
-                    dat.data.release();
-                }
-                removed.clear();
-            }
+            removed.releaseAll();
         }
     }
 
@@ -130,27 +247,106 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
 
     private final MuServerImpl server;
     private final NettyHandlerAdapter nettyHandlerAdapter;
-    private final ConcurrentHashMap<Integer, HttpExchange> exchanges = new ConcurrentHashMap<>();
+    private final String proto;
+    /**
+     * The exchanges in progress by stream ID. Only accessed from the event loop.
+     */
+    private final IntObjectHashMap<HttpExchange> exchanges = new IntObjectHashMap<>();
+    /**
+     * The requests of the exchanges that are in progress, which unlike the exchanges map can be read from any thread
+     */
+    private final Set<MuRequest> activeRequests = ConcurrentHashMap.newKeySet();
     private volatile int lastStreamId = 0;
-    private final MuStatsImpl connectionStats = new MuStatsImpl(null);
+    private final MuStatsImpl connectionStats = new MuStatsImpl();
     private InetSocketAddress remoteAddress;
     private final Instant startTime = Instant.now();
     private ChannelHandlerContext nettyContext;
+    private EventLoopMonitor loopMonitor;
+    private Http2WindowTuner windowTuner;
+    private Http2AbuseGuard abuseGuard;
+    private boolean closedForAbuse;
+    private boolean connectionWindowSent;
 
     Http2Connection(Http2ConnectionDecoder decoder, Http2ConnectionEncoder encoder,
-                    Http2Settings initialSettings, MuServerImpl server, NettyHandlerAdapter nettyHandlerAdapter) {
+                    Http2Settings initialSettings, MuServerImpl server, NettyHandlerAdapter nettyHandlerAdapter, String proto) {
         super(decoder, encoder, initialSettings);
         this.server = server;
         this.nettyHandlerAdapter = nettyHandlerAdapter;
+        this.proto = proto;
     }
 
     @Override
     public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
         server.stats.onConnectionOpened();
-        remoteAddress = (InetSocketAddress) ctx.channel().remoteAddress();
+        remoteAddress = Mutils.remoteAddress(ctx.channel());
         this.nettyContext = ctx;
+        this.loopMonitor = server.eventLoopMonitor(ctx.executor());
         server.onConnectionStarted(this);
+        Http2Config config = server.settings().http2Config;
+        this.abuseGuard = new Http2AbuseGuard(config);
+        if (config.windowAutoTuning) {
+            this.windowTuner = new Http2WindowTuner(this, config.streamWindowSize(), config.connectionWindow(), config.maxWindowSize);
+        }
         super.handlerAdded(ctx);
+        if (ctx.channel().isActive()) {
+            sendConnectionWindow(ctx);
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        super.channelActive(ctx);
+        sendConnectionWindow(ctx);
+    }
+
+    /**
+     * The connection window can only be changed with a WINDOW_UPDATE frame, which must follow the server preface
+     */
+    private void sendConnectionWindow(ChannelHandlerContext ctx) throws Http2Exception {
+        if (connectionWindowSent) {
+            return;
+        }
+        connectionWindowSent = true;
+        int delta = server.settings().http2Config.connectionWindow() - Http2CodecUtil.DEFAULT_WINDOW_SIZE;
+        if (delta > 0) {
+            connection().local().flowController().incrementWindowSize(connection().connectionStream(), delta);
+            ctx.flush();
+        }
+    }
+
+    @Override
+    EventLoopMonitor loopMonitor() {
+        return loopMonitor;
+    }
+
+    @Override
+    Http2WindowTuner windowTuner() {
+        return windowTuner;
+    }
+
+    @Override
+    boolean hasExchange(int streamId) {
+        return exchanges.containsKey(streamId);
+    }
+
+    @Override
+    Http2AbuseGuard abuseGuard() {
+        return abuseGuard;
+    }
+
+    @Override
+    void onAbuse(ChannelHandlerContext ctx) {
+        if (closedForAbuse) {
+            return;
+        }
+        closedForAbuse = true;
+        server.stats.onHttp2ConnectionClosedForAbuse();
+        log.warn("Closing HTTP/2 connection to " + remoteAddress + " because the client sent " + abuseGuard.violation());
+        ByteBuf debugData = ByteBufUtil.writeAscii(ctx.alloc(), abuseGuard.violation());
+        goAway(ctx, lastStreamId, Http2Error.ENHANCE_YOUR_CALM.code(), debugData, ctx.newPromise())
+            .addListener(ChannelFutureListener.CLOSE);
+        ctx.flush();
+        cleanup();
     }
 
     @Override
@@ -175,14 +371,16 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
         ctx.close();
     }
 
-    private ChannelFuture sendSimpleResponse(ChannelHandlerContext ctx, int streamId, String message, int code) {
-        byte[] bytes = message.getBytes(UTF_8);
-        ByteBuf content = copiedBuffer(bytes);
+    private ChannelFuture sendSimpleResponse(ChannelHandlerContext ctx, int streamId, String message, int code, long retryAfterSeconds) {
+        ByteBuf content = ByteBufUtil.writeUtf8(ctx.alloc(), message);
 
         io.netty.handler.codec.http2.Http2Headers headers = new DefaultHttp2Headers();
         headers.status(String.valueOf(code));
         headers.set(HeaderNames.CONTENT_TYPE, ContentTypes.TEXT_PLAIN_UTF8);
-        headers.set(HeaderNames.CONTENT_LENGTH, String.valueOf(bytes.length));
+        headers.set(HeaderNames.CONTENT_LENGTH, String.valueOf(content.readableBytes()));
+        if (retryAfterSeconds >= 0) {
+            headers.set(HeaderNames.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        }
         encoder().writeHeaders(ctx, streamId, headers, 0, false, ctx.voidPromise());
         return Http2Response.writeAndFlushToChannel(ctx, encoder(), streamId, content, true);
     }
@@ -190,15 +388,19 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
     @Override
     protected void cleanStream(int streamId) {
         super.cleanStream(streamId);
-        exchanges.remove(streamId);
+        HttpExchange removed = exchanges.remove(streamId);
+        if (removed != null) {
+            activeRequests.remove(removed.request);
+        }
     }
 
     @Override
     protected void cleanup() {
         super.cleanup();
         if (!exchanges.isEmpty()) {
-            for (Integer streamId : exchanges.keySet()) {
-                cancelExchange(streamId);
+            // cancelling an exchange removes it from the map, so a copy is iterated
+            for (HttpExchange exchange : exchanges.values().toArray(new HttpExchange[0])) {
+                exchange.onCancelled(ResponseState.ERRORED);
             }
         }
     }
@@ -206,6 +408,14 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
     @Override
     public void onHeadersRead(ChannelHandlerContext ctx, int streamId,
                               io.netty.handler.codec.http2.Http2Headers headers, int padding, boolean endOfStream) throws Http2Exception {
+        if (closedForAbuse) {
+            return;
+        }
+        // clients must use increasing IDs for new streams, so a lower ID is trailers for an existing request
+        if (streamId > lastStreamId && !abuseGuard.onStreamStarted()) {
+            onAbuse(ctx);
+            return;
+        }
         super.onHeadersRead(ctx, streamId, headers, padding, endOfStream);
         lastStreamId = streamId;
 
@@ -219,7 +429,6 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
                 throw new InvalidHttpRequestException(414, "414 Request-URI Too Long");
             }
 
-            HttpRequest nettyReq = new Http2To1RequestAdapter(streamId, nettyMeth, uri, headers);
             boolean hasRequestBody = !endOfStream;
             if (hasRequestBody) {
                 long bodyLen = headers.getLong(HeaderNames.CONTENT_LENGTH, -1L);
@@ -232,10 +441,10 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
             Http2Headers muHeaders = new Http2Headers(headers, hasRequestBody);
             String host = headers.authority().toString();
             muHeaders.set(HeaderNames.HOST, host);
-            NettyRequestAdapter muReq = new NettyRequestAdapter(ctx, nettyReq, muHeaders, muMethod, "https", uri, host);
+            NettyRequestAdapter muReq = new NettyRequestAdapter(ctx, null, "HTTP/2.0", muHeaders, muMethod, proto, uri, host);
 
             Http2Response resp = new Http2Response(ctx, muReq, new Http2Headers(), encoder(), streamId, settings);
-            HttpExchange httpExchange = new HttpExchange(this, ctx, muReq, resp, streamId);
+            HttpExchange httpExchange = new HttpExchange(this, connectionStats, ctx, muReq, resp, streamId);
             resp.setExchange(httpExchange);
             muReq.setExchange(httpExchange);
 
@@ -243,6 +452,7 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
             if (settings.block(muReq)) {
                 throw new InvalidHttpRequestException(429, "429 Too Many Requests");
             }
+            ConcurrencyLimiter.Permit permit = HttpExchange.acquireConcurrencyPermit(settings, resp, server.stats, connectionStats);
 
             resp.addChangeListener((exchange, newState) -> {
                 if (newState.endState()) {
@@ -250,13 +460,15 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
                 }
             });
             exchanges.put(streamId, httpExchange);
+            activeRequests.add(muReq);
             httpExchange.addChangeListener((exchange, newState) -> {
                 if (newState.endState()) {
+                    activeRequests.remove(muReq);
                     muReq.cleanup();
-                    cleanStream(streamId);
-                    if (newState == HttpExchangeState.ERRORED) {
-                        resetStream(ctx, streamId, Http2Error.INTERNAL_ERROR.code(), ctx.voidPromise());
-                        ctx.flush();
+                    if (ctx.executor().inEventLoop()) {
+                        onExchangeEnded(ctx, streamId, newState);
+                    } else {
+                        ctx.executor().execute(() -> onExchangeEnded(ctx, streamId, newState));
                     }
                 }
             });
@@ -276,8 +488,13 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
                 connectionStats.onRequestStarted(httpExchange.request);
                 nettyHandlerAdapter.onHeaders(httpExchange);
             } catch (RejectedExecutionException e) {
-                server.stats.onRequestEnded(httpExchange.request);
-                connectionStats.onRequestEnded(httpExchange.request);
+                if (permit != null) {
+                    permit.release(false);
+                }
+                if (httpExchange.endInStats()) {
+                    server.stats.onRequestEnded(httpExchange.request);
+                    connectionStats.onRequestEnded(httpExchange.request);
+                }
                 log.warn("Could not service " + httpExchange.request + " because the thread pool is full so sending a 503");
                 throw new InvalidHttpRequestException(503, "503 Service Unavailable");
             }
@@ -290,27 +507,26 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
                 connectionStats.onInvalidRequest();
                 server.stats.onInvalidRequest();
             }
-            sendSimpleResponse(ctx, streamId, ihr.getMessage(), ihr.code);
+            cleanStream(streamId);
+            sendSimpleResponse(ctx, streamId, ihr.getMessage(), ihr.code, ihr.retryAfterSeconds);
         }
     }
 
-    @Override
-    public void onDataRead0(ChannelHandlerContext ctx, int streamId, ByteBuf data, int padding, boolean endOfStream) {
-        boolean empty = data.readableBytes() == 0;
+    private void onExchangeEnded(ChannelHandlerContext ctx, int streamId, HttpExchangeState endState) {
+        cleanStream(streamId);
+        if (endState == HttpExchangeState.ERRORED) {
+            resetStream(ctx, streamId, Http2Error.INTERNAL_ERROR.code(), ctx.voidPromise());
+            ctx.flush();
+        }
+    }
 
+    @Override
+    public void onDataRead0(ChannelHandlerContext ctx, int streamId, ByteBuf data, boolean endOfStream) {
         HttpExchange httpExchange = exchanges.get(streamId);
         if (httpExchange == null) {
             log.debug("Got a chunk of message for an unknown request. This can happen when a request is rejected based on headers, and then the rejected body arrives.");
         } else {
-            HttpContent msg;
-            if (endOfStream) {
-                msg = empty ? DefaultLastHttpContent.EMPTY_LAST_CONTENT : new DefaultLastHttpContent(data, false);
-            } else {
-                msg = new DefaultHttpContent(data);
-            }
-            data.retain();
-            httpExchange.onMessage(ctx, msg, error -> {
-                data.release();
+            httpExchange.onBodyData(ctx, data, endOfStream, error -> {
                 if (error != null) {
                     ctx.fireUserEventTriggered(new MuExceptionFiredEvent(httpExchange, streamId, error));
                 } else if (!endOfStream) {
@@ -373,6 +589,9 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
     @Override
     public void onRstStreamRead(ChannelHandlerContext ctx, int streamId, long errorCode) {
         cancelExchange(streamId);
+        if (!abuseGuard.onReset()) {
+            onAbuse(ctx);
+        }
     }
 
     /**
@@ -398,14 +617,23 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
 
     @Override
     public void onSettingsRead(ChannelHandlerContext ctx, Http2Settings settings) {
+        if (!abuseGuard.onControlFrame()) {
+            onAbuse(ctx);
+        }
     }
 
     @Override
     public void onPingRead(ChannelHandlerContext ctx, long data) {
+        if (!abuseGuard.onControlFrame()) {
+            onAbuse(ctx);
+        }
     }
 
     @Override
-    public void onPingAckRead(ChannelHandlerContext ctx, long data) {
+    public void onPingAckRead(ChannelHandlerContext ctx, long data) throws Http2Exception {
+        if (windowTuner != null) {
+            windowTuner.onPingAckRead(ctx, data);
+        }
     }
 
     @Override
@@ -443,6 +671,21 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
                 error = Http2Exception.streamError(mefe.streamId, Http2Error.INTERNAL_ERROR, error, "Error handling %s", mefe.exchange);
             }
             onError(ctx, false, error);
+        } else if (evt instanceof DrainConnectionEvent) {
+            // sends GOAWAY and closes the connection once the streams in progress are complete
+            gracefulShutdownTimeoutMillis(-1);
+            close(ctx, ctx.newPromise());
+        } else if (evt instanceof HttpServerUpgradeHandler.UpgradeEvent) {
+            // the HTTP/1.1 request that asked for the h2c upgrade is handled as stream 1
+            FullHttpRequest upgradeRequest = ((HttpServerUpgradeHandler.UpgradeEvent) evt).upgradeRequest();
+            upgradeRequest.headers().set(HttpConversionUtil.ExtensionHeaderNames.SCHEME.text(), proto);
+            io.netty.handler.codec.http2.Http2Headers headers = HttpConversionUtil.toHttp2Headers(upgradeRequest, true);
+            boolean hasBody = upgradeRequest.content().isReadable();
+            onHeadersRead(ctx, HTTP_UPGRADE_STREAM_ID, headers, 0, !hasBody);
+            if (hasBody) {
+                // this data was not received as an HTTP/2 frame, so there is nothing to return to the flow-control window
+                bufferData(ctx, HTTP_UPGRADE_STREAM_ID, upgradeRequest.content(), 0, true);
+            }
         }
         super.userEventTriggered(ctx, evt);
     }
@@ -454,17 +697,17 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
 
     @Override
     public boolean isHttps() {
-        return true;
+        return "https".equals(proto);
     }
 
     @Override
     public String httpsProtocol() {
-        return Http1Connection.getSslSession(nettyContext).getProtocol();
+        return isHttps() ? Http1Connection.getSslSession(nettyContext).getProtocol() : null;
     }
 
     @Override
     public String cipher() {
-        return Http1Connection.getSslSession(nettyContext).getCipherSuite();
+        return isHttps() ? Http1Connection.getSslSession(nettyContext).getCipherSuite() : null;
     }
 
     @Override
@@ -494,7 +737,7 @@ final class Http2Connection extends Http2ConnectionFlowControl implements HttpCo
 
     @Override
     public Set<MuRequest> activeRequests() {
-        return connectionStats.activeRequests();
+        return new HashSet<>(activeRequests);
     }
 
     @Override
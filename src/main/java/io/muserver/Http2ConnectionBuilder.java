@@ -7,15 +7,34 @@ class Http2ConnectionBuilder
 
     private final MuServerImpl server;
     private final NettyHandlerAdapter nettyHandlerAdapter;
+    private final String proto;
 
-    Http2ConnectionBuilder(MuServerImpl server, NettyHandlerAdapter nettyHandlerAdapter) {
+    Http2ConnectionBuilder(MuServerImpl server, NettyHandlerAdapter nettyHandlerAdapter, String proto) {
         this.server = server;
         this.nettyHandlerAdapter = nettyHandlerAdapter;
+        this.proto = proto;
     }
 
     @Override
     public Http2Connection build() {
-        initialSettings().maxHeaderListSize(server.settings().maxHeadersSize);
+        Http2Settings settings = initialSettings().maxHeaderListSize(server.settings().maxHeadersSize);
+        Http2Config config = server.settings().http2Config;
+        if (config.initialWindowSize != -1) {
+            settings.initialWindowSize(config.initialWindowSize);
+        }
+        if (config.maxConcurrentStreams != -1) {
+            settings.maxConcurrentStreams(config.maxConcurrentStreams);
+        }
+        if (config.maxFrameSize != -1) {
+            settings.maxFrameSize(config.maxFrameSize);
+        }
+        if (config.headerTableSize != -1) {
+            settings.headerTableSize(config.headerTableSize);
+        }
+        if (config.maxEmptyDataFramesPerSecond > 0) {
+            // the connection's own budget counts empty frames over time, rather than only consecutive ones
+            decoderEnforceMaxConsecutiveEmptyDataFrames(0);
+        }
         return super.build();
     }
 
@@ -27,7 +46,7 @@ class Http2ConnectionBuilder
             MuGzipHttp2ConnectionEncoder delegate = new MuGzipHttp2ConnectionEncoder(encoder);
             encoder = new MuCompressorHttp2ConnectionEncoder(delegate, CompressorHttp2ConnectionEncoder.DEFAULT_COMPRESSION_LEVEL, CompressorHttp2ConnectionEncoder.DEFAULT_WINDOW_BITS, CompressorHttp2ConnectionEncoder.DEFAULT_MEM_LEVEL);
         }
-        Http2Connection handler = new Http2Connection(decoder, encoder, initialSettings, server, nettyHandlerAdapter);
+        Http2Connection handler = new Http2Connection(decoder, encoder, initialSettings, server, nettyHandlerAdapter, proto);
         frameListener(handler);
         return handler;
     }
@@ -44,10 +44,10 @@ class Http2Response extends NettyResponseAdaptor {
     }
 
     @Override
-    protected void onContentLengthMismatch() {
+    protected void onContentLengthMismatch(long bytesToBeSent) {
         throw new IllegalStateException("The declared content length for " + request + " was " + declaredLength + " bytes. " +
             "The current write is being aborted and the connection is being closed because it would have resulted in " +
-            bytesStreamed + " bytes being sent.");
+            bytesToBeSent + " bytes being sent.");
     }
 
     private ChannelFuture writeHeaders(boolean isEnd) {
@@ -78,7 +78,7 @@ class Http2Response extends NettyResponseAdaptor {
 
     @Override
     protected ChannelFuture writeLastContentMarker() {
-        return writeAndFlushToChannel(true, Unpooled.directBuffer(0));
+        return writeAndFlushToChannel(true, Unpooled.EMPTY_BUFFER);
     }
 
     @Override
@@ -0,0 +1,109 @@
+package io.muserver;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.Http2LocalFlowController;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Grows the flow-control windows of a single HTTP/2 connection to match its bandwidth-delay product.
+ * <p>When request body data arrives and no measurement is in progress, a PING is sent and the number of bytes
+ * received until its ACK is counted. That count approximates the bandwidth-delay product, so when it gets close
+ * to the current window the window is too small to keep the connection busy and it is doubled.</p>
+ * <p>This is only ever accessed from the event loop of the connection.</p>
+ */
+final class Http2WindowTuner {
+    private static final Logger log = LoggerFactory.getLogger(Http2WindowTuner.class);
+
+    /**
+     * The payload of the PING frames sent by the tuner, so that their ACKs can be told apart from other pings
+     */
+    static final long PING_PAYLOAD = 0x6d752d6264702dL;
+
+    private final Http2Connection connection;
+    private final int maxWindow;
+    private int streamWindow;
+    private int connectionWindow;
+    private boolean pingInFlight;
+    private long pingSentNanos;
+    private long sampleBytes;
+    private double maxBandwidth;
+
+    Http2WindowTuner(Http2Connection connection, int streamWindow, int connectionWindow, int maxWindow) {
+        this.connection = connection;
+        this.streamWindow = streamWindow;
+        this.connectionWindow = connectionWindow;
+        this.maxWindow = maxWindow;
+    }
+
+    /**
+     * Called when a DATA frame is received
+     * @param ctx The channel context
+     * @param bytes The flow-controlled size of the frame
+     */
+    void onDataRead(ChannelHandlerContext ctx, int bytes) {
+        if (bytes == 0 || streamWindow >= maxWindow) {
+            return;
+        }
+        if (!pingInFlight) {
+            pingInFlight = true;
+            sampleBytes = 0;
+            pingSentNanos = System.nanoTime();
+            connection.encoder().writePing(ctx, false, PING_PAYLOAD, ctx.voidPromise());
+        }
+        sampleBytes += bytes;
+    }
+
+    /**
+     * Called when a PING ACK is received
+     * @param ctx The channel context
+     * @param data The ping payload
+     * @return <code>true</code> if the ping was sent by this tuner
+     * @throws Http2Exception If the connection window could not be updated
+     */
+    boolean onPingAckRead(ChannelHandlerContext ctx, long data) throws Http2Exception {
+        if (data != PING_PAYLOAD || !pingInFlight) {
+            return false;
+        }
+        pingInFlight = false;
+        long rttNanos = Math.max(1, System.nanoTime() - pingSentNanos);
+        double bandwidth = sampleBytes / (double) rttNanos;
+        boolean maxedOut = bandwidth >= maxBandwidth;
+        maxBandwidth = Math.max(maxBandwidth, bandwidth);
+        if (maxedOut && sampleBytes >= streamWindow * 2L / 3) {
+            int newWindow = (int) Math.min(maxWindow, sampleBytes * 2);
+            if (newWindow > streamWindow) {
+                grow(ctx, newWindow, rttNanos);
+            }
+        }
+        return true;
+    }
+
+    private void grow(ChannelHandlerContext ctx, int newWindow, long rttNanos) throws Http2Exception {
+        if (log.isDebugEnabled()) {
+            log.debug("Growing HTTP/2 window from " + streamWindow + " to " + newWindow + " bytes for " + ctx.channel().remoteAddress()
+                + " (sample " + sampleBytes + " bytes in " + (rttNanos / 1000) + "us)");
+        }
+        streamWindow = newWindow;
+        if (newWindow > connectionWindow) {
+            Http2LocalFlowController flowController = connection.connection().local().flowController();
+            Http2Stream connectionStream = connection.connection().connectionStream();
+            flowController.incrementWindowSize(connectionStream, newWindow - connectionWindow);
+            connectionWindow = newWindow;
+        }
+        // the local flow controller applies the new stream window to all streams when the client acknowledges this
+        connection.encoder().writeSettings(ctx, new Http2Settings().initialWindowSize(newWindow), ctx.newPromise());
+        ctx.flush();
+    }
+
+    int streamWindow() {
+        return streamWindow;
+    }
+
+    int connectionWindow() {
+        return connectionWindow;
+    }
+}
@@ -8,7 +8,7 @@ import io.netty.handler.codec.TooLongFrameException;
 import io.netty.handler.codec.http.*;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
-import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.PlatformDependent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,13 +24,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
 /**
  * A request and response exchange between a client and the server
  */
-class HttpExchange implements ResponseInfo, Exchange {
+class HttpExchange implements ResponseInfo, RequestTimings, Exchange {
 
     private static final Map<String, String> exceptionMessageMap = new HashMap<>();
 
@@ -40,6 +41,7 @@ class HttpExchange implements ResponseInfo, Exchange {
     }
 
     private static final Logger log = LoggerFactory.getLogger(HttpExchange.class);
+    private static final AtomicIntegerFieldUpdater<HttpExchange> ENDED_IN_STATS = AtomicIntegerFieldUpdater.newUpdater(HttpExchange.class, "endedInStats");
     final ChannelHandlerContext ctx;
     final NettyRequestAdapter request;
     final NettyResponseAdaptor response;
@@ -48,22 +50,68 @@ class HttpExchange implements ResponseInfo, Exchange {
      */
     private final int streamId;
     private final HttpConnection connection;
+    private final MuStatsImpl connectionStats;
     private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
     private volatile long endTime;
+    private volatile long endNanos;
+    private volatile long dispatchedNanos = -1;
+    private volatile long handlerStartedNanos = -1;
+    private volatile long firstByteWrittenNanos = -1;
+    private volatile long lastByteFlushedNanos = -1;
     private volatile HttpExchangeState state = HttpExchangeState.IN_PROGRESS;
     private final List<HttpExchangeStateChangeListener> listeners = new CopyOnWriteArrayList<>();
-    private ScheduledFuture<?> readTimer;
+    private ReadTimeout readTimeout;
+    private EventLoopMonitor loopMonitor;
+    private final FlightRecorderEvents flightRecorder;
+    private final Object requestEvent;
+    private volatile Object dispatchEvent;
+    private volatile int endedInStats;
+    private long bodyBytesRead;
+
+    /**
+     * Marks the request of this exchange as no longer active in the server and connection stats. This is needed
+     * because the stats only detect a repeated end when active request tracking is enabled.
+     * @return <code>true</code> the first time this is called, in which case the caller should end the request in
+     * the stats
+     */
+    boolean endInStats() {
+        return ENDED_IN_STATS.compareAndSet(this, 0, 1);
+    }
 
     boolean inLoop() {
         return ctx.executor().inEventLoop();
     }
 
+    /**
+     * @return The monitor of the event loop of this exchange's connection
+     */
+    EventLoopMonitor loopMonitor() {
+        EventLoopMonitor monitor = loopMonitor;
+        if (monitor == null) {
+            monitor = loopMonitor = ((MuServerImpl) connection.server()).eventLoopMonitor(ctx.executor());
+        }
+        return monitor;
+    }
+
     void block(Runnable runnable) {
         // TODO: only use the callable version as this perhaps doesn't block until the runnable is finished? (e.g. when doing a write)
-        assert !inLoop() : "Should not be blocking on the event loop";
-        io.netty.util.concurrent.Future<?> task = ctx.executor().submit(runnable);
+        if (inLoop()) {
+            // only possible from a NonBlockingHandler, so run it now without waiting for the result
+            runnable.run();
+            return;
+        }
+        EventLoopMonitor monitor = loopMonitor();
+        io.netty.util.concurrent.Future<?> task = ctx.executor().submit(() -> {
+            long start = monitor.startNanos();
+            try {
+                runnable.run();
+            } finally {
+                monitor.record(EventLoopTask.WRITE, start);
+            }
+        });
         try {
-            task.get();
+            Mutils.await(task);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing"));
@@ -78,10 +126,33 @@ class HttpExchange implements ResponseInfo, Exchange {
     }
 
     void block(Callable<ChannelFuture> callable) {
-        assert !inLoop() : "Should not be blocking on the event loop";
-        io.netty.util.concurrent.Future<ChannelFuture> task = ctx.executor().submit(callable);
+        if (inLoop()) {
+            // only possible from a NonBlockingHandler, so start the write without waiting for it to complete
+            ChannelFuture future;
+            try {
+                future = callable.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new MuException("Error while writing response", e);
+            }
+            if (future.isDone() && !future.isSuccess()) {
+                throw new MuException("Error while writing response", future.cause());
+            }
+            return;
+        }
+        EventLoopMonitor monitor = loopMonitor();
+        io.netty.util.concurrent.Future<ChannelFuture> task = ctx.executor().submit(() -> {
+            long start = monitor.startNanos();
+            try {
+                return callable.call();
+            } finally {
+                monitor.record(EventLoopTask.WRITE, start);
+            }
+        });
+        ChannelFuture written;
         try {
-            task.get().sync();
+            written = Mutils.await(task);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing"));
@@ -93,18 +164,49 @@ class HttpExchange implements ResponseInfo, Exchange {
                 throw new MuException("Error while writing response", cause);
             }
         }
+        try {
+            Mutils.await(written);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing"));
+        } catch (ExecutionException e) {
+            // rethrown the same way as ChannelFuture.sync() does
+            PlatformDependent.throwException(e.getCause());
+        }
     }
 
-    HttpExchange(HttpConnection connection, ChannelHandlerContext ctx, NettyRequestAdapter request, NettyResponseAdaptor response, int streamId) {
+    /**
+     * Throws if called on the event loop, which only happens when a {@link NonBlockingHandler} makes a call that
+     * would wait for data from the client and therefore never finish.
+     */
+    void throwIfBlockingInLoop(String operation) {
+        if (inLoop()) {
+            throw new IllegalStateException(operation + " blocks until the request body is received and so cannot be used by a " +
+                NonBlockingHandler.class.getSimpleName() + ". Use AsyncHandle.setReadListener to read the body asynchronously instead.");
+        }
+    }
+
+    HttpExchange(HttpConnection connection, MuStatsImpl connectionStats, ChannelHandlerContext ctx, NettyRequestAdapter request, NettyResponseAdaptor response, int streamId) {
         this.connection = connection;
+        this.connectionStats = connectionStats;
         this.ctx = ctx;
         this.request = request;
         this.response = response;
         this.streamId = streamId;
+        this.flightRecorder = ((MuServerImpl) connection.server()).settings().flightRecorder;
+        this.requestEvent = flightRecorder == null ? null : flightRecorder.beginRequest();
         request.addChangeListener((exchange, newState) -> onReqOrRespStateChange(newState, null));
         response.addChangeListener((exchange, newState) -> onReqOrRespStateChange(null, newState));
     }
 
+    /**
+     * Records that this exchange was rejected because an executor was full
+     */
+    void onRejectedDueToOverload() {
+        ((MuServerImpl) request.server()).stats.onRejectedDueToOverload();
+        connectionStats.onRejectedDueToOverload();
+    }
+
     void addChangeListener(HttpExchangeStateChangeListener listener) {
         this.listeners.add(listener);
     }
@@ -128,6 +230,7 @@ class HttpExchange implements ResponseInfo, Exchange {
         }
         this.state = endState;
         this.endTime = System.currentTimeMillis();
+        this.endNanos = System.nanoTime();
         for (HttpExchangeStateChangeListener listener : listeners) {
             listener.onStateChange(this, endState);
         }
@@ -159,6 +262,133 @@ class HttpExchange implements ResponseInfo, Exchange {
         return end - request.startTime();
     }
 
+    /**
+     * @return The time from when the request headers were received until the exchange ended, or until now if it has
+     * not ended, in nanoseconds
+     */
+    long durationNanos() {
+        long end = endNanos;
+        if (end == 0) end = System.nanoTime();
+        return end - startNanos;
+    }
+
+    @Override
+    public RequestTimings timings() {
+        return this;
+    }
+
+    @Override
+    public long dispatchedNanos() {
+        return dispatchedNanos;
+    }
+
+    @Override
+    public long handlerStartedNanos() {
+        return handlerStartedNanos;
+    }
+
+    @Override
+    public long firstByteWrittenNanos() {
+        return firstByteWrittenNanos;
+    }
+
+    @Override
+    public long lastByteFlushedNanos() {
+        return lastByteFlushedNanos;
+    }
+
+    @Override
+    public long completeNanos() {
+        return endNanos == 0 ? -1 : endNanos - startNanos;
+    }
+
+    /**
+     * Called when the response of this exchange becomes a server-sent event stream
+     */
+    void onSseStarted(AsyncHandle asyncHandle) {
+        if (flightRecorder != null) {
+            flightRecorder.onSseStarted(request, asyncHandle);
+        }
+    }
+
+    void onDispatched() {
+        dispatchedNanos = System.nanoTime() - startNanos;
+        if (flightRecorder != null) {
+            dispatchEvent = flightRecorder.beginDispatch();
+        }
+    }
+
+    void onHandlerStarted() {
+        handlerStartedNanos = System.nanoTime() - startNanos;
+        Object event = dispatchEvent;
+        if (event != null) {
+            dispatchEvent = null;
+            flightRecorder.endDispatch(event, this);
+        }
+    }
+
+    /**
+     * Called on the event loop when a chunk of the request body is passed to the request
+     */
+    void onBodyRead(int bytes, boolean last) {
+        bodyBytesRead += bytes;
+        if (flightRecorder != null) {
+            flightRecorder.onBodyRead(this, bytes, last);
+        }
+    }
+
+    /**
+     * @return The number of bytes of the request body received so far
+     */
+    long bodyBytesRead() {
+        return bodyBytesRead;
+    }
+
+    /**
+     * Called when the exchange has ended to emit the flight recorder events of the request, if enabled
+     */
+    void onCompleted() {
+        if (flightRecorder != null) {
+            flightRecorder.onRequestCompleted(requestEvent, this);
+        }
+    }
+
+    /**
+     * Called just before the response headers are written, so that the Server-Timing header can still be added
+     */
+    void onWritingHeaders(Headers responseHeaders) {
+        long now = System.nanoTime() - startNanos;
+        firstByteWrittenNanos = now;
+        if (((MuServerImpl) connection.server()).settings().serverTimingHeader) {
+            StringBuilder value = new StringBuilder();
+            long dispatched = dispatchedNanos;
+            long handlerStarted = handlerStartedNanos;
+            if (dispatched != -1 && handlerStarted != -1) {
+                appendTiming(value, "queue", handlerStarted - dispatched);
+                appendTiming(value, "handler", now - handlerStarted);
+            }
+            appendTiming(value, "total", now);
+            responseHeaders.add(HeaderNames.SERVER_TIMING, value.toString());
+        }
+    }
+
+    private static void appendTiming(StringBuilder value, String name, long nanos) {
+        if (value.length() > 0) {
+            value.append(", ");
+        }
+        long micros = Math.max(0, nanos / 1000);
+        long fraction = micros % 1000;
+        value.append(name).append(";dur=").append(micros / 1000).append('.')
+            .append(fraction < 100 ? (fraction < 10 ? "00" : "0") : "").append(fraction);
+    }
+
+    void onLastByteFlushed() {
+        lastByteFlushedNanos = System.nanoTime() - startNanos;
+        if (flightRecorder != null) {
+            flightRecorder.onResponseFlushed(this);
+        }
+    }
+
     @Override
     public boolean completedSuccessfully() {
         return state.endState() && state != HttpExchangeState.ERRORED && response.outputState().completedSuccessfully();
@@ -187,10 +417,20 @@ class HttpExchange implements ResponseInfo, Exchange {
         if (!(msg instanceof HttpContent)) {
             throw new UnexpectedMessageException(this, msg);
         }
+        onBodyData(ctx, ((HttpContent) msg).content(), msg instanceof LastHttpContent, doneCallback);
+    }
+
+    /**
+     * Passes a piece of the request body to the request. HTTP/2 connections call this directly with the data of
+     * DATA frames, rather than wrapping them as HTTP/1 content objects and calling {@link #onMessage(ChannelHandlerContext, Object, DoneCallback)}.
+     * @param ctx The channel context
+     * @param data The body data, which is retained until the callback is called
+     * @param last <code>true</code> if this is the end of the request body
+     * @param doneCallback Called when the data has been consumed
+     */
+    void onBodyData(ChannelHandlerContext ctx, ByteBuf data, boolean last, DoneCallback doneCallback) {
         cancelReadTimeout();
-        HttpContent content = (HttpContent) msg;
-        ByteBuf byteBuf = content.content().retain();
-        boolean last = msg instanceof LastHttpContent;
+        ByteBuf byteBuf = data.retain();
 
         DoneCallback onDone = error -> {
             byteBuf.release();
@@ -230,16 +470,39 @@ class HttpExchange implements ResponseInfo, Exchange {
     }
 
     void scheduleReadTimeout() {
-        cancelReadTimeout();
-        long delay = connection.server().requestIdleTimeoutMillis();
-        this.readTimer = ctx.executor().schedule(request::onReadTimeout, delay, TimeUnit.MILLISECONDS);
+        long timeoutMillis = connection.server().requestIdleTimeoutMillis();
+        if (timeoutMillis == 0) {
+            return;
+        }
+        ReadTimeout rt = this.readTimeout;
+        if (rt == null) {
+            rt = this.readTimeout = new ReadTimeout(((MuServerImpl) connection.server()).timeoutWheel(ctx.executor()));
+        }
+        rt.wheel.schedule(rt, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
     }
 
     private void cancelReadTimeout() {
-        ScheduledFuture<?> rt = this.readTimer;
+        ReadTimeout rt = this.readTimeout;
         if (rt != null) {
-            this.readTimer = null;
-            rt.cancel(false);
+            // cancelling unlinks the timeout from the wheel, which is confined to the event loop
+            if (inLoop()) {
+                rt.wheel.cancel(rt);
+            } else {
+                ctx.executor().execute(() -> rt.wheel.cancel(rt));
+            }
+        }
+    }
+
+    private class ReadTimeout extends TimeoutWheel.Timeout {
+        private final TimeoutWheel wheel;
+
+        private ReadTimeout(TimeoutWheel wheel) {
+            this.wheel = wheel;
+        }
+
+        @Override
+        void onTimeout() {
+            request.onReadTimeout();
         }
     }
 
@@ -267,7 +530,8 @@ class HttpExchange implements ResponseInfo, Exchange {
 
     static HttpExchange create(MuServerImpl server, String proto, ChannelHandlerContext ctx, Http1Connection connection,
                                HttpRequest nettyRequest, NettyHandlerAdapter nettyHandlerAdapter, MuStatsImpl connectionStats,
-                               RequestStateChangeListener requestStateChangeListener, HttpExchangeStateChangeListener stateChangeListener) throws InvalidHttpRequestException {
+                               RequestStateChangeListener requestStateChangeListener, HttpExchangeStateChangeListener stateChangeListener,
+                               boolean holdWrites) throws InvalidHttpRequestException {
         ServerSettings settings = server.settings();
         throwIfInvalid(settings, ctx, nettyRequest);
 
@@ -276,19 +540,23 @@ class HttpExchange implements ResponseInfo, Exchange {
 
         String relativeUri = getRelativeUrl(nettyRequest.uri());
 
-        NettyRequestAdapter muRequest = new NettyRequestAdapter(ctx, nettyRequest, headers, method,
+        NettyRequestAdapter muRequest = new NettyRequestAdapter(ctx, nettyRequest, nettyRequest.protocolVersion().text(), headers, method,
             proto, relativeUri, headers.get(HeaderNames.HOST));
 
         MuStatsImpl serverStats = server.stats;
         Http1Response muResponse = new Http1Response(ctx, muRequest, new Http1Headers());
+        if (holdWrites) {
+            muResponse.holdWrites();
+        }
 
-        HttpExchange httpExchange = new HttpExchange(connection, ctx, muRequest, muResponse, -1);
+        HttpExchange httpExchange = new HttpExchange(connection, connectionStats, ctx, muRequest, muResponse, -1);
         muRequest.setExchange(httpExchange);
         muResponse.setExchange(httpExchange);
 
         if (settings.block(muRequest)) {
             throw new InvalidHttpRequestException(429, "429 Too Many Requests");
         }
+        ConcurrencyLimiter.Permit permit = acquireConcurrencyPermit(settings, muResponse, serverStats, connectionStats);
         httpExchange.addChangeListener(stateChangeListener);
         muRequest.addChangeListener(requestStateChangeListener);
 
@@ -297,14 +565,39 @@ class HttpExchange implements ResponseInfo, Exchange {
             connectionStats.onRequestStarted(httpExchange.request);
             nettyHandlerAdapter.onHeaders(httpExchange);
         } catch (RejectedExecutionException e) {
-            serverStats.onRequestEnded(httpExchange.request);
-            connectionStats.onRequestEnded(httpExchange.request);
+            if (permit != null) {
+                permit.release(false);
+            }
+            if (httpExchange.endInStats()) {
+                serverStats.onRequestEnded(httpExchange.request);
+                connectionStats.onRequestEnded(httpExchange.request);
+            }
             log.warn("Could not service " + muRequest + " because the thread pool is full so sending a 503");
             throw new InvalidHttpRequestException(503, "503 Service Unavailable");
         }
         return httpExchange;
     }
 
+    /**
+     * Gets a permit from the concurrency limiter, if there is one, that is released when the response starts
+     * @return The permit, or null if there is no concurrency limit
+     * @throws InvalidHttpRequestException with a 503 status if the limit has been reached
+     */
+    static ConcurrencyLimiter.Permit acquireConcurrencyPermit(ServerSettings settings, NettyResponseAdaptor response, MuStatsImpl serverStats, MuStatsImpl connectionStats) throws InvalidHttpRequestException {
+        ConcurrencyLimiter limiter = settings.concurrencyLimiter;
+        if (limiter == null) {
+            return null;
+        }
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            serverStats.onRejectedDueToConcurrencyLimit();
+            connectionStats.onRejectedDueToConcurrencyLimit();
+            throw new InvalidHttpRequestException(503, "503 Service Unavailable", limiter.retryAfterSeconds());
+        }
+        permit.releaseWhenResponseStarts(response);
+        return permit;
+    }
+
     static String getRelativeUrl(String nettyUri) throws InvalidHttpRequestException {
         try {
             URI requestUri = new URI(nettyUri).normalize();
@@ -0,0 +1,87 @@
+package io.muserver;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.timeout.IdleStateEvent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires {@link IdleStateEvent#ALL_IDLE_STATE_EVENT} when nothing has been read from or written to the connection
+ * for the idle timeout. This does the same job as Netty's <code>IdleStateHandler</code> but uses the
+ * {@link TimeoutWheel} of the event loop, so that reads and writes only move a deadline rather than
+ * scheduling tasks.
+ */
+class IdleTimeoutHandler extends ChannelDuplexHandler {
+
+    private final MuServerImpl server;
+    private final long timeoutNanos;
+    private final Timeout timeout = new Timeout();
+    private final ChannelFutureListener onWritten = future -> timeout.touch();
+    private ChannelHandlerContext ctx;
+    private TimeoutWheel wheel;
+
+    IdleTimeoutHandler(MuServerImpl server, long timeoutMillis) {
+        this.server = server;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        if (timeoutNanos > 0) {
+            this.ctx = ctx;
+            this.wheel = server.timeoutWheel(ctx.executor());
+            timeout.touch();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (wheel != null) {
+            wheel.cancel(timeout);
+            wheel = null;
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        handlerRemoved(ctx);
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        timeout.touch();
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (wheel == null) {
+            ctx.write(msg, promise);
+        } else {
+            ctx.write(msg, promise.unvoid()).addListener(onWritten);
+        }
+    }
+
+    private class Timeout extends TimeoutWheel.Timeout {
+
+        void touch() {
+            TimeoutWheel w = wheel;
+            if (w != null) {
+                w.schedule(this, timeoutNanos);
+            }
+        }
+
+        @Override
+        void onTimeout() {
+            if (wheel != null) {
+                // keep firing each timeout period while the connection stays idle, like IdleStateHandler does
+                touch();
+                ctx.fireUserEventTriggered(IdleStateEvent.ALL_IDLE_STATE_EVENT);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package io.muserver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A lock-free log-linear histogram of durations, in the style of HdrHistogram.</p>
+ * <p>Durations are recorded in microseconds. Values below 32 each get their own bucket, and each power of 2
+ * above that is split into 32 buckets, so a bucket is never more than about 3% wider than its lower bound.
+ * Recording a value is a few atomic increments with no allocation, and snapshots can be taken while values are
+ * being recorded.</p>
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Durations up to 2^40 microseconds (about 12 days) are tracked; longer ones go into the last bucket
+     */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * A snapshot with no recorded requests
+     */
+    static final LatencySnapshot EMPTY = new Snapshot();
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    void record(long durationNanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+        counts.incrementAndGet(bucketFor(micros));
+        totalMicros.add(micros);
+        long max;
+        while (micros > (max = maxMicros.get())) {
+            if (maxMicros.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    static int bucketFor(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The largest value that is recorded in the given bucket
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Adds the current values of this histogram to a snapshot
+     */
+    void addTo(Snapshot snapshot) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            snapshot.counts[i] += count;
+            snapshot.count += count;
+        }
+        snapshot.totalMicros += totalMicros.sum();
+        snapshot.maxMicros = Math.max(snapshot.maxMicros, maxMicros.get());
+    }
+
+    LatencySnapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        addTo(snapshot);
+        return snapshot;
+    }
+
+    static class Snapshot implements LatencySnapshot {
+        private final long[] counts = new long[BUCKETS];
+        private long count;
+        private long totalMicros;
+        private long maxMicros;
+
+        @Override
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public double meanMillis() {
+            return count == 0 ? 0 : totalMicros / 1000.0 / count;
+        }
+
+        @Override
+        public double maxMillis() {
+            return maxMicros / 1000.0;
+        }
+
+        @Override
+        public double percentileMillis(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("The percentile must be between 0 and 100");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // the last bucket has no upper bound
+                    return i == BUCKETS - 1 ? maxMillis() : Math.min(highestValueIn(i), maxMicros) / 1000.0;
+                }
+            }
+            return maxMillis();
+        }
+
+        @Override
+        public String toString() {
+            return "LatencySnapshot{" +
+                "count=" + count +
+                ", mean=" + meanMillis() +
+                "ms, p50=" + percentileMillis(50) +
+                "ms, p99=" + percentileMillis(99) +
+                "ms, max=" + maxMillis() +
+                "ms}";
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.muserver;
+
+/**
+ * A point-in-time view of the distribution of request durations recorded by a server. Accessible via the
+ * {@link MuStats#requestLatency()} and {@link MuStats#requestLatency(String, int)} methods.
+ * <p>Durations are recorded in buckets that are within about 3% of each other, so percentiles are approximate.
+ * The duration of a request is the time from when its headers were received until its response completed.</p>
+ */
+public interface LatencySnapshot {
+
+    /**
+     * @return The number of requests recorded
+     */
+    long count();
+
+    /**
+     * @return The mean request duration in milliseconds, or 0 if no requests were recorded
+     */
+    double meanMillis();
+
+    /**
+     * @return The longest request duration in milliseconds, or 0 if no requests were recorded
+     */
+    double maxMillis();
+
+    /**
+     * Gets the duration that the given percentage of requests completed within, for example
+     * <code>percentileMillis(99.0)</code> for the p99 latency.
+     * @param percentile A value from 0 to 100
+     * @return The duration in milliseconds, or 0 if no requests were recorded
+     */
+    double percentileMillis(double percentile);
+}
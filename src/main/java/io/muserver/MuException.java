@@ -28,9 +28,14 @@ public class MuException extends RuntimeException {
  */
 class InvalidHttpRequestException extends Exception {
     final int code;
+    final long retryAfterSeconds;
     InvalidHttpRequestException(int code, String clientMessage) {
+        this(code, clientMessage, -1);
+    }
+    InvalidHttpRequestException(int code, String clientMessage, long retryAfterSeconds) {
         super(clientMessage);
         this.code = code;
+        this.retryAfterSeconds = retryAfterSeconds;
     }
 }
 
@@ -5,6 +5,8 @@ import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
@@ -17,12 +19,31 @@ import java.util.concurrent.TimeUnit;
 public interface MuServer {
 
     /**
-     * Shuts down the server
+     * Shuts down the server, first draining connections for the time set with
+     * {@link MuServerBuilder#withGracefulShutdownTimeout(long, TimeUnit)} (which by default is zero, so that
+     * connections are closed straight away).
      */
     void stop();
 
     /**
-     * @return The HTTPS (or if unavailable the HTTP) URI of the web server.
+     * <p>Shuts down the server gracefully.</p>
+     * <p>The server stops accepting new connections and then drains the existing ones: idle connections are closed,
+     * HTTP/1 responses that are in progress are sent with a <code>Connection: close</code> header and the
+     * connection is closed once they complete, and HTTP/2 connections are sent a <code>GOAWAY</code> frame so that
+     * clients open no new streams on them. Websockets are closed with the status code 1001 (going away).</p>
+     * <p>This method returns when all connections are closed, or when the timeout is reached at which point any
+     * remaining connections are closed.</p>
+     * <p>The default implementation ignores the timeout and calls {@link #stop()}.</p>
+     * @param timeout The maximum time to wait for requests in progress to complete
+     * @param unit The unit of the timeout
+     */
+    default void stop(long timeout, TimeUnit unit) {
+        stop();
+    }
+
+    /**
+     * @return The HTTPS (or if unavailable the HTTP) URI of the web server, or null if the server only listens on a
+     * Unix domain socket.
      */
     URI uri();
 
@@ -53,6 +74,14 @@ public interface MuServer {
      */
     InetSocketAddress address();
 
+    /**
+     * @return The path of the Unix domain socket set with {@link MuServerBuilder#withUnixSocket(Path)}, or null if
+     * the server does not listen on a Unix domain socket. The default implementation returns null.
+     */
+    default Path unixSocket() {
+        return null;
+    }
+
     /**
      * @return Returns the current version of MuServer, or 0.x if unknown
      */
@@ -157,4 +186,13 @@ public interface MuServer {
      * @return The rate limiters added to the server with {@link MuServerBuilder#withRateLimiter(RateLimitSelector)}, in the order they are applied.
      */
     List<RateLimiter> rateLimiters();
+
+    /**
+     * Gets statistics about each of the event loop threads that handle connections, such as how late tasks run
+     * on them. See {@link MuServerBuilder#withEventLoopProbeInterval(long, TimeUnit)}.
+     * @return The stats of each event loop. The default implementation returns an empty list.
+     */
+    default List<EventLoopStats> eventLoopStats() {
+        return Collections.emptyList();
+    }
 }
@@ -5,9 +5,9 @@ import io.muserver.handlers.ResourceType;
 import io.muserver.rest.MuRuntimeDelegate;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelGroupFuture;
+import io.netty.channel.unix.DomainSocketAddress;
 import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseEncoder;
@@ -15,7 +15,6 @@ import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
 import io.netty.handler.flow.FlowControlHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.DefaultThreadFactory;
@@ -26,10 +25,13 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.function.LongConsumer;
 
 /**
  * <p>A builder for creating a web server.</p>
@@ -46,6 +48,7 @@ public class MuServerBuilder {
     private long minimumGzipSize = 1400;
     private int httpPort = -1;
     private int httpsPort = -1;
+    private Path unixSocket;
     private int maxHeadersSize = 8192;
     private int maxUrlSize = 8192 - LENGTH_OF_METHOD_AND_PROTOCOL;
     private int nioThreads = DEFAULT_NIO_THREADS;
@@ -59,11 +62,28 @@ public class MuServerBuilder {
     private long requestReadTimeoutMillis = TimeUnit.MINUTES.toMillis(2);
     private long idleTimeoutMills = TimeUnit.MINUTES.toMillis(5);
     private ExecutorService executor;
+    private boolean virtualThreads = false;
+    private boolean trackActiveRequests = true;
+    private boolean serverTimingHeader = false;
+    private long eventLoopProbeMillis = 100;
+    private long blockedEventLoopMillis = 0;
+    private boolean flightRecorderEvents = false;
+    private long slowRequestThresholdMillis = 1000;
     private long maxRequestSize = 24 * 1024 * 1024;
     private List<ResponseCompleteListener> responseCompleteListeners;
     private HashedWheelTimer wheelTimer;
     private List<RateLimiterImpl> rateLimiters;
     private WriteBufferWaterMark writeBufferWaterMark = WriteBufferWaterMark.DEFAULT;
+    private Transport transport = Transport.AUTO;
+    private SocketConfig socketConfig = SocketConfigBuilder.socketConfig().build();
+    private int maxPipelinedRequests = 1;
+    private int flushConsolidationBytes = 0;
+    private int maxConnections = 0;
+    private int maxConnectionsPerIp = 0;
+    private int maxNewConnectionsPerSecond = 0;
+    private AllocatorConfig allocatorConfig = AllocatorConfigBuilder.allocatorConfig().build();
+    private ConcurrencyLimitConfig concurrencyLimitConfig = null;
+    private long gracefulShutdownMillis = 0;
 
     /**
      * @param port The HTTP port to use. A value of 0 will have a random port assigned; a value of -1 will
@@ -96,6 +116,23 @@ public class MuServerBuilder {
         return this;
     }
 
+    /**
+     * Sets how long {@link MuServer#stop()} (and the shutdown hook added with {@link #addShutdownHook(boolean)})
+     * waits for requests in progress to complete before closing connections. See {@link MuServer#stop(long, TimeUnit)}
+     * for details on how connections are drained.
+     * @param timeout The maximum time to wait, or 0 (the default) to close connections straight away
+     * @param unit The unit of the timeout
+     * @return The current Mu Server Builder
+     */
+    public MuServerBuilder withGracefulShutdownTimeout(long timeout, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The graceful shutdown timeout cannot be negative");
+        }
+        this.gracefulShutdownMillis = unit.toMillis(timeout);
+        return this;
+    }
+
     /**
      * @param port The HTTP port to use. A value of 0 will have a random port assigned; a value of -1 will
      *             result in no HTTP connector.
@@ -213,6 +250,23 @@ public class MuServerBuilder {
         return this;
     }
 
+    /**
+     * <p>Listens for plain HTTP/1.1 connections on a Unix domain socket, for example from a proxy or sidecar running
+     * on the same host. This avoids the overhead of the TCP stack for each request.</p>
+     * <p>This can be used alongside, or instead of, an HTTP or HTTPS port. It requires the {@link Transport#EPOLL}
+     * transport, so only works on Linux with the native epoll jar on the classpath.</p>
+     * <p>The socket file must not already exist when the server starts, and is deleted when the server stops.
+     * Connections on the socket report a loopback address as their {@link HttpConnection#remoteAddress()}, so
+     * use a header sent by the proxy, such as {@link HeaderNames#X_FORWARDED_FOR}, to get the address of the client.</p>
+     *
+     * @param path The path of the socket file, or <code>null</code> to not listen on a Unix domain socket
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withUnixSocket(Path path) {
+        this.unixSocket = path;
+        return this;
+    }
+
     /**
      * Sets the configuration for HTTP2
      *
@@ -248,6 +302,148 @@ public class MuServerBuilder {
         return this;
     }
 
+    /**
+     * <p>Specifies whether each request is handled on a new virtual thread, rather than on a thread pool.</p>
+     * <p>Virtual threads are cheap to create and to block, so this allows many thousands of concurrent requests
+     * that block (e.g. slow uploads, or handlers calling slow downstream services) without tuning a thread pool.
+     * Waits within Mu Server do not pin virtual threads to their carrier threads, however handlers should also
+     * avoid blocking while holding a <code>synchronized</code> monitor.</p>
+     * <p>This requires Java 21 or later. When enabled on an earlier version, {@link #start()} throws an
+     * {@link IllegalStateException}. This setting is ignored if {@link #withHandlerExecutor(ExecutorService)}
+     * is used.</p>
+     *
+     * @param virtualThreads <code>true</code> to use virtual threads; the default is <code>false</code>
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * <p>Specifies whether the requests in progress are tracked so that they can be listed with
+     * {@link MuStats#activeRequests()}.</p>
+     * <p>Tracking means adding each request to, and removing it from, a set that is shared by all threads. On
+     * servers with very high request rates this can be turned off to remove that contention, in which case
+     * {@link MuStats#activeRequests()} is always empty but {@link MuStats#activeRequestCount()} still gives the
+     * number of requests in progress. {@link HttpConnection#activeRequests()} is not affected.</p>
+     *
+     * @param trackActiveRequests <code>false</code> to only count requests in progress; the default is <code>true</code>
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withActiveRequestTracking(boolean trackActiveRequests) {
+        this.trackActiveRequests = trackActiveRequests;
+        return this;
+    }
+
+    /**
+     * <p>Adds a <code>Server-Timing</code> header to each response, which browser developer tools show alongside
+     * the network timings of the request.</p>
+     * <p>The header has a <code>queue</code> duration for the time the request waited for a handler thread, a
+     * <code>handler</code> duration from when the handler started until the response headers were written, and a
+     * <code>total</code> duration from when the request headers were received until the response headers were
+     * written, for example <code>Server-Timing: queue;dur=0.052, handler;dur=12.431, total;dur=12.611</code>.
+     * All the lifecycle timings, including after the headers were written, are available from
+     * {@link ResponseInfo#timings()}.</p>
+     * <p>This exposes information about the server's load to clients, so is best only enabled for internal servers
+     * or while investigating performance.</p>
+     *
+     * @param serverTimingHeader <code>true</code> to add the header; the default is <code>false</code>
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withServerTimingHeader(boolean serverTimingHeader) {
+        this.serverTimingHeader = serverTimingHeader;
+        return this;
+    }
+
+    /**
+     * <p>Emits <a href="https://docs.oracle.com/en/java/javase/17/jfapi/" target="_blank">JDK Flight Recorder</a>
+     * events so that requests can be profiled in production with a flight recording. The events are in the
+     * <code>Mu Server</code> category:</p>
+     * <ul>
+     *     <li><code>io.muserver.Request</code> - each request, with its status, bytes and the time it was queued and handled</li>
+     *     <li><code>io.muserver.HandlerDispatch</code> - the time between a request being handed to an executor and its handler starting</li>
+     *     <li><code>io.muserver.RequestBodyRead</code> - each chunk of request body passed to the request</li>
+     *     <li><code>io.muserver.ResponseFlushed</code> - when the last byte of a response was flushed</li>
+     *     <li><code>io.muserver.RateLimitRejected</code> - requests rejected by a rate limiter</li>
+     *     <li><code>io.muserver.WebSocket</code> - websocket state changes</li>
+     *     <li><code>io.muserver.ServerSentEvents</code> - server-sent event streams opening and closing</li>
+     *     <li><code>io.muserver.SlowRequest</code> - requests that took longer than the threshold set with
+     *     {@link #withSlowRequestThreshold(long, TimeUnit)}, with the full detail of the request</li>
+     * </ul>
+     * <p>When no flight recording is running, or the events are disabled in the recording settings, checking
+     * whether to emit an event is a field read and nothing is allocated.</p>
+     * <p>This requires a JVM with JDK Flight Recorder, such as Java 11 or later. It is disabled by default.</p>
+     *
+     * @param enabled <code>true</code> to emit events
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withFlightRecorderEvents(boolean enabled) {
+        if (enabled && !FlightRecorderEvents.isSupported()) {
+            throw new IllegalStateException("Flight recorder events require a JVM with JDK Flight Recorder, such as Java 11 or later, but the current version is " + System.getProperty("java.version"));
+        }
+        this.flightRecorderEvents = enabled;
+        return this;
+    }
+
+    /**
+     * <p>Sets how long a request must take before an <code>io.muserver.SlowRequest</code> flight recorder event
+     * is emitted for it. This event has the full detail of the request, including its headers and the timings of
+     * each phase, so it is only worth capturing for slow requests.</p>
+     * <p>This only has an effect when {@link #withFlightRecorderEvents(boolean)} is enabled. The default is 1 second.</p>
+     *
+     * @param threshold The minimum duration of a request to emit the event for, or 0 to never emit it
+     * @param unit      The unit of the threshold
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withSlowRequestThreshold(long threshold, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The slow request threshold cannot be negative");
+        }
+        this.slowRequestThresholdMillis = unit.toMillis(threshold);
+        return this;
+    }
+
+    /**
+     * <p>Sets how often each event loop runs a small task that measures how late scheduled tasks run on that loop,
+     * which is reported by {@link EventLoopStats#lag()}.</p>
+     * <p>The default is 100 milliseconds.</p>
+     *
+     * @param interval The time between probes, or 0 to disable the probe
+     * @param unit     The unit of the interval
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withEventLoopProbeInterval(long interval, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        if (interval < 0) {
+            throw new IllegalArgumentException("The probe interval cannot be negative");
+        }
+        this.eventLoopProbeMillis = unit.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * <p>Logs a warning with the stack trace of any event loop thread that is blocked for longer than the given
+     * threshold, for example by a handler added with {@link NonBlockingHandler#nonBlocking(MuHandler)} that
+     * blocks. Each stall is logged once and counted in {@link EventLoopStats#blockedCount()}.</p>
+     * <p>This uses the event loop probe (see {@link #withEventLoopProbeInterval(long, TimeUnit)}), which is run at
+     * least twice per threshold while detection is enabled, and a background thread that checks the loops.</p>
+     * <p>This is disabled by default.</p>
+     *
+     * @param threshold How long an event loop can be busy before it is reported, or 0 to disable detection
+     * @param unit      The unit of the threshold
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withBlockedEventLoopDetection(long threshold, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The blocked event loop threshold cannot be negative");
+        }
+        this.blockedEventLoopMillis = unit.toMillis(threshold);
+        return this;
+    }
+
     /**
      * <p>The number of nio threads to handle requests.</p>
      * <p>Generally only a small number is required as NIO threads are only used for non-blocking
@@ -263,6 +459,63 @@ public class MuServerBuilder {
         return this;
     }
 
+    /**
+     * <p>Specifies the network transport to use for accepting connections and reading and writing data.</p>
+     * <p>The default is {@link Transport#AUTO} which uses the native epoll transport when it is available
+     * (on Linux with the <code>netty-transport-native-epoll</code> native library on the classpath) and
+     * otherwise uses NIO.</p>
+     *
+     * @param transport The transport to use
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withTransport(Transport transport) {
+        Mutils.notNull("transport", transport);
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Sets low-level socket options such as <code>TCP_NODELAY</code> and the accept backlog.
+     *
+     * @param socketConfig The socket options to use
+     * @return The current Mu Server builder
+     * @see SocketConfigBuilder
+     */
+    public MuServerBuilder withSocketConfig(SocketConfigBuilder socketConfig) {
+        Mutils.notNull("socketConfig", socketConfig);
+        this.socketConfig = socketConfig.build();
+        return this;
+    }
+
+    /**
+     * Sets the byte buffer allocator used for reading requests and writing responses, and the sizing of the
+     * buffers used to read from sockets.
+     *
+     * @param allocatorConfig The allocator config to use
+     * @return The current Mu Server builder
+     * @see AllocatorConfigBuilder
+     */
+    public MuServerBuilder withAllocatorConfig(AllocatorConfigBuilder allocatorConfig) {
+        Mutils.notNull("allocatorConfig", allocatorConfig);
+        this.allocatorConfig = allocatorConfig.build();
+        return this;
+    }
+
+    /**
+     * <p>Limits the number of requests that are handled at once, rejecting requests over the limit with a
+     * <code>503 Service Unavailable</code> before any handlers are called. The limit adapts to the latency of
+     * the server, so that during a traffic spike excess requests are rejected quickly rather than queueing.</p>
+     * <p>By default there is no limit other than the size of the handler executor.</p>
+     *
+     * @param concurrencyLimit The concurrency limit config to use, or <code>null</code> for no limit
+     * @return The current Mu Server builder
+     * @see ConcurrencyLimitConfigBuilder
+     */
+    public MuServerBuilder withConcurrencyLimit(ConcurrencyLimitConfigBuilder concurrencyLimit) {
+        this.concurrencyLimitConfig = concurrencyLimit == null ? null : concurrencyLimit.build();
+        return this;
+    }
+
     /**
      * <p>Specifies the maximum size in bytes of the HTTP request headers. Defaults to 8192.</p>
      * <p>If a request has headers exceeding this value, it will be rejected and a <code>431</code>
@@ -302,6 +555,102 @@ public class MuServerBuilder {
         return this;
     }
 
+    /**
+     * <p>Sets the maximum number of pipelined HTTP/1.1 requests that are handled concurrently on a single connection.</p>
+     * <p>When a client sends multiple requests without waiting for the responses, up to this number of requests are
+     * read and dispatched to handlers at the same time. Responses are always sent back in the order the requests
+     * were received, so the response to a later request is held until the earlier responses have been written.</p>
+     * <p>Requests that expect a <code>100-continue</code> response or that request a protocol upgrade are only
+     * handled once all earlier requests on the connection have completed.</p>
+     *
+     * @param maxPipelinedRequests The maximum number of in-flight requests per connection. The default is 1 which
+     *                             means each request is completed before the next one is read.
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withMaxPipelinedRequests(int maxPipelinedRequests) {
+        if (maxPipelinedRequests < 1) {
+            throw new IllegalArgumentException("The maximum pipelined requests must be at least 1");
+        }
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        return this;
+    }
+
+    /**
+     * <p>Sets the maximum number of connections that can be open at once. Connections over the limit are closed as
+     * soon as they are accepted, before any TLS handshake, and are counted in {@link MuStats#rejectedConnections()}.</p>
+     *
+     * @param maxConnections The maximum number of open connections. The default is 0 which means unlimited.
+     * @return The current Mu Server builder
+     * @see #withMaxConnectionsPerIp(int)
+     * @see #withMaxNewConnectionsPerSecond(int)
+     */
+    public MuServerBuilder withMaxConnections(int maxConnections) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("The maximum connections cannot be negative");
+        }
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * <p>Sets the maximum number of connections that can be open at once from a single IP address. Connections over
+     * the limit are closed as soon as they are accepted, before any TLS handshake, and are counted in
+     * {@link MuStats#rejectedConnections()}.</p>
+     * <p>Note that clients behind a proxy or NAT gateway share the IP address of the proxy.</p>
+     *
+     * @param maxConnectionsPerIp The maximum number of open connections per IP address. The default is 0 which
+     *                            means unlimited.
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withMaxConnectionsPerIp(int maxConnectionsPerIp) {
+        if (maxConnectionsPerIp < 0) {
+            throw new IllegalArgumentException("The maximum connections per IP cannot be negative");
+        }
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+        return this;
+    }
+
+    /**
+     * <p>Limits the rate at which new connections are accepted. Once this many connections have been accepted within
+     * a one second window, further connections in that window are closed as soon as they are accepted, before any
+     * TLS handshake, and are counted in {@link MuStats#rejectedConnections()}. This protects the server from
+     * spending all its CPU on handshakes during a connection flood.</p>
+     *
+     * @param maxNewConnectionsPerSecond The maximum number of connections accepted per second. The default is 0
+     *                                   which means unlimited.
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withMaxNewConnectionsPerSecond(int maxNewConnectionsPerSecond) {
+        if (maxNewConnectionsPerSecond < 0) {
+            throw new IllegalArgumentException("The maximum new connections per second cannot be negative");
+        }
+        this.maxNewConnectionsPerSecond = maxNewConnectionsPerSecond;
+        return this;
+    }
+
+    /**
+     * <p>Consolidates flushes on each connection so that many small writes are sent to the network together.</p>
+     * <p>Normally each response chunk, and each HTTP/2 frame, is flushed to the socket as soon as it is written,
+     * which costs a system call (and for HTTPS a TLS record) per write. When enabled, a flush that happens while
+     * data from the client is being read is delayed until the read is complete, and flushes of writes made by
+     * handler threads in quick succession are combined into one, in both cases until the unflushed data reaches
+     * the given number of bytes. This helps most with HTTP/2 connections with many concurrent streams, where
+     * one read can cause many frames to be written, with pipelined HTTP/1.1 requests, and with handlers that write
+     * many small chunks.</p>
+     * <p>The effect can be seen with {@link MuStats#flushes()} and {@link MuStats#tlsRecordsSent()}.</p>
+     *
+     * @param maxUnflushedBytes The number of unflushed bytes that causes an immediate flush, for example
+     *                          <code>65536</code>. The default is 0 which means every flush is sent immediately.
+     * @return The current Mu Server builder
+     */
+    public MuServerBuilder withFlushConsolidation(int maxUnflushedBytes) {
+        if (maxUnflushedBytes < 0) {
+            throw new IllegalArgumentException("The maximum unflushed bytes cannot be negative");
+        }
+        this.flushConsolidationBytes = maxUnflushedBytes;
+        return this;
+    }
+
     /**
      * Sets the idle timeout for connections. If no bytes are sent or received within this time then
      * the connection is closed.
@@ -511,31 +860,49 @@ public class MuServerBuilder {
      * @return The running server.
      */
     public MuServer start() {
-        if (httpPort < 0 && httpsPort < 0) {
-            throw new IllegalArgumentException("No ports were configured. Please call MuServerBuilder.withHttpPort(int) or MuServerBuilder.withHttpsPort(int)");
+        if (httpPort < 0 && httpsPort < 0 && unixSocket == null) {
+            throw new IllegalArgumentException("No ports were configured. Please call MuServerBuilder.withHttpPort(int), MuServerBuilder.withHttpsPort(int) or MuServerBuilder.withUnixSocket(Path)");
         }
 
-        ServerSettings settings = new ServerSettings(minimumGzipSize, maxHeadersSize, requestReadTimeoutMillis, maxRequestSize, maxUrlSize, gzipEnabled, mimeTypesToGzip, rateLimiters);
+        ServerSettings settings = new ServerSettings(minimumGzipSize, maxHeadersSize, requestReadTimeoutMillis, maxRequestSize, maxUrlSize, gzipEnabled, mimeTypesToGzip, rateLimiters, maxPipelinedRequests, flushConsolidationBytes,
+            concurrencyLimitConfig == null ? null : new ConcurrencyLimiter(concurrencyLimitConfig),
+            ConnectionLimiter.create(maxConnections, maxConnectionsPerIp, maxNewConnectionsPerSecond), serverTimingHeader,
+            flightRecorderEvents ? FlightRecorderEvents.create(TimeUnit.MILLISECONDS.toNanos(slowRequestThresholdMillis)) : null,
+            http2Config == null ? Http2ConfigBuilder.http2Config().build() : http2Config);
 
         ExecutorService handlerExecutor = this.executor;
-        if (handlerExecutor == null) {
+        if (handlerExecutor == null && virtualThreads) {
+            handlerExecutor = VirtualThreads.newThreadPerTaskExecutor("muhandler-");
+        } else if (handlerExecutor == null) {
             DefaultThreadFactory threadFactory = new DefaultThreadFactory("muhandler");
             handlerExecutor = new ThreadPoolExecutor(8, 400, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory);
         }
         NettyHandlerAdapter nettyHandlerAdapter = new NettyHandlerAdapter(handlerExecutor, handlers, responseCompleteListeners);
 
-        NioEventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        NioEventLoopGroup workerGroup = new NioEventLoopGroup(this.nioThreads);
+        Transport transport = this.transport.resolve();
+        int acceptors = socketConfig.acceptors(transport);
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(acceptors);
+        EventLoopGroup workerGroup = transport.newEventLoopGroup(this.nioThreads);
         List<Channel> channels = new ArrayList<>();
 
         ExecutorService finalHandlerExecutor = handlerExecutor;
-        Runnable shutdown = () -> {
+        ScheduledExecutorService loopDetector = blockedEventLoopMillis > 0
+            ? Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("mu-loop-detector", true)) : null;
+        MuServerImpl[] serverRef = new MuServerImpl[1];
+        LongConsumer shutdown = drainMillis -> {
             try {
+                for (Channel channel : channels) {
+                    channel.close().sync();
+                }
+                MuServerImpl server = serverRef[0];
+                if (drainMillis > 0 && server != null) {
+                    drain(server.connectionChannels, drainMillis);
+                }
                 if (wheelTimer != null) {
                     wheelTimer.stop();
                 }
-                for (Channel channel : channels) {
-                    channel.close().sync();
+                if (loopDetector != null) {
+                    loopDetector.shutdownNow();
                 }
                 finalHandlerExecutor.shutdown();
                 bossGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
@@ -548,44 +915,64 @@ public class MuServerBuilder {
 
         try {
             GlobalTrafficShapingHandler trafficShapingHandler = new GlobalTrafficShapingHandler(workerGroup, 0, 0, 1000);
-            MuStatsImpl stats = new MuStatsImpl(trafficShapingHandler.trafficCounter());
+            MuStatsImpl stats = new MuStatsImpl(trafficShapingHandler.trafficCounter(), new AllocatorStatsImpl(allocatorConfig.allocator), settings.concurrencyLimiter, true, trackActiveRequests);
             SslContextProvider sslContextProvider = null;
 
             boolean http2Enabled = http2Config != null && http2Config.enabled;
-            MuServerImpl server = new MuServerImpl(stats, http2Enabled, settings);
+            MuServerImpl server = new MuServerImpl(stats, http2Enabled, settings, gracefulShutdownMillis, TimeoutWheel.tickMillisFor(idleTimeoutMills, requestReadTimeoutMillis));
+            serverRef[0] = server;
+            long probeMillis = eventLoopProbeMillis;
+            if (loopDetector != null) {
+                long detectorProbeMillis = Math.max(1, blockedEventLoopMillis / 2);
+                probeMillis = probeMillis == 0 ? detectorProbeMillis : Math.min(probeMillis, detectorProbeMillis);
+            }
+            List<EventLoopMonitor> loopMonitors = server.startEventLoopMonitors(workerGroup, probeMillis);
+            if (loopDetector != null) {
+                long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(blockedEventLoopMillis);
+                long checkMillis = Math.max(1, blockedEventLoopMillis / 4);
+                loopDetector.scheduleAtFixedRate(() -> {
+                    long now = System.nanoTime();
+                    for (EventLoopMonitor monitor : loopMonitors) {
+                        monitor.checkBlocked(now, thresholdNanos);
+                    }
+                }, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+            }
 
-            Channel httpChannel = httpPort < 0 ? null : createChannel(bossGroup, workerGroup, nettyHandlerAdapter, host, httpPort, null, trafficShapingHandler, server, false, idleTimeoutMills, writeBufferWaterMark);
-            Channel httpsChannel;
+            List<Channel> httpChannels = httpPort < 0 ? Collections.emptyList() : createChannels(bossGroup, workerGroup, nettyHandlerAdapter, host, httpPort, null, trafficShapingHandler, server, http2Enabled && http2Config.cleartext, idleTimeoutMills, writeBufferWaterMark, transport, socketConfig, acceptors, allocatorConfig);
+            channels.addAll(httpChannels);
+            List<Channel> httpsChannels;
             if (httpsPort < 0) {
-                httpsChannel = null;
+                httpsChannels = Collections.emptyList();
             } else {
                 SSLContextBuilder toUse = this.sslContextBuilder != null ? this.sslContextBuilder : HttpsConfigBuilder.unsignedLocalhost();
                 SslContext nettySslContext = toUse.toNettySslContext(http2Enabled);
                 log.debug("SSL Context is " + nettySslContext);
                 sslContextProvider = new SslContextProvider(nettySslContext);
-                httpsChannel = createChannel(bossGroup, workerGroup, nettyHandlerAdapter, host, httpsPort, sslContextProvider, trafficShapingHandler, server, http2Enabled, idleTimeoutMills, writeBufferWaterMark);
+                httpsChannels = createChannels(bossGroup, workerGroup, nettyHandlerAdapter, host, httpsPort, sslContextProvider, trafficShapingHandler, server, http2Enabled, idleTimeoutMills, writeBufferWaterMark, transport, socketConfig, acceptors, allocatorConfig);
+            }
+            channels.addAll(httpsChannels);
+            if (unixSocket != null) {
+                channels.add(createUnixSocketChannel(bossGroup, workerGroup, nettyHandlerAdapter, unixSocket, trafficShapingHandler, server, idleTimeoutMills, writeBufferWaterMark, transport, allocatorConfig));
             }
             URI uri = null;
-            if (httpChannel != null) {
-                channels.add(httpChannel);
-                uri = getUriFromChannel(httpChannel, "http", host);
+            if (!httpChannels.isEmpty()) {
+                uri = getUriFromChannel(httpChannels.get(0), "http", host);
             }
             URI httpsUri = null;
-            if (httpsChannel != null) {
-                channels.add(httpsChannel);
-                httpsUri = getUriFromChannel(httpsChannel, "https", host);
+            if (!httpsChannels.isEmpty()) {
+                httpsUri = getUriFromChannel(httpsChannels.get(0), "https", host);
                 ((SSLInfoImpl) sslContextProvider.sslInfo()).setHttpsUri(httpsUri);
             }
 
-            InetSocketAddress serverAddress = (InetSocketAddress) channels.get(0).localAddress();
-            server.onStarted(uri, httpsUri, shutdown, serverAddress, sslContextProvider);
+            InetSocketAddress serverAddress = channels.get(0).localAddress() instanceof InetSocketAddress ? (InetSocketAddress) channels.get(0).localAddress() : null;
+            server.onStarted(uri, httpsUri, unixSocket, shutdown, serverAddress, sslContextProvider);
             if (addShutdownHook) {
                 Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
             }
             return server;
 
         } catch (Exception ex) {
-            shutdown.run();
+            shutdown.accept(0);
             throw new MuException("Error while starting server", ex);
         }
 
@@ -597,46 +984,113 @@ public class MuServerBuilder {
         return URI.create(protocol + "://" + host.toLowerCase() + ":" + a.getPort());
     }
 
-    private static Channel createChannel(NioEventLoopGroup bossGroup, NioEventLoopGroup workerGroup, NettyHandlerAdapter nettyHandlerAdapter, String host, int port, SslContextProvider sslContextProvider, GlobalTrafficShapingHandler trafficShapingHandler, MuServerImpl server, final boolean http2, long idleTimeoutMills, WriteBufferWaterMark writeBufferWaterMark) throws InterruptedException {
+    /**
+     * Asks each connection to close once its requests in progress are complete, and waits for them to close
+     */
+    private static void drain(ChannelGroup connectionChannels, long drainMillis) throws InterruptedException {
+        log.info("Draining " + connectionChannels.size() + " connections");
+        ChannelGroupFuture closed = connectionChannels.newCloseFuture();
+        for (Channel channel : connectionChannels) {
+            channel.eventLoop().execute(() -> {
+                ChannelPipeline p = channel.pipeline();
+                if (p.get(Http1Connection.class) == null && p.get(Http2Connection.class) == null) {
+                    // the connection is still being set up (e.g. during the TLS handshake) so has no requests
+                    channel.close();
+                } else {
+                    p.fireUserEventTriggered(DrainConnectionEvent.INSTANCE);
+                }
+            });
+        }
+        if (!closed.await(drainMillis)) {
+            log.info("Closing " + connectionChannels.size() + " connections that did not finish within the graceful shutdown timeout");
+        }
+    }
+
+    private static ChannelInitializer<Channel> connectionInitializer(NettyHandlerAdapter nettyHandlerAdapter, SslContextProvider sslContextProvider, GlobalTrafficShapingHandler trafficShapingHandler, MuServerImpl server, boolean http2, long idleTimeoutMills) {
         boolean usesSsl = sslContextProvider != null;
         String proto = usesSsl ? "https" : "http";
-        ServerBootstrap b = new ServerBootstrap();
-        b.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
-        b.group(bossGroup, workerGroup)
-            .channel(NioServerSocketChannel.class)
-            .childHandler(new ChannelInitializer<SocketChannel>() {
-
-                protected void initChannel(SocketChannel socketChannel) {
-                    ChannelPipeline p = socketChannel.pipeline();
-                    p.addLast("idle", new IdleStateHandler(0, 0, idleTimeoutMills, TimeUnit.MILLISECONDS));
-                    p.addLast(trafficShapingHandler);
-                    if (usesSsl) {
-                        SslHandler sslHandler = sslContextProvider.get().newHandler(socketChannel.alloc());
-                        SSLParameters params = sslHandler.engine().getSSLParameters();
-                        params.setUseCipherSuitesOrder(true);
-                        sslHandler.engine().setSSLParameters(params);
-                        p.addLast("ssl", sslHandler);
-                    }
-                    boolean addAlpn = http2 && usesSsl;
-                    if (addAlpn) {
-                        p.addLast(BackPressureHandler.NAME, new BackPressureHandler());
-                        p.addLast("alpn", new AlpnHandler(nettyHandlerAdapter, server, proto));
-                    }
-                    p.addLast("conerror", new ChannelInboundHandlerAdapter() {
-                        @Override
-                        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-                            server.stats.onFailedToConnect();
-                        }
-                    });
-                    if (!addAlpn) {
-                        setupHttp1Pipeline(p, nettyHandlerAdapter, server, proto);
+        return new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel channel) {
+                ConnectionLimiter connectionLimiter = server.settings().connectionLimiter;
+                if (connectionLimiter != null && !connectionLimiter.tryAdmit(channel)) {
+                    server.stats.onConnectionRejected();
+                    channel.close();
+                    return;
+                }
+                server.connectionChannels.add(channel);
+                ChannelPipeline p = channel.pipeline();
+                p.addLast(OutboundStatsHandler.NAME, new OutboundStatsHandler(server.stats, usesSsl));
+                p.addLast("idle", new IdleTimeoutHandler(server, idleTimeoutMills));
+                p.addLast(trafficShapingHandler);
+                if (usesSsl) {
+                    SslHandler sslHandler = sslContextProvider.get().newHandler(channel.alloc());
+                    SSLParameters params = sslHandler.engine().getSSLParameters();
+                    params.setUseCipherSuitesOrder(true);
+                    sslHandler.engine().setSSLParameters(params);
+                    p.addLast("ssl", sslHandler);
+                }
+                int flushConsolidationBytes = server.settings().flushConsolidationBytes;
+                if (flushConsolidationBytes > 0) {
+                    // after the SSL handler so that consolidated writes are encrypted together
+                    p.addLast(FlushConsolidator.NAME, new FlushConsolidator(flushConsolidationBytes));
+                }
+                boolean addAlpn = http2 && usesSsl;
+                boolean addH2c = http2 && !usesSsl;
+                if (addAlpn) {
+                    p.addLast(BackPressureHandler.NAME, new BackPressureHandler());
+                    p.addLast("alpn", new AlpnHandler(nettyHandlerAdapter, server, proto));
+                } else if (addH2c) {
+                    p.addLast(BackPressureHandler.NAME, new BackPressureHandler());
+                    p.addLast(CleartextHttp2Handler.NAME, new CleartextHttp2Handler(nettyHandlerAdapter, server));
+                }
+                p.addLast("conerror", new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                        server.stats.onFailedToConnect();
                     }
+                });
+                if (!addAlpn && !addH2c) {
+                    setupHttp1Pipeline(p, nettyHandlerAdapter, server, proto);
                 }
+            }
+        };
+    }
 
+    private static List<Channel> createChannels(EventLoopGroup bossGroup, EventLoopGroup workerGroup, NettyHandlerAdapter nettyHandlerAdapter, String host, int port, SslContextProvider sslContextProvider, GlobalTrafficShapingHandler trafficShapingHandler, MuServerImpl server, final boolean http2, long idleTimeoutMills, WriteBufferWaterMark writeBufferWaterMark, Transport transport, SocketConfig socketConfig, int acceptors, AllocatorConfig allocatorConfig) throws InterruptedException {
+        ServerBootstrap b = new ServerBootstrap();
+        b.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
+        socketConfig.applyTo(b, transport);
+        allocatorConfig.applyTo(b);
+        b.group(bossGroup, workerGroup)
+            .channel(transport.serverChannelClass())
+            .childHandler(connectionInitializer(nettyHandlerAdapter, sslContextProvider, trafficShapingHandler, server, http2, idleTimeoutMills));
+        List<Channel> channels = new ArrayList<>();
+        try {
+            for (int i = 0; i < acceptors; i++) {
+                ChannelFuture bound = host == null ? b.bind(port) : b.bind(host, port);
+                Channel channel = bound.sync().channel();
+                channels.add(channel);
+                // when a random port was requested, the other acceptors must bind to the port the first one was given
+                port = ((InetSocketAddress) channel.localAddress()).getPort();
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            for (Channel channel : channels) {
+                channel.close();
+            }
+            throw e;
+        }
+        return channels;
+    }
 
-            });
-        ChannelFuture bound = host == null ? b.bind(port) : b.bind(host, port);
-        return bound.sync().channel();
+    private static Channel createUnixSocketChannel(EventLoopGroup bossGroup, EventLoopGroup workerGroup, NettyHandlerAdapter nettyHandlerAdapter, Path path, GlobalTrafficShapingHandler trafficShapingHandler, MuServerImpl server, long idleTimeoutMills, WriteBufferWaterMark writeBufferWaterMark, Transport transport, AllocatorConfig allocatorConfig) throws InterruptedException {
+        ServerBootstrap b = new ServerBootstrap();
+        b.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
+        allocatorConfig.applyTo(b);
+        b.group(bossGroup, workerGroup)
+            .channel(transport.serverDomainSocketChannelClass())
+            .childHandler(connectionInitializer(nettyHandlerAdapter, null, trafficShapingHandler, server, false, idleTimeoutMills));
+        return b.bind(new DomainSocketAddress(path.toFile())).sync().channel();
     }
 
     static void setupHttp1Pipeline(ChannelPipeline p, NettyHandlerAdapter nettyHandlerAdapter, MuServerImpl server, String proto) {
@@ -653,7 +1107,7 @@ public class MuServerBuilder {
         p.addLast("keepalive", new HttpServerKeepAliveHandler());
         p.addLast("flowControl", new FlowControlHandler());
         p.addLast(BackPressureHandler.NAME, new BackPressureHandler());
-        p.addLast("preread", new PreReader());
+        p.addLast("preread", new PreReader(server.eventLoopMonitor(p.channel().eventLoop())));
         p.addLast("muhandler", new Http1Connection(nettyHandlerAdapter, server, proto));
     }
 
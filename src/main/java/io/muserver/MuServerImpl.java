@@ -1,46 +1,110 @@
 package io.muserver;
 
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
 import javax.net.ssl.SSLContext;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 
 class MuServerImpl implements MuServer {
 
     private URI httpUri;
     private URI httpsUri;
-    private Runnable shutdown;
+    private LongConsumer shutdown;
     final MuStatsImpl stats;
     private InetSocketAddress address;
+    private Path unixSocket;
     private SslContextProvider sslContextProvider;
     private final boolean http2Enabled;
     private final ServerSettings settings;
     private final Set<HttpConnection> connections = ConcurrentHashMap.newKeySet();
-
-    void onStarted(URI httpUri, URI httpsUri, Runnable shutdown, InetSocketAddress address, SslContextProvider sslContextProvider) {
+    /**
+     * The channels of all client connections, used to drain them when the server stops
+     */
+    final ChannelGroup connectionChannels = new DefaultChannelGroup("mu-connections", GlobalEventExecutor.INSTANCE);
+    private final long gracefulShutdownMillis;
+    private final ConcurrentHashMap<EventExecutor, TimeoutWheel> timeoutWheels = new ConcurrentHashMap<>();
+    private final long timeoutTickMillis;
+    private final ConcurrentHashMap<EventExecutor, EventLoopMonitor> loopMonitors = new ConcurrentHashMap<>();
+    private volatile List<EventLoopStats> eventLoopStats = Collections.emptyList();
+
+    void onStarted(URI httpUri, URI httpsUri, Path unixSocket, LongConsumer shutdown, InetSocketAddress address, SslContextProvider sslContextProvider) {
         this.address = address;
         this.sslContextProvider = sslContextProvider;
-        if (httpUri == null && httpsUri == null) {
-            throw new IllegalArgumentException("One of httpUri and httpsUri must not be null");
+        if (httpUri == null && httpsUri == null && unixSocket == null) {
+            throw new IllegalArgumentException("One of httpUri, httpsUri and unixSocket must not be null");
         }
+        this.unixSocket = unixSocket;
         this.httpUri = httpUri;
         this.httpsUri = httpsUri;
         this.shutdown = shutdown;
     }
 
-    MuServerImpl(MuStatsImpl stats, boolean http2Enabled, ServerSettings settings) {
+    MuServerImpl(MuStatsImpl stats, boolean http2Enabled, ServerSettings settings, long gracefulShutdownMillis, long timeoutTickMillis) {
         this.stats = stats;
         this.http2Enabled = http2Enabled;
         this.settings = settings;
+        this.gracefulShutdownMillis = gracefulShutdownMillis;
+        this.timeoutTickMillis = timeoutTickMillis;
+    }
+
+    /**
+     * Gets the timeout wheel for the given event loop, creating it the first time a connection on that loop needs it.
+     */
+    TimeoutWheel timeoutWheel(EventExecutor eventLoop) {
+        TimeoutWheel wheel = timeoutWheels.get(eventLoop);
+        return wheel != null ? wheel : timeoutWheels.computeIfAbsent(eventLoop, loop -> new TimeoutWheel(loop, timeoutTickMillis));
+    }
+
+    /**
+     * Creates and starts a monitor for each of the event loops that handle connections
+     * @return The monitors, in the order of the loops in the group
+     */
+    List<EventLoopMonitor> startEventLoopMonitors(Iterable<EventExecutor> loops, long probeIntervalMillis) {
+        List<EventLoopMonitor> monitors = new ArrayList<>();
+        for (EventExecutor loop : loops) {
+            EventLoopMonitor monitor = eventLoopMonitor(loop);
+            monitor.start(probeIntervalMillis);
+            monitors.add(monitor);
+        }
+        this.eventLoopStats = Collections.unmodifiableList(new ArrayList<>(monitors));
+        return monitors;
+    }
+
+    /**
+     * Gets the monitor for the given event loop, which records the time spent on tasks on that loop
+     */
+    EventLoopMonitor eventLoopMonitor(EventExecutor eventLoop) {
+        EventLoopMonitor monitor = loopMonitors.get(eventLoop);
+        return monitor != null ? monitor : loopMonitors.computeIfAbsent(eventLoop, EventLoopMonitor::new);
+    }
+
+    @Override
+    public List<EventLoopStats> eventLoopStats() {
+        return eventLoopStats;
     }
 
     @Override
     public void stop() {
-        shutdown.run();
+        shutdown.accept(gracefulShutdownMillis);
+    }
+
+    @Override
+    public void stop(long timeout, TimeUnit unit) {
+        Mutils.notNull("unit", unit);
+        shutdown.accept(unit.toMillis(timeout));
     }
 
     @Override
@@ -73,6 +137,11 @@ class MuServerImpl implements MuServer {
         return address;
     }
 
+    @Override
+    public Path unixSocket() {
+        return unixSocket;
+    }
+
     @Override
     public long minimumGzipSize() {
         return settings.minimumGzipSize;
@@ -162,3 +231,11 @@ class MuServerImpl implements MuServer {
         return this.settings;
     }
 }
+
+/**
+ * Fired on each connection when the server is stopping, to ask it to close once its current requests are complete
+ */
+class DrainConnectionEvent {
+    static final DrainConnectionEvent INSTANCE = new DrainConnectionEvent();
+    private DrainConnectionEvent() {}
+}
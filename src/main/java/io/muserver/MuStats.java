@@ -44,13 +44,131 @@ public interface MuStats {
      */
     long rejectedDueToOverload();
 
+    /**
+     * @return The number of requests rejected with a 503 because the limit set with
+     * {@link MuServerBuilder#withConcurrencyLimit(ConcurrencyLimitConfigBuilder)} was reached. These requests are
+     * also counted in {@link #rejectedDueToOverload()}.
+     * The default implementation returns 0.
+     */
+    default long rejectedDueToConcurrencyLimit() {
+        return 0;
+    }
+
+    /**
+     * @return The current number of requests that can be in progress at once, as adapted by the limiter set with
+     * {@link MuServerBuilder#withConcurrencyLimit(ConcurrencyLimitConfigBuilder)}, or -1 if there is no limit.
+     * The default implementation returns -1.
+     */
+    default int concurrencyLimit() {
+        return -1;
+    }
+
     /**
      * @return The number of requests that failed to connect, e.g. due to SSL protocols not matching, or handshakes failing.
      */
     long failedToConnect();
 
     /**
-     * @return The requests that are currently in-flight
+     * @return The number of connections that were closed as soon as they were accepted because of the limits set with
+     * {@link MuServerBuilder#withMaxConnections(int)}, {@link MuServerBuilder#withMaxConnectionsPerIp(int)} or
+     * {@link MuServerBuilder#withMaxNewConnectionsPerSecond(int)}.
+     * The default implementation returns 0.
+     */
+    default long rejectedConnections() {
+        return 0;
+    }
+
+    /**
+     * @return The number of HTTP/2 connections that were closed with an <code>ENHANCE_YOUR_CALM</code> GOAWAY
+     * because the client exceeded one of the budgets set on {@link Http2ConfigBuilder}, for example by opening and
+     * resetting streams too quickly.
+     * The default implementation returns 0.
+     */
+    default long http2ConnectionsClosedForAbuse() {
+        return 0;
+    }
+
+    /**
+     * @return The requests that are currently in-flight, or an empty set if tracking them was disabled with
+     * {@link MuServerBuilder#withActiveRequestTracking(boolean)}
      */
     Set<MuRequest> activeRequests();
+
+    /**
+     * @return The number of requests that are currently in-flight. Unlike {@link #activeRequests()}, this is
+     * always available. The default implementation returns the size of {@link #activeRequests()}.
+     */
+    default long activeRequestCount() {
+        return activeRequests().size();
+    }
+
+    /**
+     * @return Statistics about the memory used by the byte buffer allocator configured with {@link MuServerBuilder#withAllocatorConfig(AllocatorConfigBuilder)}
+     * The default implementation returns null.
+     */
+    default AllocatorStats allocatorStats() {
+        return null;
+    }
+
+    /**
+     * @return The number of times data was flushed to a socket. Compare with {@link #bytesSent()} to see the
+     * effect of {@link MuServerBuilder#withFlushConsolidation(int)}.
+     * The default implementation returns 0.
+     */
+    default long flushes() {
+        return 0;
+    }
+
+    /**
+     * @return The number of TLS records sent on HTTPS connections. Fewer, larger records use less CPU and bandwidth.
+     * The default implementation returns 0.
+     */
+    default long tlsRecordsSent() {
+        return 0;
+    }
+
+    /**
+     * @return The distribution of the durations of all the requests completed by the server. The default
+     * implementation returns a snapshot with no requests recorded.
+     */
+    default LatencySnapshot requestLatency() {
+        return LatencyHistogram.EMPTY;
+    }
+
+    /**
+     * Gets the distribution of request durations for one protocol and status class, for example
+     * <code>requestLatency("HTTP/2", 5)</code> for HTTP/2 requests that completed with a <code>5xx</code> status.
+     * @param protocol The protocol as returned by {@link HttpConnection#protocol()}, i.e. <code>HTTP/1.1</code>
+     *                 or <code>HTTP/2</code>
+     * @param statusClass The first digit of the response status code, from 1 to 5
+     * @return The durations of the matching requests. The default implementation returns a snapshot with no
+     * requests recorded.
+     */
+    default LatencySnapshot requestLatency(String protocol, int statusClass) {
+        return LatencyHistogram.EMPTY;
+    }
+
+    /**
+     * @return The number of requests completed per second, as an exponentially weighted average over the last minute.
+     * The default implementation returns 0.
+     */
+    default double oneMinuteRequestRate() {
+        return 0;
+    }
+
+    /**
+     * @return The number of requests completed per second, as an exponentially weighted average over the last 5 minutes.
+     * The default implementation returns 0.
+     */
+    default double fiveMinuteRequestRate() {
+        return 0;
+    }
+
+    /**
+     * @return The number of requests completed per second, as an exponentially weighted average over the last 15 minutes.
+     * The default implementation returns 0.
+     */
+    default double fifteenMinuteRequestRate() {
+        return 0;
+    }
 }
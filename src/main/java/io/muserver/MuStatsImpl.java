@@ -7,40 +7,76 @@ import org.slf4j.LoggerFactory;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 class MuStatsImpl implements MuStats {
     private final TrafficCounter trafficCounter;
-    private final AtomicLong activeConnections = new AtomicLong(0);
-    private final AtomicLong totalConnections = new AtomicLong(0);
-    private final AtomicLong completedRequests = new AtomicLong(0);
-    private final AtomicLong invalidHttpRequests = new AtomicLong(0);
-    private final AtomicLong rejectedDueToOverload = new AtomicLong(0);
-    private final AtomicLong failedToConnect = new AtomicLong(0);
-    private final Set<MuRequest> activeRequests = ConcurrentHashMap.newKeySet();
-
-    MuStatsImpl(TrafficCounter trafficCounter) {
+    private final AllocatorStats allocatorStats;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder totalConnections = new LongAdder();
+    private final LongAdder completedRequests = new LongAdder();
+    private final LongAdder invalidHttpRequests = new LongAdder();
+    private final LongAdder rejectedDueToOverload = new LongAdder();
+    private final LongAdder rejectedDueToConcurrencyLimit = new LongAdder();
+    private final LongAdder failedToConnect = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder http2ConnectionsClosedForAbuse = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder tlsRecordsSent = new LongAdder();
+    private final LongAdder activeRequestCount = new LongAdder();
+    /**
+     * The requests in progress, or null if they are only counted
+     */
+    private final Set<MuRequest> activeRequests;
+    /**
+     * Request durations for HTTP/1.1 then HTTP/2, each split by status class 1xx to 5xx, or null if latency is not recorded
+     */
+    private final LatencyHistogram[] latencies;
+    private final RequestRate requestRate;
+
+    /**
+     * Creates stats for a single connection, which only has counters
+     */
+    MuStatsImpl() {
+        this(null, null, null, false, false);
+    }
+
+    MuStatsImpl(TrafficCounter trafficCounter, AllocatorStats allocatorStats, ConcurrencyLimiter concurrencyLimiter, boolean recordLatency, boolean trackActiveRequests) {
         this.trafficCounter = trafficCounter;
+        this.allocatorStats = allocatorStats;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.activeRequests = trackActiveRequests ? ConcurrentHashMap.newKeySet() : null;
+        if (recordLatency) {
+            latencies = new LatencyHistogram[10];
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new LatencyHistogram();
+            }
+            requestRate = new RequestRate();
+        } else {
+            latencies = null;
+            requestRate = null;
+        }
     }
 
     @Override
     public long completedConnections() {
-        return totalConnections.get();
+        return totalConnections.sum();
     }
 
     @Override
     public long activeConnections() {
-        return activeConnections.get();
+        return activeConnections.sum();
     }
 
     @Override
     public long completedRequests() {
-        return completedRequests.get();
+        return completedRequests.sum();
     }
 
     @Override
     public long invalidHttpRequests() {
-        return invalidHttpRequests.get();
+        return invalidHttpRequests.sum();
     }
 
     @Override
@@ -55,60 +91,193 @@ class MuStatsImpl implements MuStats {
 
     @Override
     public long rejectedDueToOverload() {
-        return rejectedDueToOverload.get();
+        return rejectedDueToOverload.sum();
+    }
+
+    @Override
+    public long rejectedDueToConcurrencyLimit() {
+        return rejectedDueToConcurrencyLimit.sum();
+    }
+
+    @Override
+    public int concurrencyLimit() {
+        return concurrencyLimiter == null ? -1 : concurrencyLimiter.limit();
     }
 
     @Override
     public long failedToConnect() {
-        return failedToConnect.get();
+        return failedToConnect.sum();
+    }
+
+    @Override
+    public long rejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    @Override
+    public long http2ConnectionsClosedForAbuse() {
+        return http2ConnectionsClosedForAbuse.sum();
     }
 
     @Override
     public Set<MuRequest> activeRequests() {
-        return Collections.unmodifiableSet(activeRequests);
+        return activeRequests == null ? Collections.emptySet() : Collections.unmodifiableSet(activeRequests);
     }
 
+    @Override
+    public AllocatorStats allocatorStats() {
+        return allocatorStats;
+    }
+
+    @Override
+    public long flushes() {
+        return flushes.sum();
+    }
+
+    @Override
+    public long tlsRecordsSent() {
+        return tlsRecordsSent.sum();
+    }
+
+    @Override
+    public LatencySnapshot requestLatency() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram.Snapshot();
+        if (latencies != null) {
+            for (LatencyHistogram latency : latencies) {
+                latency.addTo(snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public LatencySnapshot requestLatency(String protocol, int statusClass) {
+        Mutils.notNull("protocol", protocol);
+        if (statusClass < 1 || statusClass > 5) {
+            throw new IllegalArgumentException("The status class must be between 1 and 5");
+        }
+        int protocolIndex = protocolIndex(protocol);
+        if (latencies == null || protocolIndex == -1) {
+            return new LatencyHistogram.Snapshot();
+        }
+        return latencies[protocolIndex * 5 + statusClass - 1].snapshot();
+    }
+
+    @Override
+    public double oneMinuteRequestRate() {
+        return requestRate == null ? 0 : requestRate.oneMinuteRate();
+    }
+
+    @Override
+    public double fiveMinuteRequestRate() {
+        return requestRate == null ? 0 : requestRate.fiveMinuteRate();
+    }
+
+    @Override
+    public double fifteenMinuteRequestRate() {
+        return requestRate == null ? 0 : requestRate.fifteenMinuteRate();
+    }
+
+    private static int protocolIndex(String protocol) {
+        switch (protocol) {
+            case "HTTP/1.1":
+                return 0;
+            case "HTTP/2":
+                return 1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Records the duration of a completed request, if this records latency
+     */
+    void onRequestCompleted(String protocol, int status, long durationNanos) {
+        if (latencies != null) {
+            int protocolIndex = Math.max(0, protocolIndex(protocol));
+            int statusClass = Math.min(5, Math.max(1, status / 100));
+            latencies[protocolIndex * 5 + statusClass - 1].record(durationNanos);
+            requestRate.mark();
+        }
+    }
+
+    @Override
+    public long activeRequestCount() {
+        return activeRequestCount.sum();
+    }
 
     void onRequestStarted(MuRequest request) {
-        activeRequests.add(request);
+        activeRequestCount.increment();
+        if (activeRequests != null) {
+            activeRequests.add(request);
+        }
     }
 
     private static final Logger log = LoggerFactory.getLogger(MuStatsImpl.class);
     void onRequestEnded(MuRequest request) {
-        if (activeRequests.remove(request)) {
-            completedRequests.incrementAndGet();
+        if (activeRequests == null || activeRequests.remove(request)) {
+            activeRequestCount.decrement();
+            completedRequests.increment();
         } else {
             log.info("Asked to remove " + request + " but it wasn't active");
         }
     }
 
     void onRejectedDueToOverload() {
-        rejectedDueToOverload.incrementAndGet();
+        rejectedDueToOverload.increment();
+    }
+
+    void onRejectedDueToConcurrencyLimit() {
+        rejectedDueToConcurrencyLimit.increment();
     }
 
     void onInvalidRequest() {
-        invalidHttpRequests.incrementAndGet();
+        invalidHttpRequests.increment();
     }
 
     void onFailedToConnect() {
-        failedToConnect.incrementAndGet();
+        failedToConnect.increment();
+    }
+
+    void onConnectionRejected() {
+        rejectedConnections.increment();
+    }
+
+    void onHttp2ConnectionClosedForAbuse() {
+        http2ConnectionsClosedForAbuse.increment();
+    }
+
+    void onFlush() {
+        flushes.increment();
+    }
+
+    void onTlsRecordsSent(int records) {
+        tlsRecordsSent.add(records);
     }
 
     void onConnectionOpened() {
-        activeConnections.incrementAndGet();
+        activeConnections.increment();
     }
 
     void onConnectionClosed() {
-        activeConnections.decrementAndGet();
-        totalConnections.incrementAndGet();
+        activeConnections.decrement();
+        totalConnections.increment();
+    }
+
+    /**
+     * Called when an HTTP/1.1 connection is upgraded, as the HTTP/2 connection that replaces it counts itself as opened
+     */
+    void onConnectionUpgraded() {
+        activeConnections.decrement();
     }
 
     @Override
     public String toString() {
-        return "Active requests: " + activeRequests().size() + "; completed requests: " + completedRequests() +
+        return "Active requests: " + activeRequestCount() + "; completed requests: " + completedRequests() +
             "; active connections: " + activeConnections() + "; completed connections: " + completedConnections() +
             "; invalid requests: " + invalidHttpRequests() + "; bytes received: " + bytesRead() +
             "; bytes sent: " + bytesSent() + "; rejected: " + rejectedDueToOverload() +
-            "; connectionFailured: " + failedToConnect();
+            "; rejected due to concurrency limit: " + rejectedDueToConcurrencyLimit() +
+            "; connectionFailured: " + failedToConnect() + "; rejected connections: " + rejectedConnections() + "; flushes: " + flushes() + "; TLS records sent: " + tlsRecordsSent();
     }
 }
@@ -87,11 +87,15 @@ class MuWebSocketSessionImpl implements MuWebSocketSession, Exchange {
 
     void setState(WebsocketSessionState newState) {
         this.state = newState;
+        FlightRecorderEvents flightRecorder = ((MuServerImpl) connection.server()).settings().flightRecorder;
+        if (flightRecorder != null) {
+            flightRecorder.onWebSocketStateChanged(newState, this);
+        }
     }
 
     @Override
     public InetSocketAddress remoteAddress() {
-        return (InetSocketAddress) ctx.channel().remoteAddress();
+        return Mutils.remoteAddress(ctx.channel());
     }
 
     @Override
@@ -1,6 +1,10 @@
 package io.muserver;
 
+import io.netty.channel.Channel;
+
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
@@ -10,6 +14,9 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -23,6 +30,7 @@ public class Mutils {
      * The new-line character for the current platform, e.g. <code>\n</code> in Linux or <code>\r\n</code> on Windows.
      */
     public static final String NEWLINE = String.format("%n");
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress("127.0.0.1", 0);
 
     /**
      * @param value the value to encode
@@ -242,6 +250,15 @@ public class Mutils {
         return Stream.of(values).filter(Objects::nonNull).findFirst().orElse(null);
     }
 
+    /**
+     * Gets the remote address of a connection. Connections on a Unix domain socket come from the same host
+     * but have no IP address, so the loopback address is returned for them.
+     */
+    static InetSocketAddress remoteAddress(Channel channel) {
+        SocketAddress address = channel.remoteAddress();
+        return address instanceof InetSocketAddress ? (InetSocketAddress) address : LOOPBACK;
+    }
+
     static void closeSilently(Closeable closeable) {
         if (closeable != null) {
             try {
@@ -251,6 +268,26 @@ public class Mutils {
         }
     }
 
+    /**
+     * Waits for a future to complete. Netty futures wait on an object monitor, which pins a virtual thread to its
+     * carrier thread, so incomplete netty futures are instead waited on with a {@link CompletableFuture}.
+     */
+    static <T> T await(Future<T> future) throws InterruptedException, ExecutionException {
+        if (future instanceof io.netty.util.concurrent.Future && !future.isDone()) {
+            io.netty.util.concurrent.Future<T> nettyFuture = (io.netty.util.concurrent.Future<T>) future;
+            CompletableFuture<T> completable = new CompletableFuture<>();
+            nettyFuture.addListener(f -> {
+                if (f.isSuccess()) {
+                    completable.complete(nettyFuture.getNow());
+                } else {
+                    completable.completeExceptionally(f.cause());
+                }
+            });
+            return completable.get();
+        }
+        return future.get();
+    }
+
     /**
      * Converts a string to a ByteBuffer with UTF-8 encoding.
      * @param text Some text to convert
@@ -4,8 +4,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ServiceUnavailableException;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 class NettyHandlerAdapter {
 
@@ -22,40 +25,109 @@ class NettyHandlerAdapter {
     }
 
     void onHeaders(HttpExchange muCtx) {
+        int first = nextHandler(muCtx.request, 0);
+        Executor firstExecutor;
+        if (first < muHandlers.size() && muHandlers.get(first) instanceof NonBlockingHandler) {
+            // run as a separate task (rather than inline) so that the connection has finished setting up the exchange
+            firstExecutor = muCtx.ctx.executor();
+        } else {
+            firstExecutor = first < muHandlers.size() ? executorFor(muHandlers.get(first), executor) : executor;
+        }
+        muCtx.onDispatched();
+        firstExecutor.execute(() -> runHandlers(muCtx, first, firstExecutor));
+    }
 
-        executor.execute(() -> {
-            if (muCtx.state().endState()) {
-                return;
-            }
-            NettyRequestAdapter request = muCtx.request;
-            NettyResponseAdaptor response = muCtx.response;
+    /**
+     * Gets the index of the next handler at or after the given index, skipping bulkheads that do not apply to the request
+     */
+    private int nextHandler(MuRequest request, int from) {
+        int i = from;
+        while (i < muHandlers.size() && muHandlers.get(i) instanceof BulkheadHandler
+            && !((BulkheadHandler) muHandlers.get(i)).appliesTo(request)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Gets the executor that a handler should be run on, given the one the previous handler was run on
+     */
+    private Executor executorFor(MuHandler handler, Executor current) {
+        if (handler instanceof NonBlockingHandler) {
+            return current;
+        } else if (handler instanceof BulkheadHandler) {
+            return ((BulkheadHandler) handler).executor;
+        }
+        return executor;
+    }
+
+    private void runHandlers(HttpExchange muCtx, int startIndex, Executor current) {
+        if (current == muCtx.ctx.executor()) {
+            long start = muCtx.loopMonitor().startNanos();
             try {
-                boolean handled = false;
-                for (MuHandler muHandler : muHandlers) {
-                    handled = muHandler.handle(request, response);
-                    if (handled) {
-                        break;
-                    }
-                    if (request.isAsync()) {
-                        throw new IllegalStateException(muHandler.getClass() + " returned false however this is not allowed after starting to handle a request asynchronously.");
+                runHandlersOn(muCtx, startIndex, current);
+            } finally {
+                muCtx.loopMonitor().record(EventLoopTask.NON_BLOCKING_HANDLER, start);
+            }
+        } else {
+            runHandlersOn(muCtx, startIndex, current);
+        }
+    }
+
+    private void runHandlersOn(HttpExchange muCtx, int startIndex, Executor current) {
+        if (muCtx.state().endState()) {
+            return;
+        }
+        muCtx.onHandlerStarted();
+        NettyRequestAdapter request = muCtx.request;
+        NettyResponseAdaptor response = muCtx.response;
+        try {
+            boolean handled = false;
+            for (int i = nextHandler(request, startIndex); i < muHandlers.size(); i = nextHandler(request, i + 1)) {
+                MuHandler muHandler = muHandlers.get(i);
+                Executor target = executorFor(muHandler, current);
+                if (target != current) {
+                    int next = i;
+                    try {
+                        muCtx.onDispatched();
+                        target.execute(() -> runHandlers(muCtx, next, target));
+                    } catch (RejectedExecutionException e) {
+                        log.warn("Could not service " + request + " because the thread pool is full so sending a 503");
+                        muCtx.onRejectedDueToOverload();
+                        throw new ServiceUnavailableException();
                     }
+                    return;
                 }
-                if (!handled) {
-                    throw new NotFoundException();
+                handled = muHandler instanceof BulkheadHandler
+                    ? ((BulkheadHandler) muHandler).handleOnExecutor(request, response)
+                    : muHandler.handle(request, response);
+                if (handled) {
+                    break;
                 }
-                if (!request.isAsync() && !response.outputState().endState()) {
-                    response.flushAndCloseOutputStream();
-                    muCtx.block(muCtx::complete);
+                if (request.isAsync()) {
+                    throw new IllegalStateException(muHandler.getClass() + " returned false however this is not allowed after starting to handle a request asynchronously.");
                 }
-            } catch (Throwable ex) {
-                muCtx.fireException(ex);
             }
-        });
+            if (!handled) {
+                throw new NotFoundException();
+            }
+            if (!request.isAsync() && !response.outputState().endState()) {
+                response.flushAndCloseOutputStream();
+                muCtx.block(muCtx::complete);
+            }
+        } catch (Throwable ex) {
+            muCtx.fireException(ex);
+        }
     }
 
-    void onResponseComplete(ResponseInfo info, MuStatsImpl serverStats, MuStatsImpl connectionStats) {
-        connectionStats.onRequestEnded(info.request());
-        serverStats.onRequestEnded(info.request());
+    void onResponseComplete(HttpExchange info, MuStatsImpl serverStats, MuStatsImpl connectionStats) {
+        long start = info.loopMonitor().startNanos();
+        if (info.endInStats()) {
+            connectionStats.onRequestEnded(info.request());
+            serverStats.onRequestEnded(info.request());
+            serverStats.onRequestCompleted(info.connection().protocol(), info.response().status(), info.durationNanos());
+        }
+        info.onCompleted();
         if (completeListeners != null) {
             for (ResponseCompleteListener listener : completeListeners) {
                 try {
@@ -65,5 +137,6 @@ class NettyHandlerAdapter {
                 }
             }
         }
+        info.loopMonitor().record(EventLoopTask.RESPONSE_COMPLETE, start);
     }
 }
@@ -33,7 +33,11 @@ class NettyRequestAdapter implements MuRequest {
     private static final Logger log = LoggerFactory.getLogger(NettyRequestAdapter.class);
     private volatile RequestState state = RequestState.HEADERS_RECEIVED;
     final ChannelHandlerContext ctx;
+    /**
+     * The HTTP/1 request, or <code>null</code> for HTTP/2 requests which are handled without an HTTP/1 object
+     */
     private final HttpRequest nettyRequest;
+    private final String protocol;
     private final URI serverUri;
     private final URI uri;
     private final Method method;
@@ -49,9 +53,10 @@ class NettyRequestAdapter implements MuRequest {
     private HttpExchange httpExchange;
     private final List<RequestStateChangeListener> listeners = new CopyOnWriteArrayList<>();
 
-    NettyRequestAdapter(ChannelHandlerContext ctx, HttpRequest nettyRequest, Headers headers, Method method, String proto, String uri, String host) {
+    NettyRequestAdapter(ChannelHandlerContext ctx, HttpRequest nettyRequest, String protocol, Headers headers, Method method, String proto, String uri, String host) {
         this.ctx = ctx;
         this.nettyRequest = nettyRequest;
+        this.protocol = protocol;
         this.serverUri = URI.create(proto + "://" + host + uri).normalize();
         this.headers = headers;
         this.uri = getUri(headers, proto, host, uri, serverUri);
@@ -66,7 +71,7 @@ class NettyRequestAdapter implements MuRequest {
 
     @Override
     public String protocol() {
-        return nettyRequest.protocolVersion().text();
+        return protocol;
     }
 
     @Override
@@ -136,9 +141,10 @@ class NettyRequestAdapter implements MuRequest {
         }
         RequestBodyReader rbr = this.requestBodyReader;
         if (rbr == null) {
+            httpExchange.throwIfBlockingInLoop("Reading the request body as an input stream");
             RequestBodyReaderInputStreamAdapter inputStreamReader = new RequestBodyReaderInputStreamAdapter(maxRequestBytes());
             try {
-                claimingBodyRead(inputStreamReader).get();
+                Mutils.await(claimingBodyRead(inputStreamReader));
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw new MuException("Interrupted while waiting to get request body input stream");
@@ -158,6 +164,7 @@ class NettyRequestAdapter implements MuRequest {
 
     public String readBodyAsString() throws IOException {
         if (headers.hasBody()) {
+            httpExchange.throwIfBlockingInLoop("Reading the request body as a string");
             RequestBodyReader.StringRequestBodyReader reader = createStringRequestBodyReader(maxRequestBytes(), headers());
             claimingBodyRead(reader);
             reader.blockUntilFullyRead();
@@ -358,10 +365,11 @@ class NettyRequestAdapter implements MuRequest {
 
     private void ensureFormDataLoaded() throws IOException {
         if (requestBodyReader == null) {
+            httpExchange.throwIfBlockingInLoop("Reading form data");
             String ct = contentType();
             RequestBodyReader reader;
             if (ct.startsWith("multipart/")) {
-                reader = new RequestBodyReader.MultipartFormReader(maxRequestBytes(), nettyRequest, bodyCharset(headers, true));
+                reader = new RequestBodyReader.MultipartFormReader(maxRequestBytes(), headers.get(HeaderNames.CONTENT_TYPE), bodyCharset(headers, true));
                 claimingBodyRead(reader);
             } else if (ct.equals("application/x-www-form-urlencoded")) {
                 reader = new RequestBodyReader.UrlEncodedBodyReader(createStringRequestBodyReader(maxRequestBytes(), headers()));
@@ -410,6 +418,9 @@ class NettyRequestAdapter implements MuRequest {
     }
 
     boolean websocketUpgrade(MuWebSocket muWebSocket, HttpHeaders responseHeaders, long idleReadTimeoutMills, long pingAfterWriteMillis, int maxFramePayloadLength) {
+        if (nettyRequest == null) {
+            throw new UnsupportedOperationException("Websockets are only supported over HTTP/1.1");
+        }
         String url = "ws" + uri().toString().substring(4);
         WebSocketServerHandshakerFactory factory = new WebSocketServerHandshakerFactory(url, null, false, maxFramePayloadLength);
 
@@ -471,6 +482,7 @@ class NettyRequestAdapter implements MuRequest {
     void onRequestBodyRead(ByteBuf content, boolean last, DoneCallback callback) {
         RequestBodyReader rbr = this.requestBodyReader;
         if (rbr != null) {
+            httpExchange.onBodyRead(content.readableBytes(), last);
             rbr.onRequestBodyRead(content, last, callback);
         } else {
             throw new IllegalStateException("Got content before a request body reader was set");
@@ -487,6 +499,19 @@ class NettyRequestAdapter implements MuRequest {
         return httpExchange;
     }
 
+    /**
+     * Tells the exchange of a request that its response is now a server-sent event stream. Requests that were not
+     * created by the server, such as wrapped or mocked ones, are ignored.
+     */
+    static void onSseStarted(MuRequest request, AsyncHandle asyncHandle) {
+        if (request instanceof NettyRequestAdapter) {
+            HttpExchange exchange = ((NettyRequestAdapter) request).httpExchange;
+            if (exchange != null) {
+                exchange.onSseStarted(asyncHandle);
+            }
+        }
+    }
+
     static class AsyncHandleImpl implements AsyncHandle {
 
         private final NettyRequestAdapter request;
@@ -1,6 +1,8 @@
 package io.muserver;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelPromise;
@@ -17,6 +19,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
@@ -35,6 +38,11 @@ abstract class NettyResponseAdaptor implements MuResponse {
     protected int status = 200;
     private volatile PrintWriter writer;
     private volatile OutputStream outputStream;
+    private volatile BlockingWriteBuffer writeBuffer;
+    /**
+     * The bytes given to the write buffer, which is only accessed by the thread doing blocking writes
+     */
+    private long bytesQueued = 0;
     protected long bytesStreamed = 0;
     protected long declaredLength = -1;
     private final List<ResponseStateChangeListener> listeners = new CopyOnWriteArrayList<>();
@@ -51,6 +59,9 @@ abstract class NettyResponseAdaptor implements MuResponse {
             throw new IllegalStateException("Didn't expect to get a status update to " + state + " when the current status is " + oldStatus);
         }
         this.state = state;
+        if (state == ResponseState.FULL_SENT || state == ResponseState.FINISHED) {
+            httpExchange.onLastByteFlushed();
+        }
         for (ResponseStateChangeListener listener : listeners) {
             listener.onStateChange(httpExchange, state);
         }
@@ -125,6 +136,7 @@ abstract class NettyResponseAdaptor implements MuResponse {
         declaredLength = headers.contains(HeaderNames.CONTENT_LENGTH)
             ? Long.parseLong(headers.get(HeaderNames.CONTENT_LENGTH))
             : -1;
+        httpExchange.onWritingHeaders(headers);
         outputState(ResponseState.STREAMING);
         return null;
     }
@@ -179,19 +191,24 @@ abstract class NettyResponseAdaptor implements MuResponse {
     }
 
     protected final ChannelFuture writeAndFlush(ByteBuf data) {
-        throwIfFinished();
         int size = data.writerIndex();
+        boolean isLast;
+        try {
+            throwIfFinished();
 
-        bytesStreamed += size;
-        boolean isLast = bytesStreamed == declaredLength;
+            bytesStreamed += size;
+            isLast = bytesStreamed == declaredLength;
 
-        if (declaredLength > -1 && bytesStreamed > declaredLength) {
-            onContentLengthMismatch();
-            isLast = true;
+            if (declaredLength > -1 && bytesStreamed > declaredLength) {
+                onContentLengthMismatch(bytesStreamed);
+                isLast = true;
+            }
+        } catch (RuntimeException e) {
+            data.release();
+            throw e;
         }
 
-        ByteBuf content = Unpooled.wrappedBuffer(data);
-        ChannelFuture future = writeAndFlushToChannel(isLast, content);
+        ChannelFuture future = writeAndFlushToChannel(isLast, data);
         if (isLast) {
             future.addListener(wf -> {
                 if (wf.isSuccess()) {
@@ -204,25 +221,68 @@ abstract class NettyResponseAdaptor implements MuResponse {
         return future;
     }
 
-    protected abstract void onContentLengthMismatch();
+    protected abstract void onContentLengthMismatch(long bytesToBeSent);
 
     abstract ChannelFuture writeAndFlushToChannel(boolean isLast, ByteBuf content);
 
     public void sendChunk(String text) {
         throwIfAsync();
-        httpExchange.block(() -> {
+        writeBlocking(textToBuffer(text));
+    }
+
+    /**
+     * Writes data from a handler thread without waiting for it to be sent, unless the client is not keeping up
+     * with the data already written.
+     * @param data The data to write, which is released if it cannot be written
+     */
+    void writeBlocking(ByteBuf data) {
+        try {
             throwIfFinished();
+            // checked here as well as on the event loop so that the handler gets the exception from this write
+            long declared = headers.getLong(HeaderNames.CONTENT_LENGTH.toString(), -1);
+            bytesQueued += data.readableBytes();
+            if (declared > -1 && bytesQueued > declared) {
+                onContentLengthMismatch(bytesQueued);
+            }
+        } catch (RuntimeException e) {
+            data.release();
+            throw e;
+        }
+        BlockingWriteBuffer wb = this.writeBuffer;
+        if (wb == null) {
+            wb = new BlockingWriteBuffer(httpExchange);
+            this.writeBuffer = wb;
+            if (state == ResponseState.NOTHING) {
+                // the headers are sent before the first write returns so that the status and headers cannot be
+                // changed while the write is queued, and so that hasStartedSendingData() is true afterwards
+                try {
+                    httpExchange.block(() -> {
+                        if (state == ResponseState.NOTHING) {
+                            startStreaming();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    data.release();
+                    throw e;
+                }
+            }
+        }
+        wb.write(data, toWrite -> {
             if (state == ResponseState.NOTHING) {
                 startStreaming();
             }
-            return writeAndFlush(textToBuffer(text));
+            return writeAndFlush(toWrite);
         });
     }
 
     private ByteBuf textToBuffer(String text) {
         if (text == null) text = "";
         Charset charset = NettyRequestAdapter.bodyCharset(headers, false);
-        return Unpooled.copiedBuffer(text, charset);
+        ByteBufAllocator alloc = request.ctx.alloc();
+        if (charset == StandardCharsets.UTF_8) {
+            return ByteBufUtil.writeUtf8(alloc, text);
+        }
+        return ByteBufUtil.encodeString(alloc, CharBuffer.wrap(text), charset);
     }
 
     public void redirect(String newLocation) {
@@ -305,6 +365,7 @@ abstract class NettyResponseAdaptor implements MuResponse {
         ChannelFuture finishedFuture = null;
         if (state == ResponseState.NOTHING) {
             boolean addContentLengthHeader = ((!isHead || !isFixedLength) && status != 204 && status != 205 && status != 304);
+            httpExchange.onWritingHeaders(headers);
             finishedFuture = sendEmptyResponse(addContentLengthHeader);
         } else if (state == ResponseState.STREAMING) {
             boolean badFixedLength = !isHead && isFixedLength && declaredLength != bytesStreamed && status != 304;
@@ -339,6 +400,7 @@ abstract class NettyResponseAdaptor implements MuResponse {
             headers.set(HeaderNames.CONTENT_TYPE, TEXT_PLAIN_UTF8);
         }
         headers.set(HeaderNames.CONTENT_LENGTH, bodyLength);
+        httpExchange.onWritingHeaders(headers);
         return writeFullResponse(body);
     }
 
@@ -0,0 +1,63 @@
+package io.muserver;
+
+/**
+ * <p>A handler that runs on the event loop thread that read the request, rather than on the handler executor set
+ * with {@link MuServerBuilder#withHandlerExecutor(java.util.concurrent.ExecutorService)}.</p>
+ * <p>This saves a thread hop per request, which is useful for handlers that return very quickly, such as health
+ * checks, handlers that write a small pre-computed response, or handlers that call {@link MuRequest#handleAsync()}
+ * and complete the response later from another thread.</p>
+ * <p>A non-blocking handler must never block: while it runs no other connections on the same event loop are served.
+ * Writing a response with methods such as {@link MuResponse#write(String)} is allowed, however these return
+ * without waiting for the data to be sent. Blocking reads of the request body such as {@link MuRequest#readBodyAsString()}
+ * throw an {@link IllegalStateException} when called from a non-blocking handler; use
+ * {@link AsyncHandle#setReadListener(RequestBodyListener)} instead.</p>
+ * <p>Non-blocking handlers that are added to the server before any other handlers are run on the event loop. As
+ * soon as a normal handler is reached, that handler and all subsequent handlers are run on the handler executor.</p>
+ * <p>Example usage:</p>
+ * <pre><code>
+ * MuServerBuilder.httpServer()
+ *     .addHandler(NonBlockingHandler.nonBlocking(
+ *         Routes.route(Method.GET, "/health", (req, resp, pp) -&gt; resp.write("OK"))))
+ *     .addHandler(new SomeBlockingHandler())
+ *     .start();
+ * </code></pre>
+ */
+public final class NonBlockingHandler implements MuHandler {
+
+    private final MuHandler handler;
+
+    private NonBlockingHandler(MuHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Marks a handler as non-blocking so that it runs on the event loop.
+     * @param handler A handler that never blocks. To run a chain of handlers on the event loop, pass a
+     *                handler such as a {@link ContextHandler} that contains them.
+     * @return A handler to add to the server
+     */
+    public static NonBlockingHandler nonBlocking(MuHandler handler) {
+        Mutils.notNull("handler", handler);
+        return handler instanceof NonBlockingHandler ? (NonBlockingHandler) handler : new NonBlockingHandler(handler);
+    }
+
+    /**
+     * Marks a handler as non-blocking so that it runs on the event loop.
+     * @param handler A builder for a handler that never blocks.
+     * @return A handler to add to the server
+     */
+    public static NonBlockingHandler nonBlocking(MuHandlerBuilder<?> handler) {
+        Mutils.notNull("handler", handler);
+        return nonBlocking(handler.build());
+    }
+
+    @Override
+    public boolean handle(MuRequest request, MuResponse response) throws Exception {
+        return handler.handle(request, response);
+    }
+
+    @Override
+    public String toString() {
+        return "NonBlockingHandler{" + handler + '}';
+    }
+}
@@ -0,0 +1,72 @@
+package io.muserver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Counts the flushes to the socket and, for TLS connections, the TLS records written. This is the first handler in
+ * the pipeline so it sees exactly the bytes sent on the wire.
+ */
+class OutboundStatsHandler extends ChannelOutboundHandlerAdapter {
+    static final String NAME = "outboundstats";
+    private static final int TLS_HEADER_LENGTH = 5;
+
+    private final MuStatsImpl stats;
+    private final boolean countTlsRecords;
+    /**
+     * The number of bytes of the current TLS record body still to be written
+     */
+    private int recordBytesRemaining;
+    /**
+     * The number of bytes of the current TLS record header already written, or 0 if at the start of a record
+     */
+    private int headerBytesSeen;
+    private int recordLength;
+
+    OutboundStatsHandler(MuStatsImpl stats, boolean countTlsRecords) {
+        this.stats = stats;
+        this.countTlsRecords = countTlsRecords;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (countTlsRecords && msg instanceof ByteBuf) {
+            countRecords((ByteBuf) msg);
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        stats.onFlush();
+        ctx.flush();
+    }
+
+    private void countRecords(ByteBuf buf) {
+        int index = buf.readerIndex();
+        int end = buf.writerIndex();
+        int records = 0;
+        while (index < end) {
+            if (recordBytesRemaining > 0) {
+                int skip = Math.min(recordBytesRemaining, end - index);
+                index += skip;
+                recordBytesRemaining -= skip;
+            } else {
+                // the header is a 1 byte content type, a 2 byte version, and a 2 byte length
+                int b = buf.getUnsignedByte(index++);
+                if (headerBytesSeen == 3) {
+                    recordLength = b << 8;
+                } else if (headerBytesSeen == 4) {
+                    recordBytesRemaining = recordLength | b;
+                    records++;
+                }
+                headerBytesSeen = (headerBytesSeen + 1) % TLS_HEADER_LENGTH;
+            }
+        }
+        if (records > 0) {
+            stats.onTlsRecordsSent(records);
+        }
+    }
+}
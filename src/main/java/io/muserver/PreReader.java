@@ -11,9 +11,14 @@ import io.netty.util.ReferenceCountUtil;
  */
 class PreReader extends ChannelDuplexHandler {
 
+    private final EventLoopMonitor loopMonitor;
     private Object pendingMsg;
     private boolean wantsToRead = false;
 
+    PreReader(EventLoopMonitor loopMonitor) {
+        this.loopMonitor = loopMonitor;
+    }
+
     @Override
     public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
         ctx.channel().config().setAutoRead(false);
@@ -47,7 +52,11 @@ class PreReader extends ChannelDuplexHandler {
     public void read(ChannelHandlerContext ctx) throws Exception {
         // The mu handler wants to read. Send it the pending message if it's there; otherwise wait
         wantsToRead = true;
-        ctx.executor().submit(() -> sendItMaybe(ctx));
+        ctx.executor().submit(() -> {
+            long start = loopMonitor.startNanos();
+            sendItMaybe(ctx);
+            loopMonitor.record(EventLoopTask.READ, start);
+        });
     }
 
     @Override
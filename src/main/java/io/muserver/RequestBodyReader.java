@@ -3,10 +3,7 @@ package io.muserver;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
-import io.netty.handler.codec.http.DefaultHttpContent;
-import io.netty.handler.codec.http.DefaultLastHttpContent;
-import io.netty.handler.codec.http.HttpRequest;
-import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http.multipart.*;
 import io.netty.handler.codec.http2.Http2Exception;
 import org.slf4j.Logger;
@@ -234,10 +231,13 @@ abstract class RequestBodyReader {
             return form;
         }
 
-        public MultipartFormReader(long maxSize, HttpRequest nettyRequest, Charset charset) {
+        public MultipartFormReader(long maxSize, String contentType, Charset charset) {
             super(maxSize);
             HttpDataFactory factory = new DefaultHttpDataFactory(charset);
-            multipartRequestDecoder = new HttpPostMultipartRequestDecoder(factory, nettyRequest, charset);
+            // the decoder only needs the content type (for the boundary) so this works for HTTP/1 and HTTP/2 requests
+            HttpHeaders headers = new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+            HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/", headers);
+            multipartRequestDecoder = new HttpPostMultipartRequestDecoder(factory, request, charset);
         }
 
         @Override
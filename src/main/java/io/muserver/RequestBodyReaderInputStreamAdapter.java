@@ -6,6 +6,9 @@ import javax.ws.rs.WebApplicationException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 class RequestBodyReaderInputStreamAdapter extends RequestBodyReader {
     private boolean receivedLast = false;
@@ -13,13 +16,16 @@ class RequestBodyReaderInputStreamAdapter extends RequestBodyReader {
     private ByteBuf currentBuf;
     private DoneCallback currentCallback;
     private boolean userClosed = false;
-    private final Object lock = new Object();
+    // a Lock rather than a synchronized monitor so that virtual threads waiting for data do not pin their carrier thread
+    private final Lock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
 
     private final InputStream stream = new InputStream() {
         @Override
         public int read() throws IOException {
 
-            synchronized (lock) {
+            lock.lock();
+            try {
                 if (finished) {
                     return -1;
                 }
@@ -33,6 +39,8 @@ class RequestBodyReaderInputStreamAdapter extends RequestBodyReader {
                 byte b = currentBuf.readByte();
                 afterConsumed();
                 return b;
+            } finally {
+                lock.unlock();
             }
         }
 
@@ -51,7 +59,8 @@ class RequestBodyReaderInputStreamAdapter extends RequestBodyReader {
                 return 0;
             }
 
-            synchronized (lock) {
+            lock.lock();
+            try {
                 if (userClosed) {
                     throw new IOException("Cannot call read after the stream is closed");
                 }
@@ -67,30 +76,39 @@ class RequestBodyReaderInputStreamAdapter extends RequestBodyReader {
                 }
                 afterConsumed();
                 return actual;
+            } finally {
+                lock.unlock();
             }
         }
 
         @Override
         public long skip(long n) throws IOException {
-            synchronized (lock) {
+            lock.lock();
+            try {
                 waitForData();
                 int toSkip = Math.min((int) n, currentBuf.readableBytes());
                 currentBuf.skipBytes(toSkip);
                 afterConsumed();
                 return toSkip;
+            } finally {
+                lock.unlock();
             }
         }
 
         @Override
         public int available() {
-            synchronized (lock) {
+            lock.lock();
+            try {
                 return currentBuf == null ? 0 : currentBuf.readableBytes();
+            } finally {
+                lock.unlock();
             }
         }
 
         @Override
         public void close() throws IOException {
-            synchronized (lock) {
+            lock.lock();
+            try {
                 userClosed = true;
                 if (currentCallback != null) {
                     // just discard it
@@ -101,6 +119,8 @@ class RequestBodyReaderInputStreamAdapter extends RequestBodyReader {
                     }
                     currentBuf = null;
                 }
+            } finally {
+                lock.unlock();
             }
         }
 
@@ -138,14 +158,18 @@ class RequestBodyReaderInputStreamAdapter extends RequestBodyReader {
     @Override
     void onCancelled(Throwable cause) {
         super.onCancelled(cause);
-        synchronized (lock) {
-            lock.notify();
+        lock.lock();
+        try {
+            dataAvailable.signal();
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public void onRequestBodyRead0(ByteBuf content, boolean last, DoneCallback callback) {
-        synchronized (lock) {
+        lock.lock();
+        try {
 
             if (userClosed) {
                 try {
@@ -165,7 +189,9 @@ class RequestBodyReaderInputStreamAdapter extends RequestBodyReader {
             if (last) {
                 receivedLast = true;
             }
-            lock.notify();
+            dataAvailable.signal();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -193,7 +219,7 @@ class RequestBodyReaderInputStreamAdapter extends RequestBodyReader {
             return;
         }
         try {
-            lock.wait();
+            dataAvailable.await();
             throwIfErrored();
         } catch (InterruptedException e) {
             DoneCallback cb = this.currentCallback;
@@ -0,0 +1,97 @@
+package io.muserver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Exponentially weighted moving averages of an event rate over 1, 5 and 15 minutes, in the same way as the
+ * Unix load average. Rather than using a timer, the averages are updated every 5 seconds by whichever thread
+ * records an event or reads a rate after the interval has passed.
+ */
+class RequestRate {
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    private static final double TICK_SECONDS = 5.0;
+    private static final double M1_ALPHA = alpha(1);
+    private static final double M5_ALPHA = alpha(5);
+    private static final double M15_ALPHA = alpha(15);
+
+    private final LongSupplier clock;
+    private final LongAdder uncounted = new LongAdder();
+    private final AtomicLong lastTick;
+    private volatile boolean initialised;
+    private volatile double m1Rate;
+    private volatile double m5Rate;
+    private volatile double m15Rate;
+
+    RequestRate() {
+        this(System::nanoTime);
+    }
+
+    RequestRate(LongSupplier clock) {
+        this.clock = clock;
+        this.lastTick = new AtomicLong(clock.getAsLong());
+    }
+
+    private static double alpha(int minutes) {
+        return 1 - Math.exp(-TICK_SECONDS / 60.0 / minutes);
+    }
+
+    void mark() {
+        tickIfNecessary();
+        uncounted.increment();
+    }
+
+    /**
+     * @return The events per second averaged over 1 minute
+     */
+    double oneMinuteRate() {
+        tickIfNecessary();
+        return m1Rate;
+    }
+
+    /**
+     * @return The events per second averaged over 5 minutes
+     */
+    double fiveMinuteRate() {
+        tickIfNecessary();
+        return m5Rate;
+    }
+
+    /**
+     * @return The events per second averaged over 15 minutes
+     */
+    double fifteenMinuteRate() {
+        tickIfNecessary();
+        return m15Rate;
+    }
+
+    private void tickIfNecessary() {
+        long oldTick = lastTick.get();
+        long age = clock.getAsLong() - oldTick;
+        if (age > TICK_INTERVAL) {
+            long newTick = oldTick + age - age % TICK_INTERVAL;
+            if (lastTick.compareAndSet(oldTick, newTick)) {
+                long ticks = age / TICK_INTERVAL;
+                for (long i = 0; i < ticks; i++) {
+                    tick();
+                }
+            }
+        }
+    }
+
+    private void tick() {
+        double instantRate = uncounted.sumThenReset() / TICK_SECONDS;
+        if (initialised) {
+            m1Rate += M1_ALPHA * (instantRate - m1Rate);
+            m5Rate += M5_ALPHA * (instantRate - m5Rate);
+            m15Rate += M15_ALPHA * (instantRate - m15Rate);
+        } else {
+            m1Rate = instantRate;
+            m5Rate = instantRate;
+            m15Rate = instantRate;
+            initialised = true;
+        }
+    }
+}
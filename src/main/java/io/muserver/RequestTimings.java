@@ -0,0 +1,41 @@
+package io.muserver;
+
+/**
+ * <p>When a request reached each stage of its lifecycle, as the number of nanoseconds after its headers were
+ * received. Each value is <code>-1</code> if the request has not (or never) reached that stage. Accessible via
+ * {@link ResponseInfo#timings()}.</p>
+ * <p>These show where the time of a slow request went. For example a large gap between
+ * {@link #dispatchedNanos()} and {@link #handlerStartedNanos()} means the request was queued waiting for a thread
+ * of the handler executor, while a large gap between {@link #firstByteWrittenNanos()} and
+ * {@link #lastByteFlushedNanos()} means the response was slow to write, for example because the client was
+ * slow to read it.</p>
+ * @see MuServerBuilder#withServerTimingHeader(boolean)
+ */
+public interface RequestTimings {
+
+    /**
+     * @return When the request was last handed to an executor to run handlers on. This is usually the handler
+     * executor, or the event loop for a {@link NonBlockingHandler}, or the executor of a {@link BulkheadHandler}.
+     */
+    long dispatchedNanos();
+
+    /**
+     * @return When the executor that the request was last dispatched to started running handlers for it
+     */
+    long handlerStartedNanos();
+
+    /**
+     * @return When the response headers were written
+     */
+    long firstByteWrittenNanos();
+
+    /**
+     * @return When the last of the response was flushed to the connection
+     */
+    long lastByteFlushedNanos();
+
+    /**
+     * @return When both the request and response were complete
+     */
+    long completeNanos();
+}
@@ -31,4 +31,13 @@ public interface ResponseInfo {
      */
     MuResponse response();
 
+    /**
+     * @return When the request reached each stage of its lifecycle. The default implementation returns
+     * <code>null</code>, which is what implementations that are not created by the server (such as test doubles)
+     * return unless they override this.
+     */
+    default RequestTimings timings() {
+        return null;
+    }
+
 }
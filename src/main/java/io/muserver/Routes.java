@@ -23,8 +23,30 @@ public class Routes {
      */
 	public static MuHandler route(Method method, String uriTemplate, RouteHandler muHandler) {
         UriPattern uriPattern = UriPattern.uriTemplateToRegex(uriTemplate);
+        return new Route(method, uriPattern, muHandler);
+	}
+
+    /**
+     * A handler for a single route. This is a class rather than a lambda so that a {@link BulkheadHandler} can
+     * check whether a request matches before switching threads.
+     */
+    static class Route implements MuHandler {
+        private final Method method;
+        private final UriPattern uriPattern;
+        private final RouteHandler muHandler;
 
-        return (request, response) -> {
+        private Route(Method method, UriPattern uriPattern, RouteHandler muHandler) {
+            this.method = method;
+            this.uriPattern = uriPattern;
+            this.muHandler = muHandler;
+        }
+
+        boolean matches(MuRequest request) {
+            return (method == null || method.equals(request.method())) && uriPattern.matcher(request.relativePath()).fullyMatches();
+        }
+
+        @Override
+        public boolean handle(MuRequest request, MuResponse response) throws Exception {
 			boolean methodMatches = method == null || method.equals(request.method());
 			if (methodMatches) {
                 PathMatch matcher = uriPattern.matcher(request.relativePath());
@@ -34,8 +56,8 @@ public class Routes {
                 }
 			}
 			return false;
-		};
-	}
+        }
+    }
 
 	private Routes() {}
 }
@@ -12,8 +12,15 @@ class ServerSettings {
     final boolean gzipEnabled;
     final Set<String> mimeTypesToGzip;
     final List<RateLimiterImpl> rateLimiters;
+    final int maxPipelinedRequests;
+    final int flushConsolidationBytes;
+    final ConcurrencyLimiter concurrencyLimiter;
+    final ConnectionLimiter connectionLimiter;
+    final boolean serverTimingHeader;
+    final FlightRecorderEvents flightRecorder;
+    final Http2Config http2Config;
 
-    ServerSettings(long minimumGzipSize, int maxHeadersSize, long requestReadTimeoutMillis, long maxRequestSize, int maxUrlSize, boolean gzipEnabled, Set<String> mimeTypesToGzip, List<RateLimiterImpl> rateLimiters) {
+    ServerSettings(long minimumGzipSize, int maxHeadersSize, long requestReadTimeoutMillis, long maxRequestSize, int maxUrlSize, boolean gzipEnabled, Set<String> mimeTypesToGzip, List<RateLimiterImpl> rateLimiters, int maxPipelinedRequests, int flushConsolidationBytes, ConcurrencyLimiter concurrencyLimiter, ConnectionLimiter connectionLimiter, boolean serverTimingHeader, FlightRecorderEvents flightRecorder, Http2Config http2Config) {
         this.minimumGzipSize = minimumGzipSize;
         this.maxHeadersSize = maxHeadersSize;
         this.requestReadTimeoutMillis = requestReadTimeoutMillis;
@@ -22,6 +29,13 @@ class ServerSettings {
         this.gzipEnabled = gzipEnabled;
         this.mimeTypesToGzip = mimeTypesToGzip;
         this.rateLimiters = rateLimiters;
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        this.flushConsolidationBytes = flushConsolidationBytes;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.connectionLimiter = connectionLimiter;
+        this.serverTimingHeader = serverTimingHeader;
+        this.flightRecorder = flightRecorder;
+        this.http2Config = http2Config;
     }
 
     boolean shouldCompress(String declaredLength, String contentType) {
@@ -48,6 +62,9 @@ class ServerSettings {
                 allowed &= limiter.record(request);
             }
         }
+        if (!allowed && flightRecorder != null) {
+            flightRecorder.onRateLimited(request);
+        }
         return !allowed;
     }
 }
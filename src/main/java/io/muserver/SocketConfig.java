@@ -0,0 +1,64 @@
+package io.muserver;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.EpollChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Low-level socket options for the server's listening sockets and accepted connections.
+ * @see SocketConfigBuilder
+ */
+public class SocketConfig {
+    private static final Logger log = LoggerFactory.getLogger(SocketConfig.class);
+    final Boolean tcpNoDelay;
+    final int backlog;
+    final int tcpDeferAcceptSeconds;
+    final int tcpFastOpenQueueLength;
+    final long tcpNotSentLowAt;
+    final int reusePortAcceptors;
+
+    SocketConfig(Boolean tcpNoDelay, int backlog, int tcpDeferAcceptSeconds, int tcpFastOpenQueueLength, long tcpNotSentLowAt, int reusePortAcceptors) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.backlog = backlog;
+        this.tcpDeferAcceptSeconds = tcpDeferAcceptSeconds;
+        this.tcpFastOpenQueueLength = tcpFastOpenQueueLength;
+        this.tcpNotSentLowAt = tcpNotSentLowAt;
+        this.reusePortAcceptors = reusePortAcceptors;
+    }
+
+    /**
+     * @return The number of listening sockets to bind per port, each with its own acceptor thread
+     */
+    int acceptors(Transport transport) {
+        if (reusePortAcceptors > 1 && transport != Transport.EPOLL) {
+            log.warn("SO_REUSEPORT is only supported by the EPOLL transport so a single acceptor will be used with " + transport);
+            return 1;
+        }
+        return Math.max(1, reusePortAcceptors);
+    }
+
+    void applyTo(ServerBootstrap bootstrap, Transport transport) {
+        if (tcpNoDelay != null) {
+            bootstrap.childOption(ChannelOption.TCP_NODELAY, tcpNoDelay);
+        }
+        if (backlog > 0) {
+            bootstrap.option(ChannelOption.SO_BACKLOG, backlog);
+        }
+        if (transport == Transport.EPOLL) {
+            if (tcpDeferAcceptSeconds > -1) {
+                bootstrap.option(EpollChannelOption.TCP_DEFER_ACCEPT, tcpDeferAcceptSeconds);
+            }
+            if (tcpFastOpenQueueLength > -1) {
+                bootstrap.option(EpollChannelOption.TCP_FASTOPEN, tcpFastOpenQueueLength);
+            }
+            if (reusePortAcceptors > 1) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+            if (tcpNotSentLowAt > -1) {
+                bootstrap.childOption(EpollChannelOption.TCP_NOTSENT_LOWAT, tcpNotSentLowAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.muserver;
+
+/**
+ * <p>Configuration builder for socket options, passed to {@link MuServerBuilder#withSocketConfig(SocketConfigBuilder)}</p>
+ * <p>Unless set, the operating system (or Netty) defaults are used. Some options are only supported by the
+ * {@link Transport#EPOLL} transport and are ignored when another transport is used.</p>
+ */
+public class SocketConfigBuilder {
+
+    private Boolean tcpNoDelay;
+    private int backlog = -1;
+    private int tcpDeferAcceptSeconds = -1;
+    private int tcpFastOpenQueueLength = -1;
+    private long tcpNotSentLowAt = -1;
+    private int reusePortAcceptors = 1;
+
+    /**
+     * Sets the <code>TCP_NODELAY</code> option on accepted connections, which disables Nagle's algorithm.
+     * @param tcpNoDelay <code>true</code> to send data as soon as possible
+     * @return This builder
+     */
+    public SocketConfigBuilder withTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * Sets the <code>SO_BACKLOG</code> option, which is the maximum queue length of connections that
+     * have not yet been accepted.
+     * @param backlog The queue length
+     * @return This builder
+     */
+    public SocketConfigBuilder withBacklog(int backlog) {
+        if (backlog < 1) {
+            throw new IllegalArgumentException("The backlog must be at least 1");
+        }
+        this.backlog = backlog;
+        return this;
+    }
+
+    /**
+     * Sets the Linux-only <code>TCP_DEFER_ACCEPT</code> option, so that a connection is only accepted once
+     * the client sends data. Only supported by the {@link Transport#EPOLL} transport.
+     * @param seconds The number of seconds to wait for data before accepting the connection anyway
+     * @return This builder
+     */
+    public SocketConfigBuilder withTcpDeferAccept(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("The seconds must be 0 or greater");
+        }
+        this.tcpDeferAcceptSeconds = seconds;
+        return this;
+    }
+
+    /**
+     * Enables the Linux-only <code>TCP_FASTOPEN</code> option, which allows clients to send data in the
+     * initial SYN packet. Only supported by the {@link Transport#EPOLL} transport.
+     * @param queueLength The maximum number of pending fast open requests, or 0 to disable
+     * @return This builder
+     */
+    public SocketConfigBuilder withTcpFastOpen(int queueLength) {
+        if (queueLength < 0) {
+            throw new IllegalArgumentException("The queue length must be 0 or greater");
+        }
+        this.tcpFastOpenQueueLength = queueLength;
+        return this;
+    }
+
+    /**
+     * Sets the Linux-only <code>TCP_NOTSENT_LOWAT</code> option on accepted connections, which limits the
+     * amount of unsent data held in the kernel's send buffer. Only supported by the {@link Transport#EPOLL} transport.
+     * @param bytes The threshold in bytes
+     * @return This builder
+     */
+    public SocketConfigBuilder withTcpNotSentLowAt(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The bytes must be 0 or greater");
+        }
+        this.tcpNotSentLowAt = bytes;
+        return this;
+    }
+
+    /**
+     * <p>Binds the given number of listening sockets to each port using the Linux-only <code>SO_REUSEPORT</code>
+     * option, each with its own acceptor thread. The kernel then spreads new connections across the acceptors
+     * which avoids accepting all connections on a single thread during connection storms.</p>
+     * <p>Only supported by the {@link Transport#EPOLL} transport. With other transports a single acceptor is used.</p>
+     * @param acceptors The number of acceptors per port. The default is 1.
+     * @return This builder
+     */
+    public SocketConfigBuilder withReusePort(int acceptors) {
+        if (acceptors < 1) {
+            throw new IllegalArgumentException("The number of acceptors must be at least 1");
+        }
+        this.reusePortAcceptors = acceptors;
+        return this;
+    }
+
+    /**
+     * Creates the socket settings object
+     * @return A new SocketConfig object
+     */
+    public SocketConfig build() {
+        return new SocketConfig(tcpNoDelay, backlog, tcpDeferAcceptSeconds, tcpFastOpenQueueLength, tcpNotSentLowAt, reusePortAcceptors);
+    }
+
+    /**
+     * Creates a new config where all the defaults are used
+     * @return A new builder
+     */
+    public static SocketConfigBuilder socketConfig() {
+        return new SocketConfigBuilder();
+    }
+}
@@ -105,7 +105,9 @@ public interface SsePublisher {
     static SsePublisher start(MuRequest request, MuResponse response) {
         response.contentType(ContentTypes.TEXT_EVENT_STREAM);
         response.headers().set(HeaderNames.CACHE_CONTROL, "no-cache, no-transform");
-        return new SsePublisherImpl(request.handleAsync());
+        AsyncHandle asyncHandle = request.handleAsync();
+        NettyRequestAdapter.onSseStarted(request, asyncHandle);
+        return new SsePublisherImpl(asyncHandle);
     }
 }
 
@@ -150,7 +152,7 @@ class SsePublisherImpl implements SsePublisher {
     private void sendChunk(String text) throws IOException {
         try {
             ByteBuffer buf = Mutils.toByteBuffer(text);
-            asyncHandle.write(buf).get();
+            Mutils.await(asyncHandle.write(buf));
         } catch (Throwable e) {
             close();
             throw new IOException("Error while publishing SSE message", e);
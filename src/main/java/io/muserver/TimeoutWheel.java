@@ -0,0 +1,148 @@
+package io.muserver;
+
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A coarse-grained hashed timer wheel for the timeouts of the connections on one event loop.</p>
+ * <p>Rather than scheduling (and cancelling) a task on the event loop for every timeout, each timeout is put into
+ * a bucket of the wheel and the wheel checks one bucket per tick. Changing the deadline of a timeout that is
+ * already in the wheel is just a field update, and the timeout is moved to the right bucket lazily when its
+ * current bucket is checked. This means timeouts that are pushed back on every read, such as idle timeouts, cost
+ * no allocations and no scheduled task churn. Each bucket is a doubly linked list, so cancelling a timeout unlinks
+ * it straight away and the wheel does not keep cancelled timeouts (and the connections they refer to) reachable.</p>
+ * <p>Timeouts never fire early, and fire up to one tick late. All methods must be called on the event loop that
+ * owns the wheel.</p>
+ */
+class TimeoutWheel {
+    private static final Logger log = LoggerFactory.getLogger(TimeoutWheel.class);
+    private static final long NONE = Long.MAX_VALUE;
+    private static final int BUCKETS = 512;
+
+    private final EventExecutor loop;
+    private final long tickNanos;
+    private final Timeout[] buckets = new Timeout[BUCKETS];
+    private long tick;
+    private long now;
+
+    TimeoutWheel(EventExecutor loop, long tickMillis) {
+        this.loop = loop;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.now = System.nanoTime();
+        loop.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Picks a tick duration that is about a tenth of the shortest timeout, so that timeouts fire no more than
+     * about 10% late, while not ticking more often than needed for long timeouts.
+     * @param timeoutsMillis The configured timeouts, where 0 means the timeout is disabled
+     * @return A tick duration between 10ms and 1 second
+     */
+    static long tickMillisFor(long... timeoutsMillis) {
+        long shortest = Long.MAX_VALUE;
+        for (long timeout : timeoutsMillis) {
+            if (timeout > 0) {
+                shortest = Math.min(shortest, timeout);
+            }
+        }
+        return Math.max(10, Math.min(1000, shortest / 10));
+    }
+
+    /**
+     * Sets when the timeout fires, adding it to the wheel if it is not already in it
+     * @param timeout The timeout
+     * @param delayNanos How long from now until the timeout fires
+     */
+    void schedule(Timeout timeout, long delayNanos) {
+        assert loop.inEventLoop() : "Not in event loop";
+        timeout.deadline = System.nanoTime() + delayNanos;
+        if (timeout.bucket == -1) {
+            add(timeout);
+        }
+    }
+
+    /**
+     * Stops the timeout from firing and removes it from the wheel
+     */
+    void cancel(Timeout timeout) {
+        assert loop.inEventLoop() : "Not in event loop";
+        timeout.deadline = NONE;
+        if (timeout.bucket != -1) {
+            unlink(timeout);
+        }
+    }
+
+    private void add(Timeout timeout) {
+        // never more than one rotation away, so that a timeout is never added back to the bucket being checked
+        long ticksAway = Math.max(1, Math.min(BUCKETS - 1, (timeout.deadline - now + tickNanos - 1) / tickNanos));
+        int index = (int) ((tick + ticksAway) & (BUCKETS - 1));
+        Timeout head = buckets[index];
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        timeout.bucket = index;
+        buckets[index] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        Timeout prev = timeout.prev;
+        Timeout next = timeout.next;
+        if (prev == null) {
+            buckets[timeout.bucket] = next;
+        } else {
+            prev.next = next;
+        }
+        if (next != null) {
+            next.prev = prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    private void tick() {
+        now = System.nanoTime();
+        tick++;
+        int index = (int) (tick & (BUCKETS - 1));
+        Timeout cur;
+        // the head is taken each time because a timeout firing may cancel others in the same bucket
+        while ((cur = buckets[index]) != null) {
+            unlink(cur);
+            if (cur.deadline - now <= 0) {
+                cur.deadline = NONE;
+                try {
+                    cur.onTimeout();
+                } catch (Exception e) {
+                    log.warn("Error from timeout " + cur, e);
+                }
+            } else {
+                add(cur);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TimeoutWheel{tickMillis=" + TimeUnit.NANOSECONDS.toMillis(tickNanos) + "}";
+    }
+
+    /**
+     * Something that times out. One instance is created per connection or exchange and reused each time its
+     * deadline changes.
+     */
+    abstract static class Timeout {
+        private long deadline = NONE;
+        private Timeout prev;
+        private Timeout next;
+        private int bucket = -1;
+
+        /**
+         * Called on the event loop when the deadline is reached
+         */
+        abstract void onTimeout();
+    }
+}
@@ -0,0 +1,84 @@
+package io.muserver;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * The network transport used to accept connections and read and write data.
+ * @see MuServerBuilder#withTransport(Transport)
+ */
+public enum Transport {
+
+    /**
+     * Uses the native {@link #EPOLL} transport if it is available, otherwise uses {@link #NIO}
+     */
+    AUTO,
+
+    /**
+     * The Java NIO transport, which works on all platforms.
+     */
+    NIO,
+
+    /**
+     * <p>The Linux-only native epoll transport, which has less per-packet and garbage collection overhead than NIO
+     * and supports extra socket options such as {@link SocketConfigBuilder#withTcpFastOpen(int)}.</p>
+     * <p>This requires the <code>io.netty:netty-transport-native-epoll</code> jar with the classifier for your
+     * platform (e.g. <code>linux-x86_64</code>) to be on the classpath.</p>
+     */
+    EPOLL;
+
+    /**
+     * @return <code>true</code> if this transport can be used on the current platform
+     */
+    public boolean isAvailable() {
+        if (this == EPOLL) {
+            try {
+                return Epoll.isAvailable();
+            } catch (Throwable e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Transport resolve() {
+        if (this == AUTO) {
+            return EPOLL.isAvailable() ? EPOLL : NIO;
+        }
+        if (!isAvailable()) {
+            throw new IllegalStateException("The " + this + " transport is not available on this platform", Epoll.unavailabilityCause());
+        }
+        return this;
+    }
+
+    EventLoopGroup newEventLoopGroup(int threads) {
+        switch (resolve()) {
+            case EPOLL:
+                return new EpollEventLoopGroup(threads);
+            default:
+                return new NioEventLoopGroup(threads);
+        }
+    }
+
+    Class<? extends ServerChannel> serverChannelClass() {
+        switch (resolve()) {
+            case EPOLL:
+                return EpollServerSocketChannel.class;
+            default:
+                return NioServerSocketChannel.class;
+        }
+    }
+
+    Class<? extends ServerChannel> serverDomainSocketChannelClass() {
+        if (resolve() != EPOLL) {
+            throw new IllegalStateException("Unix domain sockets require the " + EPOLL + " transport but the " + this + " transport is being used");
+        }
+        return EpollServerDomainSocketChannel.class;
+    }
+}
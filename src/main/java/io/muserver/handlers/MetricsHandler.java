@@ -0,0 +1,321 @@
+package io.muserver.handlers;
+
+import io.muserver.*;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * <p>Serves the statistics of the server in the
+ * <a href="https://openmetrics.io/" target="_blank">OpenMetrics</a> text format, or the Prometheus text format
+ * for clients that do not ask for OpenMetrics.</p>
+ * <p>The metrics are written directly to the response as they are read, so a scrape does not build the whole
+ * response in memory, and it does not copy the set of active requests.</p>
+ * @see MetricsHandlerBuilder
+ */
+public class MetricsHandler implements MuHandler {
+
+    static final String OPENMETRICS_CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] PROTOCOLS = {"HTTP/1.1", "HTTP/2"};
+
+    private final String path;
+    private final String prefix;
+    private final Map<String, ExecutorService> executors;
+    private final boolean includeRateLimiterBuckets;
+
+    MetricsHandler(String path, String prefix, Map<String, ExecutorService> executors, boolean includeRateLimiterBuckets) {
+        this.path = path;
+        this.prefix = prefix;
+        this.executors = executors;
+        this.includeRateLimiterBuckets = includeRateLimiterBuckets;
+    }
+
+    @Override
+    public boolean handle(MuRequest request, MuResponse response) throws Exception {
+        if (!request.relativePath().equals(path) || (request.method() != Method.GET && request.method() != Method.HEAD)) {
+            return false;
+        }
+        String accept = request.headers().get(HeaderNames.ACCEPT, "");
+        boolean openMetrics = accept.contains("application/openmetrics-text");
+        response.contentType(openMetrics ? OPENMETRICS_CONTENT_TYPE : PROMETHEUS_CONTENT_TYPE);
+        response.headers().set(HeaderNames.CACHE_CONTROL, "no-store");
+        try (PrintWriter writer = response.writer()) {
+            Exposition out = new Exposition(writer, prefix, openMetrics);
+            writeServerStats(out, request.server());
+            writeEventLoops(out, request.server().eventLoopStats());
+            writeExecutors(out);
+            if (openMetrics) {
+                writer.write("# EOF\n");
+            }
+        }
+        return true;
+    }
+
+    private void writeServerStats(Exposition out, MuServer server) {
+        MuStats stats = server.stats();
+        out.counter("connections_completed", "Connections that have been closed", stats.completedConnections());
+        out.gauge("connections_active", "Connections that are currently open", stats.activeConnections());
+        out.counter("connections_failed", "Connections that failed to be established, for example due to TLS handshake failures", stats.failedToConnect());
+        out.counter("connections_rejected", "Connections closed on accept because a connection limit was reached", stats.rejectedConnections());
+        out.counter("connections_closed_for_abuse", "HTTP/2 connections closed because the client exceeded a stream, reset or control frame budget", stats.http2ConnectionsClosedForAbuse());
+        out.counter("requests_completed", "Requests that have completed", stats.completedRequests());
+        out.gauge("requests_active", "Requests that are currently in progress", stats.activeRequestCount());
+        out.counter("requests_invalid", "Requests that could not be parsed", stats.invalidHttpRequests());
+        out.counter("requests_rejected_overload", "Requests rejected because the handler executor was overloaded", stats.rejectedDueToOverload());
+        out.counter("requests_rejected_concurrency_limit", "Requests rejected because the concurrency limit was reached", stats.rejectedDueToConcurrencyLimit());
+        int concurrencyLimit = stats.concurrencyLimit();
+        if (concurrencyLimit >= 0) {
+            out.gauge("concurrency_limit", "The current adaptive concurrency limit", concurrencyLimit);
+        }
+        out.counter("sent_bytes", "Bytes sent to clients", stats.bytesSent());
+        out.counter("read_bytes", "Bytes read from clients", stats.bytesRead());
+        out.counter("flushes", "Times that data was flushed to a socket", stats.flushes());
+        out.counter("tls_records_sent", "TLS records sent on HTTPS connections", stats.tlsRecordsSent());
+
+        out.header("request_rate", "gauge", "Requests completed per second as an exponentially weighted average");
+        out.labelledSample("request_rate", "", "window", "1m", stats.oneMinuteRequestRate());
+        out.labelledSample("request_rate", "", "window", "5m", stats.fiveMinuteRequestRate());
+        out.labelledSample("request_rate", "", "window", "15m", stats.fifteenMinuteRequestRate());
+
+        out.header("request_duration_seconds", "summary", "The time taken to complete requests");
+        for (String protocol : PROTOCOLS) {
+            for (int statusClass = 1; statusClass <= 5; statusClass++) {
+                LatencySnapshot latency = stats.requestLatency(protocol, statusClass);
+                long count = latency.count();
+                if (count > 0) {
+                    out.latency("request_duration_seconds", protocol, statusClass, latency, count);
+                }
+            }
+        }
+
+        AllocatorStats allocator = stats.allocatorStats();
+        if (allocator != null) {
+            out.gauge("allocator_used_direct_bytes", "Direct memory used by the buffer allocator", allocator.usedDirectMemory());
+            out.gauge("allocator_used_heap_bytes", "Heap memory used by the buffer allocator", allocator.usedHeapMemory());
+            out.gauge("allocator_pinned_direct_bytes", "Direct memory used by buffers that are currently in use", allocator.pinnedDirectMemory());
+            out.gauge("allocator_pinned_heap_bytes", "Heap memory used by buffers that are currently in use", allocator.pinnedHeapMemory());
+        }
+
+        List<RateLimiter> rateLimiters = server.rateLimiters();
+        if (!rateLimiters.isEmpty()) {
+            out.header("rate_limiter_buckets", "gauge", "The number of buckets currently held by each rate limiter");
+            for (int i = 0; i < rateLimiters.size(); i++) {
+                out.labelledSample("rate_limiter_buckets", "", "limiter", String.valueOf(i), rateLimiters.get(i).currentBuckets().size());
+            }
+            if (includeRateLimiterBuckets) {
+                out.header("rate_limiter_bucket_requests", "gauge", "The number of requests in each rate limiter bucket");
+                for (int i = 0; i < rateLimiters.size(); i++) {
+                    String limiter = String.valueOf(i);
+                    for (Map.Entry<String, Long> bucket : rateLimiters.get(i).currentBuckets().entrySet()) {
+                        out.bucketSample("rate_limiter_bucket_requests", limiter, bucket.getKey(), bucket.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeEventLoops(Exposition out, List<EventLoopStats> loops) {
+        if (loops.isEmpty()) {
+            return;
+        }
+        out.header("event_loop_pending_tasks", "gauge", "Tasks waiting to be run by the event loop");
+        for (int i = 0; i < loops.size(); i++) {
+            out.labelledSample("event_loop_pending_tasks", "", "loop", String.valueOf(i), loops.get(i).pendingTasks());
+        }
+        out.header("event_loop_lag_seconds", "summary", "How late periodically scheduled tasks ran on the event loop");
+        for (int i = 0; i < loops.size(); i++) {
+            LatencySnapshot lag = loops.get(i).lag();
+            long count = lag.count();
+            if (count > 0) {
+                out.summary("event_loop_lag_seconds", "loop", String.valueOf(i), lag, count);
+            }
+        }
+        out.header("event_loop_task_seconds", "counter", "Time the event loop spent running each kind of task");
+        for (int i = 0; i < loops.size(); i++) {
+            for (EventLoopTask task : EventLoopTask.values()) {
+                out.taskSample("event_loop_task_seconds", String.valueOf(i), task.name(), loops.get(i).taskMillis(task) / 1000.0);
+            }
+        }
+        out.header("event_loop_blocked", "counter", "Times the event loop was blocked for longer than the detection threshold");
+        for (int i = 0; i < loops.size(); i++) {
+            out.labelledSample("event_loop_blocked", "_total", "loop", String.valueOf(i), loops.get(i).blockedCount());
+        }
+    }
+
+    private void writeExecutors(Exposition out) {
+        if (executors.isEmpty()) {
+            return;
+        }
+        out.header("executor_queued_tasks", "gauge", "Tasks waiting in the queue of the executor");
+        for (Map.Entry<String, ExecutorService> entry : executors.entrySet()) {
+            ExecutorService executor = entry.getValue();
+            if (executor instanceof ThreadPoolExecutor) {
+                out.labelledSample("executor_queued_tasks", "", "executor", entry.getKey(), ((ThreadPoolExecutor) executor).getQueue().size());
+            } else if (executor instanceof ForkJoinPool) {
+                ForkJoinPool pool = (ForkJoinPool) executor;
+                out.labelledSample("executor_queued_tasks", "", "executor", entry.getKey(), pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+            }
+        }
+        out.header("executor_active_threads", "gauge", "Threads of the executor that are running tasks");
+        for (Map.Entry<String, ExecutorService> entry : executors.entrySet()) {
+            ExecutorService executor = entry.getValue();
+            if (executor instanceof ThreadPoolExecutor) {
+                out.labelledSample("executor_active_threads", "", "executor", entry.getKey(), ((ThreadPoolExecutor) executor).getActiveCount());
+            } else if (executor instanceof ForkJoinPool) {
+                out.labelledSample("executor_active_threads", "", "executor", entry.getKey(), ((ForkJoinPool) executor).getActiveThreadCount());
+            }
+        }
+        out.header("executor_pool_size", "gauge", "Threads currently in the pool of the executor");
+        for (Map.Entry<String, ExecutorService> entry : executors.entrySet()) {
+            ExecutorService executor = entry.getValue();
+            if (executor instanceof ThreadPoolExecutor) {
+                out.labelledSample("executor_pool_size", "", "executor", entry.getKey(), ((ThreadPoolExecutor) executor).getPoolSize());
+            } else if (executor instanceof ForkJoinPool) {
+                out.labelledSample("executor_pool_size", "", "executor", entry.getKey(), ((ForkJoinPool) executor).getPoolSize());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsHandler{" +
+            "path='" + path + '\'' +
+            ", prefix='" + prefix + '\'' +
+            ", executors=" + executors.keySet() +
+            '}';
+    }
+
+    /**
+     * Writes metric families and samples straight to the response writer. Counter families are named without the
+     * <code>_total</code> suffix in OpenMetrics, but with it in the Prometheus format.
+     */
+    private static final class Exposition {
+        private final PrintWriter out;
+        private final String prefix;
+        private final boolean openMetrics;
+
+        private Exposition(PrintWriter out, String prefix, boolean openMetrics) {
+            this.out = out;
+            this.prefix = prefix;
+            this.openMetrics = openMetrics;
+        }
+
+        void header(String name, String type, String help) {
+            String suffix = !openMetrics && type.equals("counter") ? "_total" : "";
+            out.append("# HELP ").append(prefix).append(name).append(suffix).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(prefix).append(name).append(suffix).append(' ').append(type).append('\n');
+        }
+
+        void counter(String name, String help, long value) {
+            header(name, "counter", help);
+            out.append(prefix).append(name).append("_total ");
+            out.print(value);
+            out.append('\n');
+        }
+
+        void gauge(String name, String help, long value) {
+            header(name, "gauge", help);
+            out.append(prefix).append(name).append(' ');
+            out.print(value);
+            out.append('\n');
+        }
+
+        void labelledSample(String name, String suffix, String label, String labelValue, double value) {
+            out.append(prefix).append(name).append(suffix).append('{');
+            label(label, labelValue);
+            out.append("} ");
+            out.print(value);
+            out.append('\n');
+        }
+
+        void labelledSample(String name, String suffix, String label, String labelValue, long value) {
+            out.append(prefix).append(name).append(suffix).append('{');
+            label(label, labelValue);
+            out.append("} ");
+            out.print(value);
+            out.append('\n');
+        }
+
+        void bucketSample(String name, String limiter, String bucket, long value) {
+            out.append(prefix).append(name).append('{');
+            label("limiter", limiter);
+            out.append(',');
+            label("bucket", bucket);
+            out.append("} ");
+            out.print(value);
+            out.append('\n');
+        }
+
+        void taskSample(String name, String loop, String task, double seconds) {
+            out.append(prefix).append(name).append("_total{");
+            label("loop", loop);
+            out.append(',');
+            label("task", task);
+            out.append("} ");
+            out.print(seconds);
+            out.append('\n');
+        }
+
+        void summary(String name, String label, String labelValue, LatencySnapshot latency, long count) {
+            for (double quantile : QUANTILES) {
+                out.append(prefix).append(name).append('{');
+                label(label, labelValue);
+                out.append(",quantile=\"");
+                out.print(quantile);
+                out.append("\"} ");
+                out.print(latency.percentileMillis(quantile * 100) / 1000.0);
+                out.append('\n');
+            }
+            labelledSample(name, "_sum", label, labelValue, latency.meanMillis() * count / 1000.0);
+            labelledSample(name, "_count", label, labelValue, count);
+        }
+
+        void latency(String name, String protocol, int statusClass, LatencySnapshot latency, long count) {
+            for (double quantile : QUANTILES) {
+                latencyLabels(name, "", protocol, statusClass);
+                out.append(",quantile=\"");
+                out.print(quantile);
+                out.append("\"} ");
+                out.print(latency.percentileMillis(quantile * 100) / 1000.0);
+                out.append('\n');
+            }
+            latencyLabels(name, "_sum", protocol, statusClass);
+            out.append("} ");
+            out.print(latency.meanMillis() * count / 1000.0);
+            out.append('\n');
+            latencyLabels(name, "_count", protocol, statusClass);
+            out.append("} ");
+            out.print(count);
+            out.append('\n');
+        }
+
+        private void latencyLabels(String name, String suffix, String protocol, int statusClass) {
+            out.append(prefix).append(name).append(suffix).append('{');
+            label("protocol", protocol);
+            out.append(",status_class=\"");
+            out.print(statusClass);
+            out.append("xx\"");
+        }
+
+        private void label(String name, String value) {
+            out.append(name).append("=\"");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' || c == '"') {
+                    out.append('\\').append(c);
+                } else if (c == '\n') {
+                    out.append("\\n");
+                } else {
+                    out.append(c);
+                }
+            }
+            out.append('"');
+        }
+    }
+}
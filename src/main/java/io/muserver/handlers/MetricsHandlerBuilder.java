@@ -0,0 +1,101 @@
+package io.muserver.handlers;
+
+import io.muserver.MuHandlerBuilder;
+import io.muserver.Mutils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>A builder for a handler that serves the server's statistics in the OpenMetrics or Prometheus text format so that
+ * they can be scraped by a monitoring system.</p>
+ * <p>Sample usage:</p>
+ * <pre>
+ *     ExecutorService executor = Executors.newFixedThreadPool(100);
+ *     server = MuServerBuilder.muServer()
+ *                 .withHandlerExecutor(executor)
+ *                 .addHandler(MetricsHandlerBuilder.metricsHandler()
+ *                     .withPath("/metrics")
+ *                     .withExecutor("handlers", executor))
+ *                 .addHandler( ... your handler ... )
+ *                 .start();
+ * </pre>
+ */
+public class MetricsHandlerBuilder implements MuHandlerBuilder<MetricsHandler> {
+
+    private String path = "/metrics";
+    private String prefix = "mu_";
+    private final Map<String, ExecutorService> executors = new LinkedHashMap<>();
+    private boolean includeRateLimiterBuckets = false;
+
+    /**
+     * Sets the path that metrics are served from. Requests to any other path are passed to the next handler.
+     * <p>The default is <code>/metrics</code></p>
+     * @param path The path, starting with a <code>/</code>
+     * @return This builder
+     */
+    public MetricsHandlerBuilder withPath(String path) {
+        Mutils.notNull("path", path);
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException("The path must start with a '/'");
+        }
+        this.path = path;
+        return this;
+    }
+
+    /**
+     * Sets the prefix added to the name of every metric.
+     * <p>The default is <code>mu_</code></p>
+     * @param prefix The prefix, which may be an empty string
+     * @return This builder
+     */
+    public MetricsHandlerBuilder withPrefix(String prefix) {
+        Mutils.notNull("prefix", prefix);
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * <p>Adds an executor whose queue depth, active threads and pool size are reported. This is typically the
+     * executor passed to {@link io.muserver.MuServerBuilder#withHandlerExecutor(ExecutorService)}.</p>
+     * <p>Only {@link java.util.concurrent.ThreadPoolExecutor} and {@link java.util.concurrent.ForkJoinPool}
+     * executors have figures to report; other executors are ignored.</p>
+     * @param name The value of the <code>executor</code> label for this executor
+     * @param executor The executor to report on
+     * @return This builder
+     */
+    public MetricsHandlerBuilder withExecutor(String name, ExecutorService executor) {
+        Mutils.notNull("name", name);
+        Mutils.notNull("executor", executor);
+        executors.put(name, executor);
+        return this;
+    }
+
+    /**
+     * <p>Specifies whether the number of requests in each rate limiter bucket is reported, with the bucket name as a
+     * label. The number of buckets of each rate limiter is always reported.</p>
+     * <p>This is disabled by default, as limiters that have a bucket per client address create one time series per
+     * client.</p>
+     * @param includeRateLimiterBuckets <code>true</code> to report every bucket
+     * @return This builder
+     */
+    public MetricsHandlerBuilder withRateLimiterBuckets(boolean includeRateLimiterBuckets) {
+        this.includeRateLimiterBuckets = includeRateLimiterBuckets;
+        return this;
+    }
+
+    @Override
+    public MetricsHandler build() {
+        return new MetricsHandler(path, prefix, Collections.unmodifiableMap(new LinkedHashMap<>(executors)), includeRateLimiterBuckets);
+    }
+
+    /**
+     * Creates a new builder for a metrics handler
+     * @return A new builder
+     */
+    public static MetricsHandlerBuilder metricsHandler() {
+        return new MetricsHandlerBuilder();
+    }
+}
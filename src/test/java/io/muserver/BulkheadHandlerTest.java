@@ -0,0 +1,153 @@
+package io.muserver;
+
+import io.muserver.rest.RestHandlerBuilder;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.util.concurrent.*;
+
+import static io.muserver.BulkheadHandler.bulkhead;
+import static io.muserver.NonBlockingHandler.nonBlocking;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class BulkheadHandlerTest {
+
+    private MuServer server;
+    private final ExecutorService bulkheadExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<>(), new DefaultThreadFactory("bulkhead"));
+    private final ConcurrentLinkedQueue<String> threads = new ConcurrentLinkedQueue<>();
+
+    @Test
+    public void bulkheadHandlersRunOnTheirOwnExecutor() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(bulkhead(bulkheadExecutor, ContextHandlerBuilder.context("slow")
+                .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                    threads.add(Thread.currentThread().getName());
+                    response.write("Slow");
+                })))
+            .addHandler(Method.GET, "/fast", (request, response, pathParams) -> {
+                threads.add(Thread.currentThread().getName());
+                response.write("Fast");
+            })
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/slow/")))) {
+            assertThat(resp.body().string(), is("Slow"));
+        }
+        assertThat(threads.poll(), startsWith("bulkhead"));
+
+        try (Response resp = call(request(server.uri().resolve("/fast")))) {
+            assertThat(resp.body().string(), is("Fast"));
+        }
+        assertThat(threads.poll(), startsWith("muhandler"));
+    }
+
+    @Test
+    public void aFullBulkheadRejectsItsRequestsWithoutAffectingOthers() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(nonBlocking((request, response) -> false))
+            .addHandler(bulkhead(bulkheadExecutor, Routes.route(Method.GET, "/slow", (request, response, pathParams) -> {
+                slowStarted.countDown();
+                MuAssert.assertNotTimedOut("Waiting for release", release);
+                response.write("Slow");
+            })))
+            .addHandler(Method.GET, "/fast", (request, response, pathParams) -> response.write("Fast"))
+            .start();
+
+        Thread slowClient = new Thread(() -> {
+            try (Response resp = call(request(server.uri().resolve("/slow")))) {
+                resp.body().string();
+            } catch (Exception ignored) {
+            }
+        });
+        slowClient.start();
+        MuAssert.assertNotTimedOut("Waiting for slow request", slowStarted);
+
+        try (Response resp = call(request(server.uri().resolve("/slow")))) {
+            assertThat(resp.code(), is(503));
+        }
+        assertThat(server.stats().rejectedDueToOverload(), is(1L));
+
+        try (Response resp = call(request(server.uri().resolve("/fast")))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("Fast"));
+        }
+
+        release.countDown();
+        slowClient.join(10000);
+    }
+
+    @Test
+    public void otherHandlersOnlyGetTheRequestsTheirMatcherAccepts() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(bulkhead(bulkheadExecutor, request -> request.relativePath().startsWith("/api/"), (request, response) -> {
+                threads.add(Thread.currentThread().getName());
+                if (request.relativePath().equals("/api/thing")) {
+                    response.write("API");
+                    return true;
+                }
+                return false;
+            }))
+            .addHandler(Method.GET, "/fast", (request, response, pathParams) -> {
+                threads.add(Thread.currentThread().getName());
+                response.write("Fast");
+            })
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/api/thing")))) {
+            assertThat(resp.body().string(), is("API"));
+        }
+        assertThat(threads.poll(), startsWith("bulkhead"));
+
+        try (Response resp = call(request(server.uri().resolve("/fast")))) {
+            assertThat(resp.body().string(), is("Fast"));
+        }
+        assertThat(threads.poll(), startsWith("muhandler"));
+        assertThat(threads.poll(), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void handlersThatAreNotContextsOrRoutesNeedAMatcher() {
+        bulkhead(bulkheadExecutor, (request, response) -> false);
+    }
+
+    @Test
+    public void bulkheadsAddedToNestedHandlersFailRatherThanRunOnTheCurrentThread() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(ContextHandlerBuilder.context("nested")
+                .addHandler(bulkhead(bulkheadExecutor, Routes.route(Method.GET, "/slow", (request, response, pathParams) -> {
+                    threads.add(Thread.currentThread().getName());
+                    response.write("Slow");
+                }))))
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/nested/slow")))) {
+            assertThat(resp.code(), is(500));
+        }
+        assertThat(threads.poll(), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void buildersForHandlersThatAreNotContextsOrRoutesNeedAMatcher() {
+        bulkhead(bulkheadExecutor, RestHandlerBuilder.restHandler());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonBlockingHandlersCannotBeBulkheads() {
+        bulkhead(bulkheadExecutor, request -> true, nonBlocking((request, response) -> false));
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+        bulkheadExecutor.shutdownNow();
+    }
+}
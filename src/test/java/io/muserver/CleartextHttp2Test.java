@@ -0,0 +1,175 @@
+package io.muserver;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class CleartextHttp2Test {
+
+    private MuServer server;
+
+    private void startServer(boolean cleartext) {
+        server = httpServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled().withCleartext(cleartext))
+            .addHandler(Method.GET, "/hello", (request, response, pathParams) ->
+                response.write(request.uri().getScheme() + " " + request.connection().protocol() + " " + request.connection().isHttps()))
+            .addHandler(Method.POST, "/echo", (request, response, pathParams) -> response.write(request.readBodyAsString()))
+            .start();
+    }
+
+    @Test
+    public void clientsWithPriorKnowledgeCanUseHttp2() throws Exception {
+        startServer(true);
+        OkHttpClient h2cClient = scaffolding.ClientUtils.client.newBuilder()
+            .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+            .build();
+        try (Response resp = h2cClient.newCall(request(server.uri().resolve("/hello")).build()).execute()) {
+            assertThat(resp.protocol(), is(Protocol.H2_PRIOR_KNOWLEDGE));
+            assertThat(resp.body().string(), is("http HTTP/2 false"));
+        }
+        try (Response resp = h2cClient.newCall(request(server.uri().resolve("/echo")).post(RequestBody.create("Hello h2c".getBytes())).build()).execute()) {
+            assertThat(resp.body().string(), is("Hello h2c"));
+        }
+        assertThat(server.activeConnections(), hasSize(1));
+        assertThat(server.activeConnections().iterator().next().protocol(), is("HTTP/2"));
+    }
+
+    @Test
+    public void http1RequestsStillWorkWhenCleartextHttp2IsEnabled() throws Exception {
+        startServer(true);
+        try (Response resp = call(request(server.uri().resolve("/hello")))) {
+            assertThat(resp.protocol(), is(Protocol.HTTP_1_1));
+            assertThat(resp.body().string(), is("http HTTP/1.1 false"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/echo")).post(RequestBody.create("Hello".getBytes())))) {
+            assertThat(resp.body().string(), is("Hello"));
+        }
+    }
+
+    @Test
+    public void http1ConnectionsCanBeUpgraded() throws Exception {
+        startServer(true);
+        try (Socket socket = new Socket(server.uri().getHost(), server.uri().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(("GET /hello HTTP/1.1\r\nHost: localhost\r\nConnection: Upgrade, HTTP2-Settings\r\n" +
+                "Upgrade: h2c\r\nHTTP2-Settings: AAIAAAAA\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertThat(readHttp1Head(in), startsWith("HTTP/1.1 101 Switching Protocols\r\n"));
+
+            out.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.write(new byte[]{0, 0, 0, 4, 0, 0, 0, 0, 0}); // an empty SETTINGS frame
+            out.flush();
+            assertThat(readStreamOneBody(in), is("http HTTP/2 false"));
+        }
+        MuAssert.assertEventually(() -> server.stats().activeConnections(), is(0L));
+    }
+
+    @Test
+    public void upgradeRequestsCanHaveBodies() throws Exception {
+        startServer(true);
+        try (Socket socket = new Socket(server.uri().getHost(), server.uri().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(("POST /echo HTTP/1.1\r\nHost: localhost\r\nConnection: Upgrade, HTTP2-Settings\r\n" +
+                "Upgrade: h2c\r\nHTTP2-Settings: AAIAAAAA\r\nContent-Length: 11\r\n\r\nHello").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            Thread.sleep(50);
+            out.write(" there".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertThat(readHttp1Head(in), startsWith("HTTP/1.1 101 Switching Protocols\r\n"));
+
+            out.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.write(new byte[]{0, 0, 0, 4, 0, 0, 0, 0, 0});
+            out.flush();
+            assertThat(readStreamOneBody(in), is("Hello there"));
+        }
+    }
+
+    @Test
+    public void requestsWithLargeBodiesThatOfferAnUpgradeStayOnHttp1() throws Exception {
+        startServer(true);
+        byte[] body = new byte[100 * 1024];
+        Arrays.fill(body, (byte) 'a');
+        try (Socket socket = new Socket(server.uri().getHost(), server.uri().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(("POST /echo HTTP/1.1\r\nHost: localhost\r\nConnection: Upgrade, HTTP2-Settings\r\n" +
+                "Upgrade: h2c\r\nHTTP2-Settings: AAIAAAAA\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+            String head = readHttp1Head(in);
+            assertThat(head, startsWith("HTTP/1.1 200 OK\r\n"));
+            assertThat(head.toLowerCase(), containsString("content-length: " + body.length + "\r\n"));
+            byte[] received = new byte[body.length];
+            in.readFully(received);
+            assertThat(received, equalTo(body));
+        }
+    }
+
+    @Test
+    public void upgradesAreIgnoredIfCleartextIsNotEnabled() throws Exception {
+        startServer(false);
+        try (Socket socket = new Socket(server.uri().getHost(), server.uri().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(("GET /hello HTTP/1.1\r\nHost: localhost\r\nConnection: Upgrade, HTTP2-Settings\r\n" +
+                "Upgrade: h2c\r\nHTTP2-Settings: AAIAAAAA\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertThat(readHttp1Head(in), startsWith("HTTP/1.1 200 OK\r\n"));
+        }
+    }
+
+    private static String readHttp1Head(DataInputStream in) throws Exception {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString("US-ASCII").endsWith("\r\n\r\n")) {
+            head.write(in.readUnsignedByte());
+        }
+        return head.toString("US-ASCII");
+    }
+
+    /**
+     * Reads HTTP/2 frames until the end of stream 1, returning the payload of its DATA frames
+     */
+    private static String readStreamOneBody(DataInputStream in) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            int length = (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+            int type = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            int streamId = in.readInt() & 0x7fffffff;
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (type == 0 && streamId == 1) {
+                body.write(payload);
+            }
+            boolean endOfStream = (type == 0 || type == 1) && (flags & 0x1) != 0;
+            if (streamId == 1 && endOfStream) {
+                return body.toString("UTF-8");
+            }
+        }
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
@@ -0,0 +1,112 @@
+package io.muserver;
+
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.muserver.ConcurrencyLimitConfigBuilder.concurrencyLimit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class ConcurrencyLimitTest {
+
+    private MuServer server;
+
+    @Test
+    public void requestsOverTheLimitAreRejectedWithA503AndRetryAfter() throws Exception {
+        CountDownLatch blockedStarted = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        server = ServerUtils.httpsServerForTest()
+            .withConcurrencyLimit(concurrencyLimit().withLimits(1, 10).withInitialLimit(2).withRetryAfter(3, TimeUnit.SECONDS))
+            .addHandler(Method.GET, "/blocked", (request, response, pathParams) -> {
+                blockedStarted.countDown();
+                MuAssert.assertNotTimedOut("Waiting for release", release);
+                response.write("Done");
+            })
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+        assertThat(server.stats().concurrencyLimit(), is(2));
+
+        Thread[] blocked = new Thread[2];
+        for (int i = 0; i < blocked.length; i++) {
+            blocked[i] = new Thread(() -> {
+                try (Response resp = call(request(server.uri().resolve("/blocked")))) {
+                    resp.body().string();
+                } catch (Exception ignored) {
+                }
+            });
+            blocked[i].start();
+        }
+        MuAssert.assertNotTimedOut("Waiting for blocked requests", blockedStarted);
+
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.code(), is(503));
+            assertThat(resp.header("Retry-After"), is("3"));
+        }
+        assertThat(server.stats().rejectedDueToConcurrencyLimit(), is(1L));
+        assertThat(server.stats().rejectedDueToOverload(), is(1L));
+
+        release.countDown();
+        for (Thread thread : blocked) {
+            thread.join(10000);
+        }
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("Hello"));
+        }
+    }
+
+    @Test
+    public void thereIsNoLimitByDefault() {
+        server = ServerUtils.httpsServerForTest().start();
+        assertThat(server.stats().concurrencyLimit(), is(-1));
+    }
+
+    @Test
+    public void theLimitGrowsWhileLatencyIsSteadyAndShrinksWhenItRises() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(concurrencyLimit().withInitialLimit(10).withLimits(5, 20).build());
+        for (int i = 0; i < 1000; i++) {
+            limiter.onSample(TimeUnit.MILLISECONDS.toNanos(10), 10);
+        }
+        assertThat(limiter.limit(), is(20));
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(TimeUnit.MILLISECONDS.toNanos(100), 20);
+        }
+        assertThat(limiter.limit(), lessThan(15));
+
+        ConcurrencyLimiter idle = new ConcurrencyLimiter(concurrencyLimit().withInitialLimit(10).withLimits(5, 20).build());
+        for (int i = 0; i < 1000; i++) {
+            idle.onSample(TimeUnit.MILLISECONDS.toNanos(10), 1);
+        }
+        assertThat("The limit does not grow when it is not being used", idle.limit(), is(10));
+    }
+
+    @Test
+    public void permitsAreOnlyReleasedOnce() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(concurrencyLimit().withInitialLimit(1).withLimits(1, 1).build());
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        assertThat(permit, notNullValue());
+        assertThat(limiter.tryAcquire(), nullValue());
+        permit.release(false);
+        permit.release(false);
+        assertThat(limiter.inFlight(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void theInitialLimitMustBeWithinTheBounds() {
+        concurrencyLimit().withInitialLimit(50).withLimits(1, 10).build();
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
@@ -0,0 +1,92 @@
+package io.muserver;
+
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.RawClient;
+
+import java.io.IOException;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ConnectionLimitTest {
+
+    private MuServer server;
+
+    @Test
+    public void connectionsOverTheMaximumAreClosedImmediately() throws Exception {
+        server = startServer(httpServer().withMaxConnections(1));
+        try (RawClient first = connectAndGet()) {
+            try (RawClient second = RawClient.create(server.uri())) {
+                second.waitForFullResponse();
+                assertThat(second.responseString(), is(""));
+            }
+            assertThat(server.stats().rejectedConnections(), is(1L));
+        }
+        MuAssert.assertEventually(() -> server.stats().activeConnections(), is(0L));
+        connectAndGet().close();
+        assertThat(server.stats().rejectedConnections(), is(1L));
+    }
+
+    @Test
+    public void connectionsPerIpCanBeLimited() throws Exception {
+        server = startServer(httpServer().withMaxConnectionsPerIp(2));
+        try (RawClient first = connectAndGet(); RawClient second = connectAndGet()) {
+            try (RawClient third = RawClient.create(server.uri())) {
+                third.waitForFullResponse();
+                assertThat(third.responseString(), is(""));
+            }
+            assertThat(server.stats().rejectedConnections(), is(1L));
+        }
+    }
+
+    @Test
+    public void theRateOfNewConnectionsCanBeLimited() throws Exception {
+        server = startServer(httpServer().withMaxNewConnectionsPerSecond(2));
+        try (RawClient first = connectAndGet(); RawClient second = connectAndGet()) {
+            try (RawClient third = RawClient.create(server.uri())) {
+                third.waitForFullResponse();
+                assertThat(third.responseString(), is(""));
+            }
+        }
+        assertThat(server.stats().rejectedConnections(), is(1L));
+        Thread.sleep(1100);
+        connectAndGet().close();
+    }
+
+    @Test
+    public void negativeLimitsAreNotAllowed() {
+        MuServerBuilder builder = httpServer();
+        for (Runnable setter : new Runnable[]{() -> builder.withMaxConnections(-1),
+            () -> builder.withMaxConnectionsPerIp(-1), () -> builder.withMaxNewConnectionsPerSecond(-1)}) {
+            try {
+                setter.run();
+                throw new AssertionError("Expected an exception");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private MuServer startServer(MuServerBuilder builder) {
+        return builder
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+    }
+
+    private RawClient connectAndGet() throws IOException {
+        RawClient client = RawClient.create(server.uri());
+        client.sendStartLine("GET", "/")
+            .sendHeader("Host", server.uri().getAuthority())
+            .endHeaders()
+            .flushRequest();
+        MuAssert.assertEventually(client::responseString, containsString("Hello"));
+        return client;
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
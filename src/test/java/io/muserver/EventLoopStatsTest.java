@@ -0,0 +1,93 @@
+package io.muserver;
+
+import io.netty.channel.DefaultEventLoop;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static io.muserver.NonBlockingHandler.nonBlocking;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class EventLoopStatsTest {
+
+    private MuServer server;
+
+    @Test
+    public void eachEventLoopHasStats() throws Exception {
+        server = httpServer()
+            .withNioThreads(3)
+            .withEventLoopProbeInterval(10, TimeUnit.MILLISECONDS)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.body().string(), is("Hello"));
+        }
+        List<EventLoopStats> stats = server.eventLoopStats();
+        assertThat(stats, hasSize(3));
+        MuAssert.assertEventually(() -> stats.get(0).lag().count(), greaterThan(2L));
+        for (EventLoopStats loop : stats) {
+            assertThat(loop.threadName(), not(nullValue()));
+            assertThat(loop.pendingTasks(), greaterThanOrEqualTo(0));
+            assertThat(loop.blockedCount(), is(0L));
+        }
+        MuAssert.assertEventually(() -> stats.stream().mapToDouble(s -> s.taskMillis(EventLoopTask.READ)).sum(), greaterThan(0.0));
+        MuAssert.assertEventually(() -> stats.stream().mapToDouble(s -> s.taskMillis(EventLoopTask.WRITE)).sum(), greaterThan(0.0));
+    }
+
+    @Test
+    public void blockedEventLoopsAreDetected() throws Exception {
+        server = httpServer()
+            .withNioThreads(1)
+            .withBlockedEventLoopDetection(50, TimeUnit.MILLISECONDS)
+            .addHandler(nonBlocking(Routes.route(Method.GET, "/block", (request, response, pathParams) -> {
+                Thread.sleep(400);
+                response.write("Done");
+            })))
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/block")))) {
+            assertThat(resp.body().string(), is("Done"));
+        }
+        EventLoopStats loop = server.eventLoopStats().get(0);
+        MuAssert.assertEventually(loop::blockedCount, is(1L));
+        MuAssert.assertEventually(() -> loop.lag().maxMillis(), greaterThan(200.0));
+        assertThat(loop.taskMillis(EventLoopTask.NON_BLOCKING_HANDLER), greaterThanOrEqualTo(400.0));
+    }
+
+    @Test
+    public void timeOfNestedTasksIsOnlyCountedOnce() throws Exception {
+        DefaultEventLoop loop = new DefaultEventLoop();
+        try {
+            EventLoopMonitor monitor = new EventLoopMonitor(loop);
+            loop.submit(() -> {
+                long readStart = monitor.startNanos();
+                long handlerStart = monitor.startNanos();
+                Thread.sleep(200);
+                monitor.record(EventLoopTask.NON_BLOCKING_HANDLER, handlerStart);
+                monitor.record(EventLoopTask.READ, readStart);
+                return null;
+            }).get();
+            assertThat(monitor.taskMillis(EventLoopTask.NON_BLOCKING_HANDLER), greaterThanOrEqualTo(200.0));
+            assertThat(monitor.taskMillis(EventLoopTask.READ), lessThan(100.0));
+        } finally {
+            loop.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void probeIntervalCannotBeNegative() {
+        httpServer().withEventLoopProbeInterval(-1, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
@@ -68,6 +68,50 @@ public class EventsTest {
         assertEventually(completeStateSnapshot::get, is("true"));
     }
 
+    @Test
+    public void theTimingsOfEachPhaseAreAvailable() throws Exception {
+        CompletableFuture<ResponseInfo> received = new CompletableFuture<>();
+        server = ServerUtils.httpsServerForTest()
+            .addResponseCompleteListener(received::complete)
+            .addHandler(Method.GET, "/blah", (req, resp, pp) -> {
+                Thread.sleep(20);
+                resp.sendChunk("Hey ");
+                Thread.sleep(20);
+                resp.sendChunk("there");
+            })
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/blah")))) {
+            assertThat(resp.body().string(), is("Hey there"));
+            assertThat(resp.header("Server-Timing"), is(nullValue()));
+        }
+        RequestTimings timings = received.get(10, TimeUnit.SECONDS).timings();
+        assertThat(timings.dispatchedNanos(), greaterThanOrEqualTo(0L));
+        assertThat(timings.handlerStartedNanos(), greaterThanOrEqualTo(timings.dispatchedNanos()));
+        assertThat(timings.firstByteWrittenNanos() - timings.handlerStartedNanos(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20)));
+        assertThat(timings.lastByteFlushedNanos() - timings.firstByteWrittenNanos(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20)));
+        assertThat(timings.completeNanos(), greaterThanOrEqualTo(timings.lastByteFlushedNanos()));
+    }
+
+    @Test
+    public void theServerTimingHeaderCanBeAdded() throws Exception {
+        CompletableFuture<ResponseInfo> received = new CompletableFuture<>();
+        server = ServerUtils.httpsServerForTest()
+            .withServerTimingHeader(true)
+            .addResponseCompleteListener(received::complete)
+            .addHandler(Method.GET, "/blah", (req, resp, pp) -> {
+                Thread.sleep(20);
+                resp.write("Hey there");
+            })
+            .start();
+        try (Response resp = call(request(server.uri().resolve("/blah")))) {
+            assertThat(resp.body().string(), is("Hey there"));
+            String serverTiming = resp.header("Server-Timing");
+            assertThat(serverTiming, matchesPattern("queue;dur=\\d+\\.\\d{3}, handler;dur=(\\d+)\\.\\d{3}, total;dur=\\d+\\.\\d{3}"));
+            assertThat(Integer.parseInt(serverTiming.split("handler;dur=")[1].split("\\.")[0]), greaterThanOrEqualTo(20));
+        }
+        assertThat(received.get(10, TimeUnit.SECONDS).timings().lastByteFlushedNanos(), greaterThan(0L));
+    }
+
     @After
     public void stop() {
         MuAssert.stopAndCheck(server);
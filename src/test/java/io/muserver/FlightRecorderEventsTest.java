@@ -0,0 +1,135 @@
+package io.muserver;
+
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import scaffolding.MuAssert;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class FlightRecorderEventsTest {
+
+    private MuServer server;
+
+    @Test
+    public void requestLifecycleEventsAreRecordedAndOnlySlowRequestsHaveFullDetail() throws Exception {
+        Assume.assumeTrue("Flight recorder events are not supported on this JVM", FlightRecorderEvents.isSupported());
+        server = httpServer()
+            .withFlightRecorderEvents(true)
+            .withSlowRequestThreshold(200, TimeUnit.MILLISECONDS)
+            .addHandler(Method.GET, "/fast", (request, response, pathParams) -> response.write("Fast"))
+            .addHandler(Method.GET, "/slow", (request, response, pathParams) -> {
+                Thread.sleep(250);
+                response.write("Slow");
+            })
+            .addHandler(Method.POST, "/echo", (request, response, pathParams) -> response.write(request.readBodyAsString()))
+            .start();
+
+        Recording recording = new Recording();
+        try {
+            try (Response resp = call(request(server.uri().resolve("/fast")))) {
+                assertThat(resp.body().string(), is("Fast"));
+            }
+            try (Response resp = call(request(server.uri().resolve("/slow")))) {
+                assertThat(resp.body().string(), is("Slow"));
+            }
+            try (Response resp = call(request(server.uri().resolve("/echo")).post(RequestBody.create("Hello".getBytes())))) {
+                assertThat(resp.body().string(), is("Hello"));
+            }
+            MuAssert.assertEventually(() -> server.stats().completedRequests(), is(3L));
+        } finally {
+            recording.stop();
+        }
+
+        List<Object> requests = recording.events("io.muserver.Request");
+        assertThat(requests, hasSize(3));
+        assertThat(Recording.value(requests.get(0), "path"), is("/fast"));
+        assertThat(Recording.value(requests.get(0), "status"), is(200));
+        assertThat(Recording.value(requests.get(2), "bytesRead"), is(5L));
+
+        List<Object> slow = recording.events("io.muserver.SlowRequest");
+        assertThat(slow, hasSize(1));
+        assertThat((String) Recording.value(slow.get(0), "uri"), endsWith("/slow"));
+        assertThat((long) Recording.value(slow.get(0), "total"), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(250)));
+
+        assertThat(recording.events("io.muserver.HandlerDispatch"), hasSize(3));
+        assertThat(recording.events("io.muserver.ResponseFlushed"), hasSize(3));
+        List<Object> bodyReads = recording.events("io.muserver.RequestBodyRead");
+        assertThat(bodyReads, not(empty()));
+        assertThat(Recording.value(bodyReads.get(bodyReads.size() - 1), "last"), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void slowRequestThresholdCannotBeNegative() {
+        httpServer().withSlowRequestThreshold(-1, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+
+    /**
+     * A flight recording of the Mu Server events, using reflection so that the tests compile on Java 8
+     */
+    private static class Recording {
+        private final Object recording;
+        private final List<Object> events = new ArrayList<>();
+
+        Recording() throws Exception {
+            recording = Class.forName("jdk.jfr.Recording").getConstructor().newInstance();
+            java.lang.reflect.Method enable = recording.getClass().getMethod("enable", String.class);
+            for (String name : new String[]{"io.muserver.Request", "io.muserver.SlowRequest", "io.muserver.HandlerDispatch",
+                "io.muserver.ResponseFlushed", "io.muserver.RequestBodyRead"}) {
+                enable.invoke(recording, name);
+            }
+            recording.getClass().getMethod("start").invoke(recording);
+        }
+
+        void stop() throws Exception {
+            recording.getClass().getMethod("stop").invoke(recording);
+            Path file = File.createTempFile("mu-server", ".jfr").toPath();
+            try {
+                recording.getClass().getMethod("dump", Path.class).invoke(recording, file);
+                Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+                List<?> all = (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, file);
+                events.addAll(all);
+                events.sort((a, b) -> ((Comparable) value(a, "startTime")).compareTo(value(b, "startTime")));
+            } finally {
+                recording.getClass().getMethod("close").invoke(recording);
+                file.toFile().delete();
+            }
+        }
+
+        List<Object> events(String name) throws Exception {
+            List<Object> matching = new ArrayList<>();
+            for (Object event : events) {
+                Object type = event.getClass().getMethod("getEventType").invoke(event);
+                if (name.equals(type.getClass().getMethod("getName").invoke(type))) {
+                    matching.add(event);
+                }
+            }
+            return matching;
+        }
+
+        static Object value(Object event, String field) {
+            try {
+                return event.getClass().getMethod("getValue", String.class).invoke(event, field);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package io.muserver;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.muserver.NonBlockingHandler.nonBlocking;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class FlushConsolidatorTest {
+
+    private MuServer server;
+
+    @Test
+    public void everyChunkIsFlushedByDefault() throws Exception {
+        server = startServer(ServerUtils.httpsServerForTest());
+        assertThat(callServer(), is(expectedBody()));
+        assertThat(server.stats().flushes(), greaterThanOrEqualTo(100L));
+        assertThat(server.stats().tlsRecordsSent(), greaterThanOrEqualTo(100L));
+    }
+
+    @Test
+    public void responsesAreCompleteWhenFlushesAreConsolidated() throws Exception {
+        server = startServer(ServerUtils.httpsServerForTest().withFlushConsolidation(65536));
+        assertThat(callServer(), is(expectedBody()));
+        MuAssert.assertEventually(() -> server.stats().completedRequests(), is(1L));
+    }
+
+    @Test
+    public void flushesDuringAReadAreDelayedUntilTheReadCompletes() {
+        AtomicInteger flushes = new AtomicInteger();
+        EmbeddedChannel channel = new EmbeddedChannel(new FlushCounter(flushes), new FlushConsolidator(65536), new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                for (int i = 0; i < 10; i++) {
+                    ctx.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+                }
+                assertThat(flushes.get(), is(0));
+            }
+        });
+        channel.writeInbound(Unpooled.EMPTY_BUFFER);
+        assertThat(flushes.get(), is(1));
+        assertThat(channel.outboundMessages().size(), is(10));
+
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+        assertThat("Flushes outside of a read are not delayed", flushes.get(), is(2));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void flushesHappenWhenTheThresholdIsReached() {
+        AtomicInteger flushes = new AtomicInteger();
+        EmbeddedChannel channel = new EmbeddedChannel(new FlushCounter(flushes), new FlushConsolidator(25), new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                for (int i = 0; i < 10; i++) {
+                    ctx.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+                }
+            }
+        });
+        channel.writeInbound(Unpooled.EMPTY_BUFFER);
+        assertThat(flushes.get(), is(4));
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void flushesOfWritesQueuedFromOtherThreadsAreCombined() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        AtomicReference<Channel> serverSide = new AtomicReference<>();
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(1);
+        try {
+            LocalAddress address = new LocalAddress("flush-consolidator-test");
+            new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) {
+                        ch.pipeline().addLast(new FlushCounter(flushes), new FlushConsolidator(65536));
+                        serverSide.set(ch);
+                    }
+                })
+                .bind(address).sync();
+            new Bootstrap().group(group).channel(LocalChannel.class)
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect(address).sync();
+            MuAssert.assertEventually(serverSide::get, notNullValue());
+            Channel channel = serverSide.get();
+
+            // hold up the event loop so that the writes from this thread are queued up together
+            CountDownLatch loopBlocked = new CountDownLatch(1);
+            channel.eventLoop().execute(() -> MuAssert.assertNotTimedOut("loop blocked", loopBlocked));
+            for (int i = 0; i < 10; i++) {
+                channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+            }
+            loopBlocked.countDown();
+            MuAssert.assertEventually(flushes::get, is(1));
+
+            channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10])).sync();
+            assertThat("Flushes are not delayed when nothing else is queued", flushes.get(), is(2));
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeThresholdsAreNotAllowed() {
+        MuServerBuilder.httpServer().withFlushConsolidation(-1);
+    }
+
+    private MuServer startServer(MuServerBuilder builder) {
+        return builder
+            .addHandler(nonBlocking(Routes.route(Method.GET, "/", (request, response, pathParams) -> {
+                for (int i = 0; i < 100; i++) {
+                    response.sendChunk("chunk" + i + " ");
+                }
+            })))
+            .start();
+    }
+
+    private String callServer() throws Exception {
+        try (Response resp = call(request(server.uri()))) {
+            return resp.body().string();
+        }
+    }
+
+    private static String expectedBody() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("chunk").append(i).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static class FlushCounter extends ChannelOutboundHandlerAdapter {
+        private final AtomicInteger flushes;
+        private FlushCounter(AtomicInteger flushes) {
+            this.flushes = flushes;
+        }
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes.incrementAndGet();
+            super.flush(ctx);
+        }
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
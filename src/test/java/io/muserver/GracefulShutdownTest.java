@@ -0,0 +1,115 @@
+package io.muserver;
+
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.RawClient;
+import scaffolding.ServerUtils;
+
+import java.util.concurrent.*;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class GracefulShutdownTest {
+
+    private MuServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Test
+    public void http1RequestsInProgressCompleteWithConnectionCloseAndIdleConnectionsAreClosed() throws Exception {
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = httpServer()
+            .addHandler(Method.GET, "/slow", (request, response, pathParams) -> {
+                requestStarted.countDown();
+                MuAssert.assertNotTimedOut("Waiting for release", release);
+                response.write("Slow");
+            })
+            .addHandler(Method.GET, "/fast", (request, response, pathParams) -> response.write("Fast"))
+            .start();
+
+        try (RawClient idleClient = RawClient.create(server.uri());
+             RawClient slowClient = RawClient.create(server.uri())) {
+            idleClient.sendStartLine("GET", "/fast").sendHeader("Host", server.uri().getAuthority()).endHeaders().flushRequest();
+            MuAssert.assertEventually(idleClient::responseString, containsString("Fast"));
+
+            slowClient.sendStartLine("GET", "/slow").sendHeader("Host", server.uri().getAuthority()).endHeaders().flushRequest();
+            MuAssert.assertNotTimedOut("Waiting for request to start", requestStarted);
+
+            Future<?> stopped = executor.submit(() -> server.stop(10, TimeUnit.SECONDS));
+            MuAssert.assertEventually(idleClient::isConnected, is(false));
+            assertThat(stopped.isDone(), is(false));
+
+            release.countDown();
+            slowClient.waitForFullResponse();
+            stopped.get(10, TimeUnit.SECONDS);
+            String resp = slowClient.responseString();
+            assertThat(resp, startsWith("HTTP/1.1 200 OK"));
+            assertThat(resp.toLowerCase(), containsString("connection: close"));
+            assertThat(resp, endsWith("Slow"));
+        }
+        assertThat(server.stats().completedRequests(), is(2L));
+    }
+
+    @Test
+    public void http2RequestsInProgressComplete() throws Exception {
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/slow", (request, response, pathParams) -> {
+                requestStarted.countDown();
+                MuAssert.assertNotTimedOut("Waiting for release", release);
+                response.write("Slow on " + request.connection().protocol());
+            })
+            .start();
+
+        Future<String> slowResponse = executor.submit(() -> {
+            try (Response resp = call(request(server.uri().resolve("/slow")))) {
+                return resp.code() + " " + resp.body().string();
+            }
+        });
+        MuAssert.assertNotTimedOut("Waiting for request to start", requestStarted);
+        Future<?> stopped = executor.submit(() -> server.stop(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertThat(stopped.isDone(), is(false));
+
+        release.countDown();
+        assertThat(slowResponse.get(10, TimeUnit.SECONDS), is("200 Slow on HTTP/2"));
+        stopped.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void connectionsAreClosedWhenTheTimeoutIsReached() throws Exception {
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server = httpServer()
+            .withGracefulShutdownTimeout(200, TimeUnit.MILLISECONDS)
+            .addHandler(Method.GET, "/slow", (request, response, pathParams) -> {
+                requestStarted.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            })
+            .start();
+
+        try (RawClient client = RawClient.create(server.uri())) {
+            client.sendStartLine("GET", "/slow").sendHeader("Host", server.uri().getAuthority()).endHeaders().flushRequest();
+            MuAssert.assertNotTimedOut("Waiting for request to start", requestStarted);
+            long start = System.currentTimeMillis();
+            server.stop();
+            assertThat(System.currentTimeMillis() - start, allOf(greaterThanOrEqualTo(190L), lessThan(5000L)));
+            MuAssert.assertEventually(client::isConnected, is(false));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @After
+    public void stop() {
+        executor.shutdownNow();
+        server.stop();
+    }
+}
@@ -0,0 +1,217 @@
+package io.muserver;
+
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static io.muserver.MuServerBuilder.httpsServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.isHttp2;
+import static scaffolding.ClientUtils.request;
+
+public class Http2AbuseTest {
+
+    private static final int ENHANCE_YOUR_CALM = 0xb;
+    private MuServer server;
+
+    private void startServer(Http2ConfigBuilder config) {
+        server = httpServer()
+            .withHttp2Config(config.withCleartext(true))
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+    }
+
+    @Test
+    public void rapidResetsCloseTheConnection() throws Exception {
+        startServer(Http2ConfigBuilder.http2Enabled().withMaxResetsPerSecond(10));
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            for (int streamId = 1; streamId < 100; streamId += 2) {
+                out.write(getRequestHeaders(streamId));
+                out.write(frame(3, 0, streamId, new byte[]{0, 0, 0, 8})); // RST_STREAM with CANCEL
+            }
+            out.flush();
+            assertThat(readGoAwayErrorCode(socket), is(ENHANCE_YOUR_CALM));
+        }
+        assertThat(server.stats().http2ConnectionsClosedForAbuse(), is(1L));
+    }
+
+    @Test
+    public void pingFloodsCloseTheConnection() throws Exception {
+        startServer(Http2ConfigBuilder.http2Enabled().withMaxControlFramesPerSecond(20));
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            for (int i = 0; i < 100; i++) {
+                out.write(frame(6, 0, 0, new byte[8]));
+            }
+            out.flush();
+            assertThat(readGoAwayErrorCode(socket), is(ENHANCE_YOUR_CALM));
+        }
+        assertThat(server.stats().http2ConnectionsClosedForAbuse(), is(1L));
+    }
+
+    @Test
+    public void emptyDataFloodsCloseTheConnection() throws Exception {
+        startServer(Http2ConfigBuilder.http2Enabled().withMaxEmptyDataFramesPerSecond(10));
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            byte[] headers = getRequestHeaders(1);
+            headers[4] = 0x4; // END_HEADERS only, so that the stream stays open for data
+            out.write(headers);
+            for (int i = 0; i < 100; i++) {
+                out.write(frame(0, 0, 1, new byte[0]));
+            }
+            out.flush();
+            assertThat(readGoAwayErrorCode(socket), is(ENHANCE_YOUR_CALM));
+        }
+        assertThat(server.stats().http2ConnectionsClosedForAbuse(), is(1L));
+    }
+
+    @Test
+    public void tooManyNewStreamsCloseTheConnection() throws Exception {
+        startServer(Http2ConfigBuilder.http2Enabled().withMaxStreamsPerSecond(5).withMaxResetsPerSecond(0));
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            for (int streamId = 1; streamId < 40; streamId += 2) {
+                out.write(getRequestHeaders(streamId));
+            }
+            out.flush();
+            assertThat(readGoAwayErrorCode(socket), is(ENHANCE_YOUR_CALM));
+        }
+        assertThat(server.stats().http2ConnectionsClosedForAbuse(), is(1L));
+    }
+
+    @Test
+    public void burstsOfRequestsAreNotTreatedAsAbuseByDefault() throws Exception {
+        startServer(Http2ConfigBuilder.http2Enabled());
+        int requests = 5000;
+        try (Socket socket = connect()) {
+            ByteArrayOutputStream burst = new ByteArrayOutputStream();
+            // a connection WINDOW_UPDATE so that the server can send all the responses without waiting for this client
+            burst.write(frame(8, 0, 0, ByteBuffer.allocate(4).putInt(64 * 1024 * 1024).array()));
+            for (int i = 0; i < requests; i++) {
+                burst.write(getRequestHeaders(i * 2 + 1));
+            }
+            Future<Integer> completed = Executors.newSingleThreadExecutor().submit(() -> countCompletedStreams(socket, requests));
+            // all the requests are sent at once, which is far more than 10000 per second
+            OutputStream out = socket.getOutputStream();
+            burst.writeTo(out);
+            out.flush();
+            assertThat(completed.get(30, TimeUnit.SECONDS), is(requests));
+        }
+        assertThat(server.stats().http2ConnectionsClosedForAbuse(), is(0L));
+    }
+
+    @Test
+    public void normalClientsAreNotAffectedByTheDefaultBudgets() throws Exception {
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled())
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+        for (int i = 0; i < 200; i++) {
+            try (Response resp = call(request(server.uri()))) {
+                assertThat(isHttp2(resp), is(true));
+                assertThat(resp.body().string(), is("Hello"));
+            }
+        }
+        assertThat(server.stats().http2ConnectionsClosedForAbuse(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void budgetsCannotBeNegative() {
+        Http2ConfigBuilder.http2Enabled().withMaxResetsPerSecond(-1);
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(server.uri().getHost(), server.uri().getPort());
+        socket.setSoTimeout(10000);
+        OutputStream out = socket.getOutputStream();
+        out.write("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.write(frame(4, 0, 0, new byte[0])); // an empty SETTINGS frame
+        out.flush();
+        return socket;
+    }
+
+    /**
+     * A HEADERS frame for <code>GET http://localhost/</code> using the HPACK static table, with END_STREAM set
+     */
+    private static byte[] getRequestHeaders(int streamId) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        block.write(0x82); // :method GET
+        block.write(0x86); // :scheme http
+        block.write(0x84); // :path /
+        block.write(0x01); // :authority, literal value without indexing
+        block.write(9);
+        byte[] authority = "localhost".getBytes(StandardCharsets.US_ASCII);
+        block.write(authority, 0, authority.length);
+        return frame(1, 0x5, streamId, block.toByteArray());
+    }
+
+    private static byte[] frame(int type, int flags, int streamId, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(9 + payload.length);
+        frame.put((byte) (payload.length >>> 16)).putShort((short) payload.length);
+        frame.put((byte) type).put((byte) flags).putInt(streamId).put(payload);
+        return frame.array();
+    }
+
+    /**
+     * Reads HTTP/2 frames until the given number of streams have ended or a GOAWAY is received
+     * @return The number of streams that ended
+     */
+    private static int countCompletedStreams(Socket socket, int expected) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        int completed = 0;
+        while (completed < expected) {
+            int length = (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+            int type = in.readUnsignedByte();
+            int flags = in.readUnsignedByte();
+            in.readInt();
+            in.readFully(new byte[length]);
+            if (type == 7) {
+                break;
+            }
+            if ((type == 0 || type == 1) && (flags & 0x1) != 0) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Reads HTTP/2 frames until a GOAWAY is received, returning its error code
+     */
+    private static int readGoAwayErrorCode(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        while (true) {
+            int length = (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+            int type = in.readUnsignedByte();
+            in.readUnsignedByte();
+            in.readInt();
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (type == 7) {
+                return ByteBuffer.wrap(payload, 4, 4).getInt();
+            }
+        }
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
@@ -0,0 +1,96 @@
+package io.muserver;
+
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+
+import static io.muserver.MuServerBuilder.httpsServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.isHttp2;
+import static scaffolding.ClientUtils.request;
+
+public class Http2ConfigTest {
+
+    private MuServer server;
+
+    @Test
+    public void largeUploadsWorkWithCustomSettings() throws Exception {
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled()
+                .withInitialWindowSize(1024 * 1024)
+                .withConnectionWindowSize(4 * 1024 * 1024)
+                .withMaxFrameSize(65536)
+                .withMaxConcurrentStreams(10)
+                .withHeaderTableSize(8192))
+            .withMaxRequestSize(Long.MAX_VALUE)
+            .addHandler(Method.POST, "/", Http2ConfigTest::writeBodySize)
+            .start();
+        byte[] body = new byte[5 * 1024 * 1024];
+        new Random().nextBytes(body);
+        for (int i = 0; i < 3; i++) {
+            try (Response resp = call(request(server.uri()).post(RequestBody.create(body)))) {
+                assertThat(isHttp2(resp), is(true));
+                assertThat(resp.body().string(), is(String.valueOf(body.length)));
+            }
+        }
+    }
+
+    @Test
+    public void windowsGrowWhenAutoTuningIsEnabled() throws Exception {
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled()
+                .withWindowAutoTuning(true)
+                .withMaxWindowSize(2 * 1024 * 1024))
+            .withMaxRequestSize(Long.MAX_VALUE)
+            .addHandler(Method.POST, "/", Http2ConfigTest::writeBodySize)
+            .start();
+        byte[] body = new byte[4 * 1024 * 1024];
+        new Random().nextBytes(body);
+        for (int i = 0; i < 3; i++) {
+            try (Response resp = call(request(server.uri()).post(RequestBody.create(body)))) {
+                assertThat(isHttp2(resp), is(true));
+                assertThat(resp.body().string(), is(String.valueOf(body.length)));
+            }
+        }
+        Http2Connection connection = (Http2Connection) server.activeConnections().iterator().next();
+        Http2WindowTuner tuner = connection.windowTuner();
+        MuAssert.assertEventually(tuner::streamWindow, greaterThan(65535));
+        assertThat(tuner.streamWindow(), lessThanOrEqualTo(2 * 1024 * 1024));
+        assertThat(tuner.connectionWindow(), greaterThanOrEqualTo(tuner.streamWindow()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowsCannotBeSmallerThanTheDefault() {
+        Http2ConfigBuilder.http2Enabled().withInitialWindowSize(1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxFrameSizeMustBeValid() {
+        Http2ConfigBuilder.http2Enabled().withMaxFrameSize(16 * 1024 * 1024);
+    }
+
+    private static void writeBodySize(MuRequest request, MuResponse response, Map<String, String> pathParams) throws Exception {
+        long size = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = request.inputStream().get()) {
+            int read;
+            while ((read = in.read(buffer)) > -1) {
+                size += read;
+            }
+        }
+        response.write(String.valueOf(size));
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
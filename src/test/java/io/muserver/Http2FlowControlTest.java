@@ -0,0 +1,159 @@
+package io.muserver;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.muserver.MuServerBuilder.httpsServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class Http2FlowControlTest {
+
+    private MuServer server;
+    private final ExecutorService clientExecutor = Executors.newCachedThreadPool();
+
+    @Test
+    public void clientsCannotSendMoreThanTheWindowAheadOfTheHandler() throws Exception {
+        CountDownLatch firstChunkRead = new CountDownLatch(1);
+        CountDownLatch carryOn = new CountDownLatch(1);
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled())
+            .withMaxRequestSize(Long.MAX_VALUE)
+            .addHandler(Method.POST, "/", (request, response, pathParams) -> {
+                try (InputStream in = request.inputStream().get()) {
+                    byte[] buffer = new byte[8192];
+                    long total = in.read(buffer);
+                    firstChunkRead.countDown();
+                    MuAssert.assertNotTimedOut("carry on", carryOn);
+                    int read;
+                    while ((read = in.read(buffer)) > -1) {
+                        total += read;
+                    }
+                    response.write(String.valueOf(total));
+                }
+            })
+            .start();
+
+        AtomicLong sent = new AtomicLong();
+        long bodySize = 8 * 1024 * 1024;
+        Future<String> result = clientExecutor.submit(() -> {
+            try (Response resp = call(request(server.uri()).post(new CountingBody(bodySize, sent)))) {
+                return resp.body().string();
+            }
+        });
+        MuAssert.assertNotTimedOut("first chunk", firstChunkRead);
+        Thread.sleep(200);
+        // the default window is 64KB and the client may buffer a little on top of that
+        assertThat(sent.get(), lessThan(200 * 1024L));
+        carryOn.countDown();
+        assertThat(result.get(30, TimeUnit.SECONDS), is(String.valueOf(bodySize)));
+    }
+
+    @Test
+    public void manyConcurrentUploadsOnOneConnectionAreAllReceived() throws Exception {
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled())
+            .withMaxRequestSize(Long.MAX_VALUE)
+            .addHandler(Method.POST, "/", (request, response, pathParams) -> response.write(String.valueOf(request.readBodyAsString().length())))
+            .start();
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            long size = 100000 + i;
+            results.add(clientExecutor.submit(() -> {
+                try (Response resp = call(request(server.uri()).post(new CountingBody(size, new AtomicLong())))) {
+                    return resp.body().string();
+                }
+            }));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).get(30, TimeUnit.SECONDS), is(String.valueOf(100000 + i)));
+        }
+        assertThat(server.activeConnections(), hasSize(1));
+        MuAssert.assertEventually(() -> server.activeConnections().iterator().next().activeRequests(), empty());
+    }
+
+    @Test
+    public void activeRequestsCanBeReadFromOtherThreads() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch carryOn = new CountDownLatch(1);
+        server = httpsServer()
+            .withHttp2Config(Http2ConfigBuilder.http2Enabled())
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                started.countDown();
+                MuAssert.assertNotTimedOut("carry on", carryOn);
+                response.write("done");
+            })
+            .start();
+        Future<String> result = clientExecutor.submit(() -> {
+            try (Response resp = call(request(server.uri()))) {
+                return resp.body().string();
+            }
+        });
+        MuAssert.assertNotTimedOut("started", started);
+        HttpConnection connection = server.activeConnections().iterator().next();
+        assertThat(connection.protocol(), is("HTTP/2"));
+        assertThat(connection.activeRequests(), hasSize(1));
+        carryOn.countDown();
+        assertThat(result.get(30, TimeUnit.SECONDS), is("done"));
+        MuAssert.assertEventually(connection::activeRequests, empty());
+    }
+
+    private static class CountingBody extends RequestBody {
+        private final long size;
+        private final AtomicLong sent;
+
+        private CountingBody(long size, AtomicLong sent) {
+            this.size = size;
+            this.sent = sent;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MediaType.get("text/plain");
+        }
+
+        @Override
+        public long contentLength() {
+            return size;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            byte[] chunk = new byte[4096];
+            Arrays.fill(chunk, (byte) 'a');
+            long remaining = size;
+            while (remaining > 0) {
+                int toWrite = (int) Math.min(chunk.length, remaining);
+                sink.write(chunk, 0, toWrite);
+                sink.flush();
+                remaining -= toWrite;
+                sent.addAndGet(toWrite);
+            }
+        }
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+        clientExecutor.shutdownNow();
+    }
+}
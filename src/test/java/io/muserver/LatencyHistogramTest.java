@@ -0,0 +1,79 @@
+package io.muserver;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void everyValueIsInABucketThatIsWithinAbout3PercentOfIt() {
+        for (long micros = 0; micros < 10_000_000; micros = micros < 100 ? micros + 1 : micros * 11 / 10) {
+            int bucket = LatencyHistogram.bucketFor(micros);
+            long highest = LatencyHistogram.highestValueIn(bucket);
+            assertThat(highest, greaterThanOrEqualTo(micros));
+            assertThat((double) highest, lessThanOrEqualTo(micros * 1.032 + 1));
+            assertThat(LatencyHistogram.bucketFor(highest), is(bucket));
+            assertThat(LatencyHistogram.bucketFor(highest + 1), is(bucket + 1));
+        }
+    }
+
+    @Test
+    public void percentilesAreApproximatelyAccurate() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.count(), is(1000L));
+        assertThat(snapshot.meanMillis(), closeTo(500.5, 0.01));
+        assertThat(snapshot.maxMillis(), is(1000.0));
+        assertThat(snapshot.percentileMillis(50), closeTo(500, 500 * 0.04));
+        assertThat(snapshot.percentileMillis(99), closeTo(990, 990 * 0.04));
+        assertThat(snapshot.percentileMillis(100), is(1000.0));
+        assertThat(snapshot.percentileMillis(0), closeTo(1, 0.04));
+    }
+
+    @Test
+    public void snapshotsOfEmptyHistogramsAreZero() {
+        LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+        assertThat(snapshot.count(), is(0L));
+        assertThat(snapshot.meanMillis(), is(0.0));
+        assertThat(snapshot.percentileMillis(99), is(0.0));
+    }
+
+    @Test
+    public void hugeValuesGoInTheLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertThat(histogram.snapshot().percentileMillis(50), is(TimeUnit.NANOSECONDS.toMicros(Long.MAX_VALUE) / 1000.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentilesOver100AreNotAllowed() {
+        new LatencyHistogram().snapshot().percentileMillis(100.1);
+    }
+
+    @Test
+    public void ratesAreExponentiallyWeightedAverages() {
+        AtomicLong clock = new AtomicLong();
+        RequestRate rate = new RequestRate(clock::get);
+        for (int i = 0; i < 50; i++) {
+            rate.mark();
+        }
+        assertThat(rate.oneMinuteRate(), is(0.0));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5) + 1);
+        assertThat(rate.oneMinuteRate(), is(10.0));
+        assertThat(rate.fifteenMinuteRate(), is(10.0));
+
+        // after a minute of no requests the one minute rate drops the most
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertThat(rate.oneMinuteRate(), closeTo(10 * Math.exp(-1), 0.01));
+        assertThat(rate.fiveMinuteRate(), closeTo(10 * Math.exp(-1 / 5.0), 0.01));
+        assertThat(rate.fifteenMinuteRate(), closeTo(10 * Math.exp(-1 / 15.0), 0.01));
+    }
+}
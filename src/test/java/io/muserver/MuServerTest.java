@@ -224,7 +224,7 @@ public class MuServerTest {
             muServer().start();
             Assert.fail("No exception thrown");
         } catch (IllegalArgumentException e) {
-            assertThat(e.getMessage(), is(equalTo("No ports were configured. Please call MuServerBuilder.withHttpPort(int) or MuServerBuilder.withHttpsPort(int)")));
+            assertThat(e.getMessage(), is(equalTo("No ports were configured. Please call MuServerBuilder.withHttpPort(int), MuServerBuilder.withHttpsPort(int) or MuServerBuilder.withUnixSocket(Path)")));
         }
     }
 
@@ -607,7 +607,7 @@ public class MuServerTest {
                 ThreadMXBean threads = ManagementFactory.getThreadMXBean();
                 final List<String> collect = Stream.of(threads.dumpAllThreads(true, true))
                     .map(ThreadInfo::getThreadName)
-                    .filter(n -> n.contains("nioEventLoopGroup-" + lastPoolId + "-"))
+                    .filter(n -> n.contains("EventLoopGroup-" + lastPoolId + "-"))
                     .collect(Collectors.toList());
                 response.sendChunk("" + collect.size());
             })
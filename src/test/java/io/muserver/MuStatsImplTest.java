@@ -7,10 +7,13 @@ import scaffolding.MuAssert;
 import scaffolding.ServerUtils;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.is;
-import static org.hamcrest.Matchers.startsWith;
+import static org.hamcrest.Matchers.*;
 import static scaffolding.ClientUtils.call;
 import static scaffolding.ClientUtils.request;
 
@@ -41,6 +44,114 @@ public class MuStatsImplTest {
 
     }
 
+    @Test
+    public void allocatorStatsAreAvailable() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .withAllocatorConfig(AllocatorConfigBuilder.allocatorConfig()
+                .withPreferDirect(true)
+                .withArenas(1, 2)
+                .withChunkSize(1024 * 1024)
+                .withReceiveBufferSize(512, 2048, 16384))
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                try (PrintWriter writer = response.writer()) {
+                    for (int i = 0; i < 1000; i++) {
+                        writer.println("Line " + i);
+                    }
+                }
+            })
+            .start();
+
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), containsString("Line 999"));
+        }
+        AllocatorStats stats = server.stats().allocatorStats();
+        assertThat(stats.pooled(), is(true));
+        assertThat(stats.chunkSize(), is(1024 * 1024));
+        assertThat(stats.directArenaActiveBytes(), hasSize(2));
+        assertThat(stats.heapArenaActiveBytes(), hasSize(1));
+        assertThat(stats.usedDirectMemory(), greaterThan(0L));
+        assertThat(stats.pinnedDirectMemory(), lessThanOrEqualTo(stats.usedDirectMemory()));
+    }
+
+    @Test
+    public void unpooledAllocatorsCanBeUsed() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .withAllocatorConfig(AllocatorConfigBuilder.allocatorConfig().withPooling(false))
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.body().string(), is("Hello"));
+        }
+        assertThat(server.stats().allocatorStats().pooled(), is(false));
+        assertThat(server.stats().allocatorStats().directArenaActiveBytes(), is(empty()));
+    }
+
+    @Test
+    public void activeRequestsCanBeCountedWithoutBeingTracked() throws IOException {
+        server = ServerUtils.httpsServerForTest()
+            .withActiveRequestTracking(false)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                MuStats stats = request.server().stats();
+                response.write(stats.activeRequests().size() + " " + stats.activeRequestCount() + " " + request.connection().activeRequests().size());
+            })
+            .start();
+
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.body().string(), is("0 1 1"));
+        }
+        MuAssert.assertEventually(() -> server.stats().completedRequests(), is(1L));
+        assertThat(server.stats().activeRequestCount(), is(0L));
+    }
+
+    @Test
+    public void requestsRejectedByTheExecutorAreOnlyEndedOnceWithoutTracking() throws IOException {
+        ExecutorService rejectingExecutor = Executors.newSingleThreadExecutor();
+        rejectingExecutor.shutdown();
+        server = ServerUtils.httpsServerForTest()
+            .withActiveRequestTracking(false)
+            .withHandlerExecutor(rejectingExecutor)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+
+        for (int i = 0; i < 3; i++) {
+            try (Response resp = call(request(server.uri()))) {
+                assertThat(resp.code(), is(503));
+            }
+        }
+        MuAssert.assertEventually(() -> server.stats().completedRequests(), is(3L));
+        assertThat(server.stats().activeRequestCount(), is(0L));
+    }
+
+    @Test
+    public void requestLatencyIsRecordedByProtocolAndStatusClass() throws IOException {
+        AtomicReference<String> protocol = new AtomicReference<>();
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/slow", (request, response, pathParams) -> {
+                protocol.set(request.connection().protocol());
+                Thread.sleep(50);
+                response.write("Slow");
+            })
+            .start();
+        for (int i = 0; i < 3; i++) {
+            try (Response resp = call(request(server.uri().resolve("/slow")))) {
+                assertThat(resp.code(), is(200));
+            }
+        }
+        try (Response resp = call(request(server.uri().resolve("/missing")))) {
+            assertThat(resp.code(), is(404));
+        }
+        MuAssert.assertEventually(() -> server.stats().requestLatency().count(), is(4L));
+
+        LatencySnapshot ok = server.stats().requestLatency(protocol.get(), 2);
+        assertThat(ok.count(), is(3L));
+        assertThat(ok.percentileMillis(50), greaterThanOrEqualTo(49.0));
+        assertThat(ok.meanMillis(), greaterThanOrEqualTo(49.0));
+        assertThat(ok.maxMillis(), greaterThanOrEqualTo(ok.percentileMillis(99)));
+        assertThat(server.stats().requestLatency(protocol.get(), 4).count(), is(1L));
+        assertThat(server.stats().requestLatency(protocol.get(), 5).count(), is(0L));
+        assertThat(server.stats().requestLatency().percentileMillis(0), lessThan(49.0));
+    }
 
     @After
     public void destroy() {
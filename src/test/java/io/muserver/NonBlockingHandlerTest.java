@@ -0,0 +1,115 @@
+package io.muserver;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static io.muserver.NonBlockingHandler.nonBlocking;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class NonBlockingHandlerTest {
+
+    private MuServer server;
+    private final ConcurrentLinkedQueue<String> threads = new ConcurrentLinkedQueue<>();
+
+    @Test
+    public void nonBlockingHandlersRunOnTheEventLoopAndOtherHandlersOnTheExecutor() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(nonBlocking((request, response) -> {
+                threads.add(Thread.currentThread().getName());
+                return false;
+            }))
+            .addHandler(nonBlocking(Routes.route(Method.GET, "/health", (request, response, pathParams) -> response.write("OK"))))
+            .addHandler(Method.GET, "/blocking", (request, response, pathParams) -> {
+                threads.add(Thread.currentThread().getName());
+                response.write("Blocking");
+            })
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/health")))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("OK"));
+        }
+        assertThat(threads.poll(), containsString("EventLoopGroup"));
+
+        try (Response resp = call(request(server.uri().resolve("/blocking")))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("Blocking"));
+        }
+        assertThat(threads.poll(), containsString("EventLoopGroup"));
+        assertThat(threads.poll(), startsWith("muhandler"));
+
+        try (Response resp = call(request(server.uri().resolve("/missing")))) {
+            assertThat(resp.code(), is(404));
+        }
+    }
+
+    @Test
+    public void nonBlockingHandlersCanStreamAndReadBodiesAsynchronously() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(nonBlocking(Routes.route(Method.GET, "/chunks", (request, response, pathParams) -> {
+                response.sendChunk("Hello ");
+                response.sendChunk("world");
+            })))
+            .addHandler(nonBlocking(Routes.route(Method.POST, "/echo", (request, response, pathParams) -> {
+                AsyncHandle handle = request.handleAsync();
+                handle.setReadListener(new RequestBodyListener() {
+                    @Override
+                    public void onDataReceived(ByteBuffer buffer, DoneCallback doneCallback) {
+                        handle.write(buffer, doneCallback);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        handle.complete();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        handle.complete(t);
+                    }
+                });
+            })))
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/chunks")))) {
+            assertThat(resp.body().string(), is("Hello world"));
+        }
+        try (Response resp = call(request(server.uri().resolve("/echo"))
+            .post(RequestBody.create("Echo me", MediaType.get("text/plain"))))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("Echo me"));
+        }
+    }
+
+    @Test
+    public void blockingReadsOfTheRequestBodyAreRejected() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(nonBlocking(Routes.route(Method.POST, "/", (request, response, pathParams) -> {
+                response.write(request.readBodyAsString());
+            })))
+            .start();
+
+        try (Response resp = call(request(server.uri())
+            .post(RequestBody.create("Hello".getBytes(StandardCharsets.UTF_8))))) {
+            assertThat(resp.code(), is(500));
+        }
+        MuAssert.assertEventually(() -> server.stats().activeRequests(), empty());
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
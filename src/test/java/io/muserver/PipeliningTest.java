@@ -0,0 +1,138 @@
+package io.muserver;
+
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.RawClient;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class PipeliningTest {
+
+    private MuServer server;
+
+    @Test
+    public void pipelinedRequestsAreHandledConcurrentlyAndRespondedToInOrder() throws Exception {
+        CountDownLatch lastRequestStarted = new CountDownLatch(1);
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        server = httpServer()
+            .withMaxPipelinedRequests(4)
+            .addHandler(Method.GET, "/{num}", (request, response, pathParams) -> {
+                int num = Integer.parseInt(pathParams.get("num"));
+                if (num == 4) {
+                    lastRequestStarted.countDown();
+                } else if (num == 1) {
+                    MuAssert.assertNotTimedOut("Waiting for last request", lastRequestStarted);
+                    maxConcurrent.set(server.activeConnections().iterator().next().activeRequests().size());
+                }
+                response.write("Response " + num);
+            })
+            .start();
+
+        try (RawClient client = RawClient.create(server.uri())) {
+            for (int i = 1; i <= 4; i++) {
+                client.sendStartLine("GET", "/" + i)
+                    .sendHeader("Host", server.uri().getAuthority());
+                if (i == 4) {
+                    client.sendHeader("Connection", "close");
+                }
+                client.endHeaders();
+            }
+            client.flushRequest();
+            client.waitForFullResponse();
+            String resp = client.responseString();
+            assertThat(resp, containsString("Response 1"));
+            assertThat(resp.indexOf("Response 1"), lessThan(resp.indexOf("Response 2")));
+            assertThat(resp.indexOf("Response 2"), lessThan(resp.indexOf("Response 3")));
+            assertThat(resp.indexOf("Response 3"), lessThan(resp.indexOf("Response 4")));
+        }
+        assertThat(maxConcurrent.get(), is(4));
+        MuAssert.assertEventually(() -> server.stats().completedRequests(), is(4L));
+    }
+
+    @Test
+    public void pipelinedRequestsWithBodiesAndInvalidRequestsAreRespondedToInOrder() throws Exception {
+        server = httpServer()
+            .withMaxPipelinedRequests(8)
+            .addHandler(Method.POST, "/echo", (request, response, pathParams) -> {
+                response.write("Echo " + request.readBodyAsString());
+            })
+            .addHandler(Method.GET, "/slow", (request, response, pathParams) -> {
+                Thread.sleep(200);
+                response.write("Slow");
+            })
+            .start();
+
+        try (RawClient client = RawClient.create(server.uri())) {
+            client.sendStartLine("GET", "/slow")
+                .sendHeader("Host", server.uri().getAuthority())
+                .endHeaders()
+                .sendStartLine("POST", "/echo")
+                .sendHeader("Host", server.uri().getAuthority())
+                .sendHeader("Content-Length", "5")
+                .endHeaders()
+                .sendUTF8("Hello")
+                .sendStartLine("GET", "/<invalid>/")
+                .sendHeader("Host", server.uri().getAuthority())
+                .endHeaders()
+                .sendStartLine("GET", "/missing")
+                .sendHeader("Host", server.uri().getAuthority())
+                .sendHeader("Connection", "close")
+                .endHeaders()
+                .flushRequest();
+            client.waitForFullResponse();
+            String resp = client.responseString();
+            int slow = resp.indexOf("Slow");
+            int echo = resp.indexOf("Echo Hello");
+            int invalid = resp.indexOf("400 Bad Request");
+            int missing = resp.indexOf("404 Not Found");
+            assertThat(resp, slow, greaterThan(-1));
+            assertThat(resp, echo, greaterThan(slow));
+            assertThat(resp, invalid, greaterThan(echo));
+            assertThat(resp, missing, greaterThan(invalid));
+        }
+    }
+
+    @Test
+    public void byDefaultPipelinedRequestsAreHandledOneAtATime() throws Exception {
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        server = httpServer()
+            .addHandler(Method.GET, "/{num}", (request, response, pathParams) -> {
+                maxConcurrent.set(Math.max(maxConcurrent.get(), server.activeConnections().iterator().next().activeRequests().size()));
+                response.write("Response " + pathParams.get("num"));
+            })
+            .start();
+
+        try (RawClient client = RawClient.create(server.uri())) {
+            for (int i = 1; i <= 3; i++) {
+                client.sendStartLine("GET", "/" + i)
+                    .sendHeader("Host", server.uri().getAuthority());
+                if (i == 3) {
+                    client.sendHeader("Connection", "close");
+                }
+                client.endHeaders();
+            }
+            client.flushRequest();
+            client.waitForFullResponse();
+            String resp = client.responseString();
+            assertThat(resp.indexOf("Response 1"), lessThan(resp.indexOf("Response 2")));
+            assertThat(resp.indexOf("Response 2"), lessThan(resp.indexOf("Response 3")));
+        }
+        assertThat(maxConcurrent.get(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxPipelinedRequestsMustBePositive() {
+        httpServer().withMaxPipelinedRequests(0);
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
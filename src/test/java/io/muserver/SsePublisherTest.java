@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import scaffolding.*;
 
 import java.io.IOException;
+import java.lang.reflect.Proxy;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -26,6 +27,32 @@ public class SsePublisherTest {
     private final TestSseClient listener = new TestSseClient();
     private static final Logger log = LoggerFactory.getLogger(SsePublisherTest.class);
 
+    @Test
+    public void requestsNotCreatedByTheServerCanStartPublishers() throws InterruptedException {
+        server = ServerUtils.httpsServerForTest()
+            .addHandler(Method.GET, "/streamer", (request, response, pathParams) -> {
+                // a wrapper, like a mock, whose server() is not the server's own implementation
+                MuRequest wrapped = (MuRequest) Proxy.newProxyInstance(MuRequest.class.getClassLoader(), new Class<?>[]{MuRequest.class},
+                    (proxy, method, args) -> method.getName().equals("server") ? null : method.invoke(request, args));
+                SsePublisher ssePublisher = SsePublisher.start(wrapped, response);
+                executor.submit(() -> {
+                    try {
+                        ssePublisher.send("Hello");
+                    } catch (Exception e) {
+                        log.info("Error while publishing", e);
+                    } finally {
+                        ssePublisher.close();
+                    }
+                });
+            })
+            .start();
+
+        SseClient.ServerSentEvent clientHandle = sseClient.newServerSentEvent(request(server.uri().resolve("/streamer")).build(), listener);
+        listener.assertListenerIsClosed();
+        clientHandle.close();
+        assertThat(listener.receivedMessages, hasItem("message=Hello        event=message        id=null"));
+    }
+
     @Test
     public void canCall() throws InterruptedException {
         String multilineJson = "{\n" +
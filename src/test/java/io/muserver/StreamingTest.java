@@ -13,16 +13,18 @@ import java.io.BufferedOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.muserver.MuServerBuilder.httpsServer;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.equalTo;
-import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.*;
 import static scaffolding.ClientUtils.*;
 
 public class StreamingTest {
@@ -203,6 +205,44 @@ public class StreamingTest {
         }
     }
 
+	@Test public void blockingWritesOnlyWaitWhenTheClientIsNotReading() throws Exception {
+	    int chunkSize = 16384;
+	    int chunks = 2000;
+	    AtomicLong written = new AtomicLong();
+	    CountDownLatch finished = new CountDownLatch(1);
+	    server = MuServerBuilder.httpServer()
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> {
+                response.headers().set(HeaderNames.CONTENT_LENGTH, (long) chunkSize * chunks);
+                byte[] chunk = new byte[chunkSize];
+                try (OutputStream out = response.outputStream(0)) {
+                    for (int i = 0; i < chunks; i++) {
+                        out.write(chunk);
+                        written.addAndGet(chunkSize);
+                    }
+                }
+                finished.countDown();
+            })
+            .start();
+	    try (Socket socket = new Socket(server.uri().getHost(), server.uri().getPort())) {
+	        OutputStream requestStream = socket.getOutputStream();
+	        requestStream.write(("GET / HTTP/1.1\r\nHost: " + server.uri().getAuthority() + "\r\nConnection: close\r\n\r\n").getBytes(UTF_8));
+	        requestStream.flush();
+
+	        assertThat(finished.await(500, TimeUnit.MILLISECONDS), is(false));
+	        assertThat(written.get(), lessThan((long) chunkSize * chunks));
+
+	        InputStream responseStream = socket.getInputStream();
+	        long received = 0;
+	        byte[] buffer = new byte[65536];
+	        int read;
+	        while ((read = responseStream.read(buffer)) > -1) {
+	            received += read;
+            }
+	        assertThat(received, greaterThan((long) chunkSize * chunks));
+        }
+	    MuAssert.assertNotTimedOut("Handler finishing", finished);
+    }
+
 	@After public void stopIt() {
         MuAssert.stopAndCheck(server);
 	}
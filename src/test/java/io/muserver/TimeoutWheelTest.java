@@ -0,0 +1,110 @@
+package io.muserver;
+
+import io.netty.channel.DefaultEventLoop;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TimeoutWheelTest {
+
+    private final DefaultEventLoop loop = new DefaultEventLoop();
+    private final TimeoutWheel wheel = new TimeoutWheel(loop, 10);
+
+    @Test
+    public void timeoutsFireAfterTheirDeadline() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        long[] firedAfter = new long[1];
+        long start = System.nanoTime();
+        loop.execute(() -> wheel.schedule(timeout(() -> {
+            firedAfter[0] = System.nanoTime() - start;
+            fired.countDown();
+        }), TimeUnit.MILLISECONDS.toNanos(50)));
+        MuAssert.assertNotTimedOut("Waiting for timeout", fired);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(firedAfter[0]) >= 50, is(true));
+    }
+
+    @Test
+    public void cancelledTimeoutsDoNotFire() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        TimeoutWheel.Timeout timeout = timeout(count::incrementAndGet);
+        loop.submit(() -> {
+            wheel.schedule(timeout, TimeUnit.MILLISECONDS.toNanos(20));
+            wheel.cancel(timeout);
+        }).get();
+        Thread.sleep(100);
+        assertThat(count.get(), is(0));
+    }
+
+    @Test
+    public void timeoutsCanCancelOtherTimeoutsInTheSameBucket() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        TimeoutWheel.Timeout[] timeouts = new TimeoutWheel.Timeout[2];
+        for (int i = 0; i < timeouts.length; i++) {
+            int other = 1 - i;
+            timeouts[i] = timeout(() -> {
+                count.incrementAndGet();
+                wheel.cancel(timeouts[other]);
+            });
+        }
+        loop.submit(() -> {
+            for (TimeoutWheel.Timeout timeout : timeouts) {
+                wheel.schedule(timeout, TimeUnit.MILLISECONDS.toNanos(20));
+            }
+        }).get();
+        MuAssert.assertEventually(count::get, is(1));
+        Thread.sleep(100);
+        assertThat(count.get(), is(1));
+    }
+
+    @Test
+    public void movingTheDeadlineDelaysTheTimeout() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        TimeoutWheel.Timeout timeout = timeout(count::incrementAndGet);
+        for (int i = 0; i < 10; i++) {
+            loop.submit(() -> wheel.schedule(timeout, TimeUnit.MILLISECONDS.toNanos(50))).get();
+            Thread.sleep(10);
+        }
+        assertThat(count.get(), is(0));
+        MuAssert.assertEventually(count::get, is(1));
+        Thread.sleep(100);
+        assertThat(count.get(), is(1));
+    }
+
+    @Test
+    public void timeoutsLongerThanOneRotationOfTheWheelStillFire() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        TimeoutWheel smallTicks = loop.submit(() -> new TimeoutWheel(loop, 1)).get();
+        loop.execute(() -> smallTicks.schedule(timeout(fired::countDown), TimeUnit.MILLISECONDS.toNanos(1200)));
+        assertThat(fired.await(200, TimeUnit.MILLISECONDS), is(false));
+        MuAssert.assertNotTimedOut("Waiting for timeout", fired);
+    }
+
+    @Test
+    public void theTickIsAboutATenthOfTheShortestEnabledTimeout() {
+        assertThat(TimeoutWheel.tickMillisFor(TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(2)), is(1000L));
+        assertThat(TimeoutWheel.tickMillisFor(500, 0), is(50L));
+        assertThat(TimeoutWheel.tickMillisFor(50, 100), is(10L));
+        assertThat(TimeoutWheel.tickMillisFor(0, 0), is(1000L));
+    }
+
+    private static TimeoutWheel.Timeout timeout(Runnable action) {
+        return new TimeoutWheel.Timeout() {
+            @Override
+            void onTimeout() {
+                action.run();
+            }
+        };
+    }
+
+    @After
+    public void stop() {
+        loop.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,104 @@
+package io.muserver;
+
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import scaffolding.ServerUtils;
+
+import java.net.URI;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+import static scaffolding.MuAssert.assertEventually;
+
+public class TransportTest {
+
+    private MuServer server;
+
+    @Test
+    public void nioIsAlwaysAvailable() throws Exception {
+        assertThat(Transport.NIO.isAvailable(), is(true));
+        assertThat(Transport.AUTO.resolve(), is(Transport.EPOLL.isAvailable() ? Transport.EPOLL : Transport.NIO));
+        server = httpServer()
+            .withTransport(Transport.NIO)
+            .withSocketConfig(SocketConfigBuilder.socketConfig().withTcpNoDelay(true).withBacklog(256))
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello from nio"))
+            .start();
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.body().string(), is("Hello from nio"));
+        }
+    }
+
+    @Test
+    public void epollCanBeUsedWithLinuxSocketOptions() throws Exception {
+        Assume.assumeTrue("Epoll is not available on this platform", Transport.EPOLL.isAvailable());
+        server = ServerUtils.httpsServerForTest()
+            .withHttpPort(0)
+            .withTransport(Transport.EPOLL)
+            .withSocketConfig(SocketConfigBuilder.socketConfig()
+                .withTcpNoDelay(true)
+                .withBacklog(1024)
+                .withTcpDeferAccept(1)
+                .withTcpFastOpen(256)
+                .withTcpNotSentLowAt(16384))
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello from epoll"))
+            .start();
+        for (int i = 0; i < 2; i++) {
+            try (Response resp = call(request(i == 0 ? server.httpUri() : server.httpsUri()))) {
+                assertThat(resp.code(), is(200));
+                assertThat(resp.body().string(), is("Hello from epoll"));
+            }
+        }
+        assertThat(server.activeConnections().iterator().next().remoteAddress().getAddress().isLoopbackAddress(), is(true));
+    }
+
+    @Test
+    public void reusePortBindsMultipleAcceptorsToTheSamePort() throws Exception {
+        Assume.assumeTrue("Epoll is not available on this platform", Transport.EPOLL.isAvailable());
+        server = ServerUtils.httpsServerForTest()
+            .withHttpPort(0)
+            .withTransport(Transport.EPOLL)
+            .withSocketConfig(SocketConfigBuilder.socketConfig().withReusePort(4))
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+        assertThat(server.httpUri().getPort(), is(not(server.httpsUri().getPort())));
+        for (int i = 0; i < 20; i++) {
+            for (URI uri : new URI[]{server.httpUri(), server.httpsUri()}) {
+                try (Response resp = call(request(uri).header("Connection", "close"))) {
+                    assertThat(resp.code(), is(200));
+                    assertThat(resp.body().string(), is("Hello"));
+                }
+            }
+        }
+        assertEventually(() -> server.stats().completedRequests(), is(40L));
+        assertEventually(() -> server.stats().activeConnections(), is(0L));
+    }
+
+    @Test
+    public void reusePortIsIgnoredForNio() throws Exception {
+        server = httpServer()
+            .withTransport(Transport.NIO)
+            .withSocketConfig(SocketConfigBuilder.socketConfig().withReusePort(4))
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+        try (Response resp = call(request(server.uri()))) {
+            assertThat(resp.body().string(), is("Hello"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBacklogsAreRejected() {
+        SocketConfigBuilder.socketConfig().withBacklog(0);
+    }
+
+    @After
+    public void stop() {
+        scaffolding.MuAssert.stopAndCheck(server);
+    }
+}
@@ -0,0 +1,115 @@
+package io.muserver;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import scaffolding.MuAssert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static io.muserver.MuServerBuilder.muServer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class UnixSocketTest {
+
+    private MuServer server;
+    private EventLoopGroup clientGroup;
+    private Path socket;
+
+    @Before
+    public void setup() throws IOException {
+        Assume.assumeTrue("Epoll is not available on this platform", Transport.EPOLL.isAvailable());
+        clientGroup = new EpollEventLoopGroup(1);
+        socket = Files.createTempDirectory("mu-uds").resolve("mu.sock");
+    }
+
+    @Test
+    public void requestsCanBeServedOverAUnixDomainSocket() throws Exception {
+        server = muServer()
+            .withUnixSocket(socket)
+            .addHandler(Method.GET, "/hello", (request, response, pathParams) ->
+                response.write("Hello from " + request.remoteAddress() + " over " + request.connection().protocol()))
+            .start();
+        assertThat(server.uri(), nullValue());
+        assertThat(server.unixSocket(), is(socket));
+        assertThat(socket.toFile().exists(), is(true));
+
+        String response = call("GET /hello HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+        assertThat(response, startsWith("HTTP/1.1 200 OK"));
+        assertThat(response, endsWith("Hello from 127.0.0.1 over HTTP/1.1"));
+        MuAssert.assertEventually(() -> server.stats().completedRequests(), is(1L));
+
+        server.stop();
+        assertThat(socket.toFile().exists(), is(false));
+    }
+
+    @Test
+    public void unixSocketsCanBeUsedAlongsideTcpPorts() throws Exception {
+        server = muServer()
+            .withHttpPort(0)
+            .withUnixSocket(socket)
+            .addHandler(Method.GET, "/", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+        assertThat(server.uri().getScheme(), is("http"));
+        assertThat(call("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"), endsWith("Hello"));
+    }
+
+    @Test(expected = MuException.class)
+    public void theNioTransportCannotBeUsed() {
+        server = muServer()
+            .withTransport(Transport.NIO)
+            .withUnixSocket(socket)
+            .start();
+    }
+
+    private String call(String request) throws InterruptedException {
+        StringBuffer response = new StringBuffer();
+        Channel channel = new Bootstrap()
+            .group(clientGroup)
+            .channel(EpollDomainSocketChannel.class)
+            .handler(new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                    ByteBuf buf = (ByteBuf) msg;
+                    response.append(buf.toString(UTF_8));
+                    buf.release();
+                }
+            })
+            .connect(new DomainSocketAddress(socket.toFile())).sync().channel();
+        channel.writeAndFlush(Unpooled.copiedBuffer(request, UTF_8));
+        assertThat(channel.closeFuture().await(10, TimeUnit.SECONDS), is(true));
+        return response.toString();
+    }
+
+    @After
+    public void stop() {
+        if (server != null) {
+            MuAssert.stopAndCheck(server);
+        }
+        if (clientGroup != null) {
+            clientGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+        if (socket != null) {
+            File dir = socket.getParent().toFile();
+            socket.toFile().delete();
+            dir.delete();
+        }
+    }
+}
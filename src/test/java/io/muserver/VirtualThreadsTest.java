@@ -0,0 +1,79 @@
+package io.muserver;
+
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import scaffolding.MuAssert;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.muserver.MuServerBuilder.httpServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class VirtualThreadsTest {
+
+    private MuServer server;
+
+    @Test
+    public void manyConcurrentBlockingRequestsCanBeHandledOnVirtualThreads() throws Exception {
+        Assume.assumeTrue("Virtual threads are not supported on this JVM", VirtualThreads.isSupported());
+        int requestCount = 500;
+        CountDownLatch allStarted = new CountDownLatch(requestCount);
+        server = httpServer()
+            .withVirtualThreads(true)
+            .addHandler(Method.POST, "/", (request, response, pathParams) -> {
+                allStarted.countDown();
+                MuAssert.assertNotTimedOut("Waiting for all requests", allStarted);
+                try (InputStream in = request.inputStream().get()) {
+                    response.write(Thread.currentThread().getName() + " " + new String(Mutils.toByteArray(in, 8192), StandardCharsets.UTF_8));
+                }
+            })
+            .start();
+
+        ExecutorService clientExecutor = Executors.newCachedThreadPool();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < requestCount; i++) {
+            String body = "Hello " + i;
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try (Response resp = call(request(server.uri()).post(RequestBody.create(body.getBytes(StandardCharsets.UTF_8))))) {
+                    return resp.body().string();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, clientExecutor));
+        }
+        for (int i = 0; i < requestCount; i++) {
+            assertThat(results.get(i).get(), allOf(startsWith("muhandler-"), endsWith("Hello " + i)));
+        }
+        clientExecutor.shutdown();
+    }
+
+    @Test
+    public void startingFailsIfVirtualThreadsAreNotSupported() {
+        Assume.assumeFalse("Virtual threads are supported on this JVM", VirtualThreads.isSupported());
+        try {
+            server = httpServer().withVirtualThreads(true).start();
+            Assert.fail("Should not have started");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("Java 21"));
+        }
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+    }
+}
@@ -0,0 +1,97 @@
+package io.muserver.handlers;
+
+import io.muserver.Method;
+import io.muserver.MuServer;
+import io.muserver.RateLimit;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Test;
+import scaffolding.MuAssert;
+import scaffolding.ServerUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static scaffolding.ClientUtils.call;
+import static scaffolding.ClientUtils.request;
+
+public class MetricsHandlerTest {
+
+    private MuServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Test
+    public void statsAreServedInThePrometheusFormatByDefault() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .withHandlerExecutor(executor)
+            .withRateLimiter(request -> RateLimit.builder()
+                .withBucket(request.remoteAddress())
+                .withRate(100000)
+                .withWindow(1, TimeUnit.MINUTES)
+                .build())
+            .addHandler(MetricsHandlerBuilder.metricsHandler().withExecutor("handlers", executor))
+            .addHandler(Method.GET, "/hello", (request, response, pathParams) -> response.write("Hello"))
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/hello")))) {
+            assertThat(resp.code(), is(200));
+        }
+        MuAssert.assertEventually(() -> server.stats().completedRequests(), is(1L));
+
+        try (Response resp = call(request(server.uri().resolve("/metrics")))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("content-type"), is(MetricsHandler.PROMETHEUS_CONTENT_TYPE));
+            String body = resp.body().string();
+            assertThat(body, containsString("# TYPE mu_requests_completed_total counter\nmu_requests_completed_total 1\n"));
+            assertThat(body, containsString("# TYPE mu_requests_active gauge\nmu_requests_active 1\n"));
+            assertThat(body, containsString("mu_request_duration_seconds_count{protocol=\"HTTP/2\",status_class=\"2xx\"} 1\n"));
+            assertThat(body, containsString("mu_request_duration_seconds{protocol=\"HTTP/2\",status_class=\"2xx\",quantile=\"0.99\"} "));
+            assertThat(body, containsString("mu_request_rate{window=\"1m\"} "));
+            assertThat(body, containsString("mu_rate_limiter_buckets{limiter=\"0\"} 1\n"));
+            assertThat(body, containsString("mu_executor_queued_tasks{executor=\"handlers\"} 0\n"));
+            assertThat(body, containsString("mu_executor_active_threads{executor=\"handlers\"} 1\n"));
+            assertThat(body, containsString("# TYPE mu_event_loop_task_seconds_total counter\n"));
+            assertThat(body, containsString("mu_event_loop_pending_tasks{loop=\"0\"} "));
+            assertThat(body, not(containsString("mu_rate_limiter_bucket_requests")));
+            assertThat(body, not(containsString("# EOF")));
+        }
+    }
+
+    @Test
+    public void openMetricsIsServedWhenRequested() throws Exception {
+        server = ServerUtils.httpsServerForTest()
+            .withRateLimiter(request -> RateLimit.builder()
+                .withBucket("quote\"d")
+                .withRate(100000)
+                .withWindow(1, TimeUnit.MINUTES)
+                .build())
+            .addHandler(MetricsHandlerBuilder.metricsHandler()
+                .withPath("/internal/metrics")
+                .withPrefix("app_")
+                .withRateLimiterBuckets(true))
+            .start();
+
+        try (Response resp = call(request(server.uri().resolve("/internal/metrics"))
+            .header("Accept", "application/openmetrics-text; version=1.0.0,text/plain;q=0.5"))) {
+            assertThat(resp.code(), is(200));
+            assertThat(resp.header("content-type"), is(MetricsHandler.OPENMETRICS_CONTENT_TYPE));
+            String body = resp.body().string();
+            assertThat(body, containsString("# TYPE app_requests_completed counter\napp_requests_completed_total 0\n"));
+            assertThat(body, containsString("app_rate_limiter_bucket_requests{limiter=\"0\",bucket=\"quote\\\"d\"} 1\n"));
+            assertThat(body, endsWith("\n# EOF\n"));
+        }
+
+        try (Response resp = call(request(server.uri().resolve("/metrics")))) {
+            assertThat(resp.code(), is(404));
+        }
+    }
+
+    @After
+    public void stop() {
+        MuAssert.stopAndCheck(server);
+        executor.shutdownNow();
+    }
+}